@@ -0,0 +1,110 @@
+package Benchmarks;
+
+import Common.Frame;
+import Common.PayloadCompression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Ancho de banda que ahorra PayloadCompression en un broadcast frente a la CPU
+ * que gasta, según el tipo de contenido y su tamaño. El servidor comprime una
+ * vez por broadcast y cada uno de los N nodos descomprime su copia, así que
+ * el ahorro se multiplica por N y el coste de comprimir no.
+ *
+ * Contenidos: texto (frases con palabras al azar), log (líneas casi iguales),
+ * base64 (binario aleatorio codificado) y aleatorio (bytes sin patrón, que la
+ * muestra debería descartar).
+ *
+ * Uso: java Benchmarks.CompressionBenchmark [nodos=100] [iteraciones=2000]
+ * [umbral=1024]
+ */
+public class CompressionBenchmark {
+  private static final String[] WORDS = { "mensaje", "nodo", "servidor", "red", "broadcast", "latencia", "el",
+      "de", "la", "que", "con", "para", "recibido", "envío", "conexión", "secuencia", "puerto", "cliente" };
+
+  public static void main(String[] args) {
+    int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int threshold = args.length > 2 ? Integer.parseInt(args[2]) : PayloadCompression.DEFAULT_THRESHOLD_BYTES;
+
+    System.out.printf("%-10s %8s %8s %7s %11s %11s %12s %14s%n", "contenido", "bytes", "enviados", "ratio",
+        "comp. us", "desc. us", "comp. MB/s", "ahorro/us CPU");
+    for (String kind : new String[] { "texto", "log", "base64", "aleatorio" }) {
+      for (int size : new int[] { 512, 4 * 1024, 64 * 1024, 1024 * 1024 }) {
+        run(kind, size, nodes, Math.max(10, (int) ((long) iterations * 4096 / Math.max(4096, size))), threshold);
+      }
+    }
+  }
+
+  private static byte[] content(String kind, int size, Random random) {
+    byte[] bytes = new byte[size];
+    switch (kind) {
+      case "texto" -> {
+        StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+          text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(10) == 0 ? ". " : " ");
+        }
+        System.arraycopy(text.toString().getBytes(StandardCharsets.UTF_8), 0, bytes, 0, size);
+      }
+      case "log" -> {
+        StringBuilder text = new StringBuilder(size + 128);
+        for (int line = 0; text.length() < size; line++) {
+          text.append("2024-05-01 12:00:").append(line % 60).append(" INFO nodo-").append(line % 7)
+              .append(" Mensaje recibido desde 127.0.0.1:").append(5000 + line % 100).append('\n');
+        }
+        System.arraycopy(text.toString().getBytes(StandardCharsets.UTF_8), 0, bytes, 0, size);
+      }
+      case "base64" -> {
+        byte[] raw = new byte[size];
+        random.nextBytes(raw);
+        System.arraycopy(Base64.getEncoder().encode(raw), 0, bytes, 0, size);
+      }
+      default -> random.nextBytes(bytes);
+    }
+    return bytes;
+  }
+
+  private static void run(String kind, int size, int nodes, int iterations, int threshold) {
+    Frame frame = new Frame(Frame.MESSAGE, "BENCH", 1, content(kind, size, new Random(42)));
+    PayloadCompression compression = new PayloadCompression(threshold);
+    // Calentamiento
+    for (int i = 0; i < Math.min(iterations, 200); i++) {
+      compression.compress(frame);
+    }
+    compression = new PayloadCompression(threshold);
+
+    Frame wire = frame;
+    long compressNanos = 0;
+    for (int i = 0; i < iterations; i++) {
+      long startedAt = System.nanoTime();
+      wire = compression.compress(frame);
+      compressNanos += System.nanoTime() - startedAt;
+    }
+    long decompressNanos = 0;
+    if (wire != frame) {
+      try {
+        for (int i = 0; i < iterations; i++) {
+          long startedAt = System.nanoTime();
+          PayloadCompression.decompress(wire);
+          decompressNanos += System.nanoTime() - startedAt;
+        }
+      } catch (java.io.IOException e) {
+        System.err.println("Error descomprimiendo: " + e.getMessage());
+        return;
+      }
+    }
+    double compressMicros = compressNanos / 1e3 / iterations;
+    double decompressMicros = decompressNanos / 1e3 / iterations;
+    long sent = wire.payload.length;
+    // Bytes que no salen del servidor por broadcast, por microsegundo de CPU
+    // del servidor (una compresión) y de los nodos (una descompresión cada uno)
+    long savedPerBroadcast = (size - sent) * nodes;
+    double cpuMicros = compressMicros + decompressMicros * nodes;
+    System.out.printf(Locale.ROOT, "%-10s %8d %8d %7.2f %11.1f %11.1f %12.0f %14s%n", kind, size, sent,
+        (double) sent / size, compressMicros, decompressMicros, size / Math.max(compressMicros, 1e-3),
+        cpuMicros > 0 ? String.format(Locale.ROOT, "%.0f B", savedPerBroadcast / cpuMicros) : "-");
+  }
+}
@@ -0,0 +1,102 @@
+package Benchmarks;
+
+import BroadCast.DistributedNode;
+import BroadCast.ServerNode;
+import Common.ExecutionMode;
+import Common.IoEngine;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compara el broadcast de ServerNode con hilos de plataforma y con hilos
+ * virtuales: mensajes entregados por segundo, pico de hilos y memoria usada.
+ *
+ * Uso: java Benchmarks.ExecutionModeBenchmark [nodos] [mensajes]
+ */
+public class ExecutionModeBenchmark {
+  public static void main(String[] args) throws Exception {
+    int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int messageCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    console.printf("%-10s %8s %10s %14s %12s %10s%n", "modo", "nodos", "mensajes", "entregas/s", "pico hilos", "heap MB");
+    int basePort = 24000;
+    for (ExecutionMode mode : ExecutionMode.values()) {
+      Result result = run(mode, basePort, nodeCount, messageCount);
+      console.printf("%-10s %8d %10d %14.0f %12d %10d%n", mode, nodeCount, messageCount,
+          result.deliveriesPerSecond, result.peakThreads, result.heapMegabytes);
+      basePort += nodeCount + 10;
+    }
+    System.setOut(console);
+    System.exit(0);
+  }
+
+  private record Result(double deliveriesPerSecond, int peakThreads, long heapMegabytes) {
+  }
+
+  private static Result run(ExecutionMode mode, int serverPort, int nodeCount, int messageCount) throws Exception {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    System.gc();
+
+    ServerNode server = new ServerNode(serverPort);
+    server.setExecutionMode(mode);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    Thread.sleep(300);
+
+    AtomicLong delivered = new AtomicLong();
+    CountDownLatch allDelivered = new CountDownLatch(1);
+    long expected = (long) nodeCount * messageCount;
+    List<DistributedNode> nodes = new ArrayList<>();
+    for (int i = 0; i < nodeCount; i++) {
+      DistributedNode node = new DistributedNode("BENCH-" + i, "127.0.0.1", serverPort + 1 + i,
+          new DistributedNode.NodeInfo("127.0.0.1", serverPort), IoEngine.NIO);
+      node.setMessageListener(new DistributedNode.MessageListener() {
+        @Override
+        public void onMessageReceived(String message) {
+          if (message.startsWith("BENCH") && delivered.incrementAndGet() == expected)
+            allDelivered.countDown();
+        }
+
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+      });
+      node.start();
+      nodes.add(node);
+    }
+    Thread.sleep(1000);
+    threads.resetPeakThreadCount();
+
+    long start = System.nanoTime();
+    try (Socket socket = new Socket("127.0.0.1", serverPort);
+        Writer output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      for (int i = 0; i < messageCount; i++) {
+        output.write("BENCH: mensaje " + i + "\n");
+      }
+      output.flush();
+      allDelivered.await(120, TimeUnit.SECONDS);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    Runtime runtime = Runtime.getRuntime();
+    long heap = (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024;
+    int peakThreads = threads.getPeakThreadCount();
+
+    for (DistributedNode node : nodes) {
+      node.stop();
+    }
+    server.stop();
+    return new Result(delivered.get() / seconds, peakThreads, heap);
+  }
+}
@@ -0,0 +1,433 @@
+package Benchmarks;
+
+import Common.Frame;
+import Common.FrameWriter;
+import Common.IoEngine;
+import Common.LatencyHistogram;
+import Common.WireProtocol;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Generador de carga no interactivo para los servidores del proyecto, en lazo
+ * abierto: cada conexión envía a un ritmo fijo sin esperar las respuestas, y
+ * la latencia se mide desde el instante en que tocaba enviar, no desde el
+ * envío real. Así un servidor que se atasca no frena al cliente y el atasco
+ * aparece entero en la latencia (sin omisión coordinada).
+ *
+ * Destinos:
+ * - tcp: Socket_TCP.ServerTCP; una línea por petición, respuestas en orden.
+ * - udp: ServerUDP (o "rapido"); un datagrama por petición. Como la respuesta
+ * no identifica la petición se emparejan en orden, y las que llevan más de
+ * un segundo sin respuesta se cuentan como perdidas.
+ * - node: Client_Server.DistributedNode; un nodo local por conexión.
+ * - broadcast: BroadCast.ServerNode; cada conexión envía MESSAGE y la latencia
+ * es hasta que el mensaje llega a un nodo local registrado en el servidor.
+ *
+ * Tamaño de las peticiones (payload): "64" fijo, "32-4096" uniforme en ese
+ * intervalo o "64,64,64,16384" uno de la lista al azar (repetir un valor le da
+ * más peso).
+ *
+ * Uso: java Benchmarks.LoadGenerator [target=tcp|udp|node|broadcast]
+ * [host=127.0.0.1] [port=12345] [connections=8] [rate=1000 peticiones/s en
+ * total] [payload=64] [duration=10] [warmup=2] [listen=27800 primer puerto
+ * local para node y broadcast]
+ */
+public class LoadGenerator {
+  private static final long UDP_LOSS_NANOS = 1_000_000_000L;
+  private static final long DRAIN_MILLIS = 2_000;
+
+  /** Una conexión con el servidor; send no debe esperar la respuesta. */
+  private interface Sender {
+    void send(long intendedAt, int size) throws IOException;
+
+    void close();
+  }
+
+  private final String host;
+  private final int port;
+  private final int listenPort;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAccumulator lastReplyAt = new LongAccumulator(Math::max, Long.MIN_VALUE);
+  private final List<Closeable> resources = new ArrayList<>();
+  // Solo cuentan las peticiones programadas dentro de [measureFrom, measureUntil)
+  private volatile long measureFrom = Long.MAX_VALUE;
+  private volatile long measureUntil = Long.MAX_VALUE;
+  private volatile boolean running = true;
+
+  private LoadGenerator(String host, int port, int listenPort) {
+    this.host = host;
+    this.port = port;
+    this.listenPort = listenPort;
+  }
+
+  private boolean measured(long intendedAt) {
+    return intendedAt - measureFrom >= 0 && intendedAt - measureUntil < 0;
+  }
+
+  private void onSent(long intendedAt) {
+    if (measured(intendedAt))
+      sent.increment();
+  }
+
+  private void onReply(long intendedAt) {
+    if (measured(intendedAt)) {
+      long now = System.nanoTime();
+      latency.record(now - intendedAt);
+      completed.increment();
+      lastReplyAt.accumulate(now);
+    }
+  }
+
+  private void onFailure(long intendedAt) {
+    if (measured(intendedAt))
+      failed.increment();
+  }
+
+  private static byte[] filler(int size) {
+    byte[] payload = new byte[Math.max(0, size)];
+    Arrays.fill(payload, (byte) 'x');
+    return payload;
+  }
+
+  private static Thread daemon(String name, Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  // --- tcp ---
+
+  private Sender openTcp(int index) throws IOException {
+    Socket socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+    BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+        StandardCharsets.UTF_8));
+    Queue<Long> pending = new ConcurrentLinkedQueue<>();
+    daemon("carga-tcp-" + index, () -> {
+      try {
+        while (input.readLine() != null) {
+          Long intendedAt = pending.poll();
+          if (intendedAt != null)
+            onReply(intendedAt);
+        }
+      } catch (IOException e) {
+        if (running)
+          System.err.println("Conexión TCP " + index + " cerrada: " + e.getMessage());
+      }
+    });
+    return new Sender() {
+      @Override
+      public void send(long intendedAt, int size) throws IOException {
+        pending.add(intendedAt);
+        output.write(filler(size));
+        output.write('\n');
+        output.flush();
+      }
+
+      @Override
+      public void close() {
+        try {
+          socket.close();
+        } catch (IOException ignored) {
+        }
+      }
+    };
+  }
+
+  // --- udp ---
+
+  private Sender openUdp(int index) throws IOException {
+    DatagramSocket socket = new DatagramSocket();
+    socket.connect(new InetSocketAddress(host, port));
+    socket.setSoTimeout(200);
+    Queue<Long> pending = new ConcurrentLinkedQueue<>();
+    daemon("carga-udp-" + index, () -> {
+      DatagramPacket reply = new DatagramPacket(new byte[2048], 2048);
+      while (!socket.isClosed()) {
+        try {
+          socket.receive(reply);
+        } catch (SocketTimeoutException e) {
+          expireUdp(pending);
+          continue;
+        } catch (IOException e) {
+          if (running)
+            System.err.println("Socket UDP " + index + ": " + e.getMessage());
+          continue;
+        }
+        expireUdp(pending);
+        Long intendedAt = pending.poll();
+        if (intendedAt != null)
+          onReply(intendedAt);
+      }
+    });
+    return new Sender() {
+      @Override
+      public void send(long intendedAt, int size) throws IOException {
+        byte[] payload = filler(size);
+        pending.add(intendedAt);
+        socket.send(new DatagramPacket(payload, payload.length));
+      }
+
+      @Override
+      public void close() {
+        socket.close();
+      }
+    };
+  }
+
+  private void expireUdp(Queue<Long> pending) {
+    long now = System.nanoTime();
+    Long oldest;
+    while ((oldest = pending.peek()) != null && now - oldest > UDP_LOSS_NANOS) {
+      pending.poll();
+      onFailure(oldest);
+    }
+  }
+
+  // --- node ---
+
+  private Sender openNode(int index) {
+    Client_Server.DistributedNode node = new Client_Server.DistributedNode("CARGA-" + index, "127.0.0.1",
+        listenPort + index, IoEngine.NIO);
+    node.setSenderLanes(1, 1024);
+    node.addOtherNode("DESTINO", host, port);
+    node.start();
+    return new Sender() {
+      @Override
+      public void send(long intendedAt, int size) {
+        node.sendMessageToNode("DESTINO", "x".repeat(size)).whenComplete((reply, error) -> {
+          if (error == null)
+            onReply(intendedAt);
+          else
+            onFailure(intendedAt);
+        });
+      }
+
+      @Override
+      public void close() {
+        node.stop();
+      }
+    };
+  }
+
+  // --- broadcast ---
+
+  // El id va al principio del contenido para reconocer el mensaje al llegar
+  private final AtomicLong nextId = new AtomicLong();
+  private final Map<Long, Long> broadcastPending = new ConcurrentHashMap<>();
+
+  private void startBroadcastReceiver() {
+    BroadCast.DistributedNode receiver = new BroadCast.DistributedNode("CARGA-RECEPTOR", "127.0.0.1", listenPort,
+        new BroadCast.DistributedNode.NodeInfo(host, port), IoEngine.NIO);
+    receiver.setMessageListener(new BroadCast.DistributedNode.MessageListener() {
+      @Override
+      public void onFrameReceived(Frame frame) {
+        if (frame.type != Frame.MESSAGE)
+          return;
+        String payload = frame.payloadAsString();
+        int separator = payload.indexOf('|');
+        if (separator <= 0)
+          return;
+        try {
+          Long intendedAt = broadcastPending.remove(Long.parseLong(payload.substring(0, separator)));
+          if (intendedAt != null)
+            onReply(intendedAt);
+        } catch (NumberFormatException ignored) {
+        }
+      }
+
+      @Override
+      public void onMessageReceived(String message) {
+      }
+
+      @Override
+      public void onStatusUpdate(String status) {
+      }
+    });
+    receiver.start();
+    resources.add(receiver::stop);
+  }
+
+  private Sender openBroadcast(int index) throws IOException {
+    Socket socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    FrameWriter output = new FrameWriter(socket.getOutputStream(), WireProtocol.BINARY, true);
+    return new Sender() {
+      @Override
+      public void send(long intendedAt, int size) throws IOException {
+        long id = nextId.incrementAndGet();
+        broadcastPending.put(id, intendedAt);
+        String prefix = id + "|";
+        output.write(new Frame(Frame.MESSAGE, "CARGA-" + index, id, prefix + "x".repeat(Math.max(0,
+            size - prefix.length()))));
+      }
+
+      @Override
+      public void close() {
+        try {
+          socket.close();
+        } catch (IOException ignored) {
+        }
+      }
+    };
+  }
+
+  // --- ejecución ---
+
+  private Sender open(String target, int index) throws IOException {
+    return switch (target) {
+      case "tcp" -> openTcp(index);
+      case "udp" -> openUdp(index);
+      case "node" -> openNode(index);
+      case "broadcast" -> openBroadcast(index);
+      default -> throw new IllegalArgumentException("destino desconocido: " + target);
+    };
+  }
+
+  // Cada conexión envía en start + k * interval aunque vaya con retraso: si
+  // se atrasa, las peticiones salen seguidas y su latencia incluye la espera
+  private void drive(Sender sender, long start, long intervalNanos, long end, IntSupplier sizes) {
+    for (long k = 0; running; k++) {
+      long intendedAt = start + k * intervalNanos;
+      if (intendedAt - end >= 0)
+        return;
+      long wait;
+      while ((wait = intendedAt - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      onSent(intendedAt);
+      try {
+        sender.send(intendedAt, sizes.getAsInt());
+      } catch (IOException e) {
+        onFailure(intendedAt);
+      }
+    }
+  }
+
+  private static IntSupplier parseSizes(String spec) {
+    if (spec.contains(",")) {
+      int[] values = Arrays.stream(spec.split(",")).mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+      return () -> values[ThreadLocalRandom.current().nextInt(values.length)];
+    }
+    int dash = spec.indexOf('-');
+    if (dash > 0) {
+      int min = Integer.parseInt(spec.substring(0, dash).trim());
+      int max = Integer.parseInt(spec.substring(dash + 1).trim());
+      return () -> ThreadLocalRandom.current().nextInt(min, max + 1);
+    }
+    int size = Integer.parseInt(spec.trim());
+    return () -> size;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator > 0)
+        options.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+    String target = options.getOrDefault("target", "tcp");
+    String host = options.getOrDefault("host", "127.0.0.1");
+    int port = Integer.parseInt(options.getOrDefault("port", "12345"));
+    int connections = Integer.parseInt(options.getOrDefault("connections", "8"));
+    double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+    String payload = options.getOrDefault("payload", "64");
+    IntSupplier sizes = parseSizes(payload);
+    int duration = Integer.parseInt(options.getOrDefault("duration", "10"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+    int listenPort = Integer.parseInt(options.getOrDefault("listen", "27800"));
+
+    PrintStream console = System.out;
+    // Los nodos escriben una línea por mensaje
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    console.printf(Locale.ROOT, "Destino %s en %s:%d, %d conexiones, %.0f peticiones/s, payload %s, %d s (+%d s "
+        + "de calentamiento)%n", target, host, port, connections, rate, payload, duration, warmup);
+
+    LoadGenerator generator = new LoadGenerator(host, port, listenPort);
+    if (target.equals("broadcast")) {
+      generator.startBroadcastReceiver();
+      // Hasta que el receptor se registra en el servidor no le llega nada
+      Thread.sleep(500);
+    }
+    List<Sender> senders = new ArrayList<>();
+    try {
+      for (int i = 0; i < connections; i++) {
+        senders.add(generator.open(target, i));
+      }
+    } catch (IOException e) {
+      System.err.println("Error: No se pudo conectar con " + host + ":" + port + ": " + e.getMessage());
+      System.exit(1);
+    }
+
+    long intervalNanos = (long) (connections * 1e9 / rate);
+    long start = System.nanoTime() + 100_000_000L;
+    generator.measureFrom = start + warmup * 1_000_000_000L;
+    generator.measureUntil = generator.measureFrom + duration * 1_000_000_000L;
+    long end = generator.measureUntil;
+    List<Thread> drivers = new ArrayList<>();
+    for (int i = 0; i < connections; i++) {
+      Sender sender = senders.get(i);
+      // Las conexiones se reparten el intervalo para no enviar todas a la vez
+      long offset = intervalNanos * i / connections;
+      drivers.add(daemon("carga-" + i, () -> generator.drive(sender, start + offset, intervalNanos, end, sizes)));
+    }
+    for (Thread driver : drivers) {
+      driver.join();
+    }
+    // Las últimas respuestas aún pueden llegar
+    long drainUntil = System.currentTimeMillis() + DRAIN_MILLIS;
+    while (generator.completed.sum() + generator.failed.sum() < generator.sent.sum()
+        && System.currentTimeMillis() < drainUntil) {
+      Thread.sleep(10);
+    }
+    generator.running = false;
+    for (Sender sender : senders) {
+      sender.close();
+    }
+    for (Closeable resource : generator.resources) {
+      resource.close();
+    }
+    generator.report(console, rate);
+    System.setOut(console);
+    System.exit(0);
+  }
+
+  private void report(PrintStream console, double rate) {
+    // Si el servidor no da abasto las respuestas acaban después del periodo medido
+    long sentCount = sent.sum();
+    long completedCount = completed.sum();
+    long window = measureUntil - measureFrom;
+    double seconds = (completedCount == 0 ? window : Math.max(window, lastReplyAt.get() - measureFrom)) / 1e9;
+    long failedCount = failed.sum();
+    console.printf(Locale.ROOT, "Enviadas: %d | Respondidas: %d | Fallidas: %d | Sin respuesta: %d%n", sentCount,
+        completedCount, failedCount, Math.max(0, sentCount - completedCount - failedCount));
+    console.printf(Locale.ROOT, "Ritmo pedido: %.0f/s | Respuestas: %.0f/s%n", rate, completedCount
+        / seconds);
+    console.printf(Locale.ROOT, "Latencia media: %.1f us | máxima: %.1f us%n", latency.mean() / 1e3,
+        latency.max() / 1e3);
+    // Percentiles cada vez más cerca de 1, como los de HdrHistogram
+    console.printf("%12s %14s %10s%n", "percentil", "latencia us", "1/(1-p)");
+    for (double p : new double[] { 0.0, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.995, 0.999, 0.9995, 0.9999,
+        0.99999 }) {
+      console.printf(Locale.ROOT, "%12.5f %14.1f %10.0f%n", p, latency.percentile(p) / 1e3, 1 / (1 - p));
+    }
+    console.printf(Locale.ROOT, "%12.5f %14.1f %10s%n", 1.0, latency.max() / 1e3, "inf");
+  }
+}
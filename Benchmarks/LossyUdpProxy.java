@@ -0,0 +1,172 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proxy UDP local que pierde, retrasa y desordena datagramas, para probar
+ * transportes fiables sin una red real. Los clientes envían al puerto del
+ * proxy; cada cliente tiene su propio socket hacia el destino, así que las
+ * respuestas vuelven a quien corresponde. Las pérdidas y el retraso se
+ * aplican en los dos sentidos.
+ *
+ * El retraso de cada datagrama es delayMillis más un aleatorio de hasta
+ * jitterMillis; con jitter los datagramas pueden llegar desordenados.
+ *
+ * Uso: java Benchmarks.LossyUdpProxy puertoLocal puertoDestino [pérdida=0.05]
+ * [retrasoMs=0] [jitterMs=0]
+ */
+public class LossyUdpProxy implements Runnable {
+  private record Delayed(long dueAt, long order, DatagramChannel channel, SocketAddress target, byte[] data) {
+  }
+
+  private final int listenPort;
+  private final InetSocketAddress target;
+  private final double loss;
+  private final long delayNanos;
+  private final long jitterNanos;
+  private final Random random = new Random(42);
+  private final AtomicLong forwarded = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final PriorityQueue<Delayed> pending = new PriorityQueue<>(
+      (a, b) -> a.dueAt() != b.dueAt() ? Long.compare(a.dueAt(), b.dueAt()) : Long.compare(a.order(), b.order()));
+  private final Map<SocketAddress, DatagramChannel> upstreams = new HashMap<>();
+  private final Map<DatagramChannel, SocketAddress> clients = new HashMap<>();
+  private DatagramChannel downstream;
+  private Selector selector;
+  private Thread thread;
+  private volatile boolean running;
+  private long order;
+
+  public LossyUdpProxy(int listenPort, InetSocketAddress target, double loss, long delayMillis, long jitterMillis) {
+    this.listenPort = listenPort;
+    this.target = target;
+    this.loss = loss;
+    this.delayNanos = delayMillis * 1_000_000;
+    this.jitterNanos = jitterMillis * 1_000_000;
+  }
+
+  public void start() throws IOException {
+    selector = Selector.open();
+    downstream = DatagramChannel.open();
+    // Que las pérdidas sean las configuradas y no las del buffer del socket
+    downstream.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+    downstream.bind(new InetSocketAddress("127.0.0.1", listenPort));
+    downstream.configureBlocking(false);
+    downstream.register(selector, SelectionKey.OP_READ);
+    running = true;
+    thread = new Thread(this, "proxy-udp-" + listenPort);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public long getForwarded() {
+    return forwarded.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @Override
+  public void run() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(65_536);
+    while (running) {
+      try {
+        Delayed next = pending.peek();
+        long wait = next == null ? 1000 : Math.max(0, (next.dueAt() - System.nanoTime()) / 1_000_000);
+        if (wait > 0)
+          selector.select(wait);
+        else
+          selector.selectNow();
+        for (SelectionKey key : selector.selectedKeys()) {
+          DatagramChannel channel = (DatagramChannel) key.channel();
+          SocketAddress from;
+          while ((from = channel.receive(buffer.clear())) != null) {
+            buffer.flip();
+            if (channel == downstream) {
+              schedule(upstreamFor(from), target, buffer);
+            } else {
+              schedule(downstream, clients.get(channel), buffer);
+            }
+          }
+        }
+        selector.selectedKeys().clear();
+        long now = System.nanoTime();
+        while ((next = pending.peek()) != null && next.dueAt() - now <= 0) {
+          pending.poll();
+          next.channel().send(ByteBuffer.wrap(next.data()), next.target());
+          forwarded.incrementAndGet();
+        }
+      } catch (IOException e) {
+        if (running)
+          System.err.println("Error en el proxy UDP: " + e.getMessage());
+      }
+    }
+  }
+
+  private DatagramChannel upstreamFor(SocketAddress client) throws IOException {
+    DatagramChannel upstream = upstreams.get(client);
+    if (upstream == null) {
+      upstream = DatagramChannel.open();
+      upstream.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+      upstream.bind(new InetSocketAddress("127.0.0.1", 0));
+      upstream.configureBlocking(false);
+      upstream.register(selector, SelectionKey.OP_READ);
+      upstreams.put(client, upstream);
+      clients.put(upstream, client);
+    }
+    return upstream;
+  }
+
+  private void schedule(DatagramChannel channel, SocketAddress to, ByteBuffer data) {
+    if (random.nextDouble() < loss) {
+      dropped.incrementAndGet();
+      return;
+    }
+    byte[] copy = new byte[data.remaining()];
+    data.get(copy);
+    long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+    pending.add(new Delayed(System.nanoTime() + delayNanos + jitter, order++, channel, to, copy));
+  }
+
+  public void close() {
+    running = false;
+    selector.wakeup();
+    try {
+      thread.join(2000);
+      downstream.close();
+      for (DatagramChannel upstream : upstreams.values()) {
+        upstream.close();
+      }
+      selector.close();
+    } catch (IOException | InterruptedException e) {
+      System.err.println("Error cerrando el proxy UDP: " + e.getMessage());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int listenPort = Integer.parseInt(args[0]);
+    int targetPort = Integer.parseInt(args[1]);
+    double loss = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+    long delay = args.length > 3 ? Long.parseLong(args[3]) : 0;
+    long jitter = args.length > 4 ? Long.parseLong(args[4]) : 0;
+    LossyUdpProxy proxy = new LossyUdpProxy(listenPort, new InetSocketAddress("127.0.0.1", targetPort), loss, delay,
+        jitter);
+    proxy.start();
+    System.out.println("Proxy UDP en 127.0.0.1:" + listenPort + " hacia " + targetPort + " (pérdida " + loss
+        + ", retraso " + delay + " ms, jitter " + jitter + " ms)");
+    Thread.currentThread().join();
+  }
+}
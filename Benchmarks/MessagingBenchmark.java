@@ -0,0 +1,735 @@
+package Benchmarks;
+
+import BroadCast.ServerNode;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.FrameWriter;
+import Common.IoEngine;
+import Common.LatencyHistogram;
+import Common.Transport;
+import Common.WireProtocol;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Banco de pruebas de mensajería sin dependencias externas. Mide:
+ * - broadcast: ServerNode retransmitiendo a N DistributedNode en el mismo
+ * proceso; latencia desde el envío hasta que lo recibió el último nodo. Con
+ * compress=bytes el servidor comprime los broadcasts de ese tamaño o más (el
+ * relleno es muy repetitivo: es el mejor caso para la compresión).
+ * - roundtrip: Client_Server.DistributedNode.sendMessageToNode hasta el ACK.
+ * - lanes: un Client_Server.DistributedNode enviando a la vez a N nodos
+ * (hasta 100); mensajes por segundo con todos los envíos ya encolados.
+ * - lossy: un Client_Server.DistributedNode enviando a otro con transporte
+ * RELIABLE_UDP a través de LossyUdpProxy con la pérdida indicada, y con TCP
+ * sin pérdidas como referencia; comprueba además que llegan en orden.
+ * - echo: Socket_TCP.ServerTCP (una conexión abierta) frente a ServerUDP, una
+ * petición por vez.
+ * - alloc: memoria que asigna el servidor por broadcast según el número de
+ * nodos (sumideros que descartan lo que reciben, para medir solo el servidor).
+ *
+ * Cada caso hace un calentamiento y luego mide; el resultado se puede guardar
+ * y comparar con una ejecución anterior para ver el efecto de un cambio.
+ *
+ * Uso: java Benchmarks.MessagingBenchmark [suite=all|broadcast|roundtrip|lanes|lossy|echo|alloc]
+ * [nodes=1,10,100,1000] [payload=64,1024,16384] [messages=2000] [warmup=500]
+ * [window=32] [loss=0,0.01,0.05] [compress=0] [save=fichero] [baseline=fichero]
+ */
+public class MessagingBenchmark {
+  private static final int BASE_PORT = 26000;
+  // ServerUDP recibe en un buffer de 1024 bytes y ServerTCP usa el puerto 12345
+  private static final int UDP_MAX_PAYLOAD = 1024;
+  private static final int ECHO_PORT = 12345;
+
+  private static int nextPort = BASE_PORT;
+  private static boolean echoServersStarted;
+
+  record Result(String name, long operations, double opsPerSecond, LatencyHistogram latency) {
+    String toLine() {
+      return String.format(Locale.ROOT, "%s\t%.1f\t%d\t%d\t%d", name, opsPerSecond, latency.percentile(0.50),
+          latency.percentile(0.99), latency.percentile(0.999));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator > 0)
+        options.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+    String suite = options.getOrDefault("suite", "all");
+    int[] nodeCounts = parseList(options.getOrDefault("nodes", "1,10,100,1000"));
+    int[] payloads = parseList(options.getOrDefault("payload", "64,1024,16384"));
+    int messages = Integer.parseInt(options.getOrDefault("messages", "2000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "500"));
+    int window = Integer.parseInt(options.getOrDefault("window", "32"));
+    int compressThreshold = Integer.parseInt(options.getOrDefault("compress", "0"));
+    double[] lossRates = Arrays.stream(options.getOrDefault("loss", "0,0.01,0.05").split(","))
+        .mapToDouble(value -> Double.parseDouble(value.trim())).toArray();
+
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    console.printf("%-36s %10s %12s %10s %10s %10s%n", "caso", "ops", "ops/s", "p50 us", "p99 us", "p999 us");
+
+    List<Result> results = new ArrayList<>();
+    for (int payload : payloads) {
+      if (suite.equals("all") || suite.equals("broadcast")) {
+        for (int nodes : nodeCounts) {
+          // Con muchos nodos se reduce el número de mensajes para acotar las entregas
+          int scaled = Math.max(100, Math.min(messages, messages * 10 / Math.max(1, nodes)));
+          report(console, results, broadcast(nodes, payload, scaled, Math.min(warmup, scaled), window,
+              compressThreshold));
+        }
+      }
+      if (suite.equals("all") || suite.equals("alloc")) {
+        for (int nodes : nodeCounts) {
+          int scaled = Math.max(100, Math.min(messages, messages * 10 / Math.max(1, nodes)));
+          report(console, results, allocation(console, nodes, payload, scaled, Math.min(warmup, scaled)));
+        }
+      }
+      if (suite.equals("all") || suite.equals("roundtrip"))
+        report(console, results, roundTrip(payload, messages, warmup));
+      if (suite.equals("all") || suite.equals("lanes")) {
+        for (int nodes : nodeCounts) {
+          if (nodes <= 100)
+            report(console, results, lanes(nodes, payload, messages, warmup));
+        }
+      }
+      if (suite.equals("all") || suite.equals("lossy")) {
+        report(console, results, lossy(console, Transport.TCP, 0, payload, messages, warmup));
+        for (double loss : lossRates) {
+          report(console, results, lossy(console, Transport.RELIABLE_UDP, loss, payload, messages, warmup));
+        }
+      }
+      if (suite.equals("all") || suite.equals("echo")) {
+        startEchoServers();
+        report(console, results, tcpEcho(payload, messages, warmup));
+        report(console, results, udpEcho(payload, messages, warmup));
+      }
+    }
+
+    if (options.containsKey("save")) {
+      List<String> lines = new ArrayList<>();
+      for (Result result : results) {
+        lines.add(result.toLine());
+      }
+      Files.write(Path.of(options.get("save")), lines);
+      console.println("Resultados guardados en " + options.get("save"));
+    }
+    if (options.containsKey("baseline"))
+      compare(console, results, Path.of(options.get("baseline")));
+    System.setOut(console);
+    System.exit(0);
+  }
+
+  private static void report(PrintStream console, List<Result> results, Result result) {
+    results.add(result);
+    LatencyHistogram latency = result.latency();
+    console.printf(Locale.ROOT, "%-36s %10d %12.0f %10.1f %10.1f %10.1f%n", result.name(), result.operations(),
+        result.opsPerSecond(), latency.percentile(0.50) / 1e3, latency.percentile(0.99) / 1e3,
+        latency.percentile(0.999) / 1e3);
+  }
+
+  private static void compare(PrintStream console, List<Result> results, Path baselineFile) throws IOException {
+    Map<String, String[]> baseline = new HashMap<>();
+    for (String line : Files.readAllLines(baselineFile)) {
+      String[] fields = line.split("\t");
+      if (fields.length == 5)
+        baseline.put(fields[0], fields);
+    }
+    console.println();
+    console.printf("%-36s %12s %12s%n", "frente a " + baselineFile.getFileName(), "ops/s", "p99");
+    for (Result result : results) {
+      String[] previous = baseline.get(result.name());
+      if (previous == null)
+        continue;
+      double opsDelta = change(Double.parseDouble(previous[1]), result.opsPerSecond());
+      double p99Delta = change(Double.parseDouble(previous[3]), result.latency().percentile(0.99));
+      console.printf(Locale.ROOT, "%-36s %+11.1f%% %+11.1f%%%n", result.name(), opsDelta, p99Delta);
+    }
+  }
+
+  private static double change(double before, double after) {
+    return before == 0 ? 0 : (after - before) * 100 / before;
+  }
+
+  private static int[] parseList(String list) {
+    return Arrays.stream(list.split(",")).mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+  }
+
+  private static String padding(int size) {
+    return "x".repeat(Math.max(0, size));
+  }
+
+  // --- broadcast ---
+
+  private static Result broadcast(int nodeCount, int payloadSize, int messages, int warmup, int window,
+      int compressThreshold) throws Exception {
+    int serverPort = nextPort;
+    nextPort += nodeCount + 1;
+    ServerNode server = new ServerNode(serverPort, IoEngine.NIO);
+    server.setCompression(compressThreshold);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    Thread.sleep(300);
+
+    // Los ids de mensaje se asignan en orden; una entrega completa es cuando
+    // llegó a todos los nodos.
+    int capacity = 1_000_000;
+    long[] sentAt = new long[capacity];
+    AtomicIntegerArray arrivals = new AtomicIntegerArray(capacity);
+    LatencyHistogram latency = new LatencyHistogram();
+    AtomicInteger measureFrom = new AtomicInteger(Integer.MAX_VALUE);
+    AtomicInteger completed = new AtomicInteger();
+    Semaphore inFlight = new Semaphore(window);
+
+    List<BroadCast.DistributedNode> nodes = new ArrayList<>();
+    for (int i = 0; i < nodeCount; i++) {
+      BroadCast.DistributedNode node = new BroadCast.DistributedNode("BENCH-" + i, "127.0.0.1", serverPort + 1 + i,
+          new BroadCast.DistributedNode.NodeInfo("127.0.0.1", serverPort), IoEngine.NIO);
+      node.setMessageListener(new BroadCast.DistributedNode.MessageListener() {
+        @Override
+        public void onFrameReceived(Frame frame) {
+          if (frame.type != Frame.MESSAGE)
+            return;
+          int id = parseId(frame.payload);
+          if (id < 0 || id >= capacity || arrivals.incrementAndGet(id) != nodeCount)
+            return;
+          if (id >= measureFrom.get()) {
+            latency.record(System.nanoTime() - sentAt[id]);
+            completed.incrementAndGet();
+          }
+          inFlight.release();
+        }
+
+        @Override
+        public void onMessageReceived(String message) {
+        }
+
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+      });
+      node.start();
+      nodes.add(node);
+    }
+
+    String name = "broadcast nodos=" + nodeCount + " payload=" + payloadSize
+        + (compressThreshold > 0 ? " comp" : "");
+    String filler = padding(payloadSize - 8);
+    try (Socket socket = new Socket("127.0.0.1", serverPort)) {
+      socket.setTcpNoDelay(true);
+      FrameWriter output = new FrameWriter(socket.getOutputStream(), WireProtocol.BINARY, true);
+      int id = 0;
+      // Hasta que un mensaje llega a todos no están todos los nodos registrados
+      boolean ready = false;
+      for (long deadline = System.currentTimeMillis() + 30_000; !ready && System.currentTimeMillis() < deadline;) {
+        inFlight.drainPermits();
+        send(output, id++, filler, sentAt);
+        ready = inFlight.tryAcquire(200, TimeUnit.MILLISECONDS);
+      }
+      inFlight.drainPermits();
+      inFlight.release(window);
+      if (!ready) {
+        stopAll(nodes, server);
+        return new Result(name + " (no se registraron)", 0, 0, latency);
+      }
+
+      long start = 0;
+      for (int i = 0; i < warmup + messages; i++) {
+        if (!inFlight.tryAcquire(10, TimeUnit.SECONDS))
+          break;
+        if (i == warmup) {
+          measureFrom.set(id);
+          start = System.nanoTime();
+        }
+        send(output, id++, filler, sentAt);
+      }
+      inFlight.tryAcquire(window, 10, TimeUnit.SECONDS);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      stopAll(nodes, server);
+      return new Result(name, completed.get(), completed.get() / seconds, latency);
+    }
+  }
+
+  private static void send(FrameWriter output, int id, String filler, long[] sentAt) throws IOException {
+    sentAt[id] = System.nanoTime();
+    output.write(new Frame(Frame.MESSAGE, "BENCH", id + 1, id + "|" + filler));
+  }
+
+  private static int parseId(byte[] payload) {
+    int id = 0;
+    for (byte b : payload) {
+      if (b == '|')
+        return id;
+      if (b < '0' || b > '9')
+        return -1;
+      id = id * 10 + (b - '0');
+    }
+    return -1;
+  }
+
+  private static void stopAll(List<BroadCast.DistributedNode> nodes, ServerNode server) {
+    for (BroadCast.DistributedNode node : nodes) {
+      node.stop();
+    }
+    server.stop();
+  }
+
+  // --- memoria asignada por broadcast ---
+
+  private static Result allocation(PrintStream console, int nodeCount, int payloadSize, int messages, int warmup)
+      throws Exception {
+    int serverPort = nextPort;
+    nextPort += nodeCount + 1;
+    ServerNode server = new ServerNode(serverPort, IoEngine.NIO);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    Thread.sleep(300);
+
+    // Un solo hilo acepta y vacía todas las conexiones en un buffer reutilizado
+    AtomicLong received = new AtomicLong();
+    Selector selector = Selector.open();
+    for (int i = 0; i < nodeCount; i++) {
+      ServerSocketChannel sink = ServerSocketChannel.open();
+      sink.bind(new InetSocketAddress("127.0.0.1", serverPort + 1 + i));
+      sink.configureBlocking(false);
+      sink.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    AtomicBoolean draining = new AtomicBoolean(true);
+    Thread sinkThread = new Thread(() -> drainSinks(selector, draining, received), "bench-sumideros");
+    sinkThread.setDaemon(true);
+    sinkThread.start();
+
+    String name = "alloc nodos=" + nodeCount + " payload=" + payloadSize;
+    String payload = padding(payloadSize);
+    long frameBytes = FrameCodec.encode(new Frame(Frame.MESSAGE, "BENCH", 1, payload)).remaining();
+    LatencyHistogram latency = new LatencyHistogram();
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    try (Socket socket = connectWhenReady(serverPort)) {
+      socket.setTcpNoDelay(true);
+      FrameWriter output = new FrameWriter(socket.getOutputStream(), WireProtocol.BINARY, true);
+      for (int i = 0; i < nodeCount; i++) {
+        output.write(new Frame(Frame.REGISTER, "BENCH", 0, "127.0.0.1:" + (serverPort + 1 + i)));
+      }
+      for (long deadline = System.currentTimeMillis() + 30_000; server.getMembership().size() < nodeCount
+          && System.currentTimeMillis() < deadline;) {
+        Thread.sleep(50);
+      }
+      // Deja que lleguen los avisos de alta antes de contar bytes
+      Thread.sleep(500);
+
+      // Un broadcast cada vez: termina cuando todos los nodos recibieron sus bytes
+      long allocatedBefore = 0;
+      long start = 0;
+      for (int i = 0; i < warmup + messages; i++) {
+        if (i == warmup) {
+          allocatedBefore = totalAllocatedBytes(threads);
+          start = System.nanoTime();
+        }
+        long expected = received.get() + frameBytes * nodeCount;
+        long sentAt = System.nanoTime();
+        output.write(new Frame(Frame.MESSAGE, "BENCH", i + 1, payload));
+        for (long deadline = sentAt + 10_000_000_000L; received.get() < expected && System.nanoTime() < deadline;) {
+          Thread.onSpinWait();
+        }
+        if (received.get() < expected) {
+          messages = i - warmup;
+          break;
+        }
+        if (i >= warmup)
+          latency.record(System.nanoTime() - sentAt);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      long allocated = totalAllocatedBytes(threads) - allocatedBefore;
+      console.printf(Locale.ROOT, "    asignado: %d B por broadcast, %.1f B por nodo%n", allocated / Math.max(1, messages),
+          allocated / (double) Math.max(1, messages) / nodeCount);
+      return new Result(name, messages, messages / seconds, latency);
+    } finally {
+      server.stop();
+      draining.set(false);
+      selector.wakeup();
+      sinkThread.join();
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+      selector.close();
+    }
+  }
+
+  // El servidor puede tardar en abrir el puerto en una máquina cargada
+  private static Socket connectWhenReady(int port) throws IOException, InterruptedException {
+    for (long deadline = System.currentTimeMillis() + 10_000;;) {
+      try {
+        return new Socket("127.0.0.1", port);
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > deadline)
+          throw e;
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  private static void drainSinks(Selector selector, AtomicBoolean draining, AtomicLong received) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    try {
+      while (draining.get()) {
+        selector.select();
+        for (SelectionKey key : selector.selectedKeys()) {
+          if (key.isAcceptable()) {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (channel != null) {
+              channel.configureBlocking(false);
+              channel.register(selector, SelectionKey.OP_READ);
+            }
+          } else if (key.isReadable()) {
+            int read = ((SocketChannel) key.channel()).read(buffer.clear());
+            if (read < 0) {
+              key.cancel();
+              key.channel().close();
+            } else {
+              received.addAndGet(read);
+            }
+          }
+        }
+        selector.selectedKeys().clear();
+      }
+    } catch (IOException e) {
+      System.err.println("Error en los sumideros: " + e.getMessage());
+    }
+  }
+
+  // Incluye los hilos del servidor y el que envía; el de los sumideros no asigna
+  private static long totalAllocatedBytes(com.sun.management.ThreadMXBean threads) {
+    long total = 0;
+    for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (allocated > 0)
+        total += allocated;
+    }
+    return total;
+  }
+
+  // --- Client_Server ida y vuelta ---
+
+  private static Result roundTrip(int payloadSize, int messages, int warmup) throws Exception {
+    int senderPort = nextPort++;
+    int receiverPort = nextPort++;
+    Client_Server.DistributedNode sender = new Client_Server.DistributedNode("BENCH-A", "127.0.0.1", senderPort,
+        IoEngine.NIO);
+    Client_Server.DistributedNode receiver = new Client_Server.DistributedNode("BENCH-B", "127.0.0.1", receiverPort,
+        IoEngine.NIO);
+    sender.addOtherNode("BENCH-B", "127.0.0.1", receiverPort);
+    BlockingQueue<Boolean> replies = new LinkedBlockingQueue<>();
+    sender.setMessageListener(new Client_Server.DistributedNode.MessageListener() {
+      @Override
+      public void onMessageReceived(String message) {
+      }
+
+      @Override
+      public void onMessageSent(String message) {
+        replies.offer(true);
+      }
+
+      @Override
+      public void onStatusUpdate(String status) {
+        if (status.startsWith("Error"))
+          replies.offer(false);
+      }
+    });
+    receiver.start();
+    sender.start();
+    Thread.sleep(300);
+
+    String message = padding(payloadSize);
+    LatencyHistogram latency = new LatencyHistogram();
+    int completed = 0;
+    long start = 0;
+    for (int i = 0; i < warmup + messages; i++) {
+      if (i == warmup)
+        start = System.nanoTime();
+      long sentAt = System.nanoTime();
+      sender.sendMessageToNode("BENCH-B", message);
+      Boolean ok = replies.poll(5, TimeUnit.SECONDS);
+      if (ok == null)
+        break;
+      if (i >= warmup && ok) {
+        latency.record(System.nanoTime() - sentAt);
+        completed++;
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    sender.stop();
+    receiver.stop();
+    return new Result("roundtrip payload=" + payloadSize, completed, completed / seconds, latency);
+  }
+
+  // Todo se encola de golpe y cada mensaje se mide desde el principio de la
+  // ráfaga; los destinos se reparten por turnos
+  private static Result lanes(int peerCount, int payloadSize, int messages, int warmup) throws Exception {
+    Client_Server.DistributedNode sender = new Client_Server.DistributedNode("LANES-A", "127.0.0.1", nextPort++,
+        IoEngine.NIO);
+    List<Client_Server.DistributedNode> receivers = new ArrayList<>();
+    for (int i = 0; i < peerCount; i++) {
+      int port = nextPort++;
+      Client_Server.DistributedNode receiver = new Client_Server.DistributedNode("LANES-" + i, "127.0.0.1", port,
+          IoEngine.NIO);
+      receiver.start();
+      receivers.add(receiver);
+      sender.addOtherNode("LANES-" + i, "127.0.0.1", port);
+    }
+    BlockingQueue<Long> completions = new LinkedBlockingQueue<>();
+    sender.setMessageListener(new Client_Server.DistributedNode.MessageListener() {
+      @Override
+      public void onMessageReceived(String message) {
+      }
+
+      @Override
+      public void onMessageSent(String message) {
+        completions.offer(System.nanoTime());
+      }
+
+      @Override
+      public void onStatusUpdate(String status) {
+        if (status.startsWith("Error"))
+          completions.offer(-1L);
+      }
+    });
+    sender.start();
+    Thread.sleep(300);
+
+    String message = padding(payloadSize);
+    for (int i = 0; i < warmup; i++) {
+      sender.sendMessageToNode("LANES-" + (i % peerCount), message);
+    }
+    for (int i = 0; i < warmup; i++) {
+      completions.poll(5, TimeUnit.SECONDS);
+    }
+
+    LatencyHistogram latency = new LatencyHistogram();
+    int completed = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      sender.sendMessageToNode("LANES-" + (i % peerCount), message);
+    }
+    for (int i = 0; i < messages; i++) {
+      Long finishedAt = completions.poll(5, TimeUnit.SECONDS);
+      if (finishedAt == null)
+        break;
+      if (finishedAt > 0) {
+        latency.record(finishedAt - start);
+        completed++;
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    sender.stop();
+    for (Client_Server.DistributedNode receiver : receivers) {
+      receiver.stop();
+    }
+    return new Result("lanes peers=" + peerCount + " payload=" + payloadSize, completed, completed / seconds,
+        latency);
+  }
+
+  // --- transporte sobre un enlace con pérdidas ---
+
+  // Como lanes con un solo destino; con UDP los datagramas pasan por el proxy
+  private static Result lossy(PrintStream console, Transport transport, double loss, int payloadSize, int messages,
+      int warmup) throws Exception {
+    int senderPort = nextPort++;
+    int receiverPort = nextPort++;
+    int proxyPort = nextPort++;
+    Client_Server.DistributedNode sender = new Client_Server.DistributedNode("LOSSY-A", "127.0.0.1", senderPort,
+        IoEngine.NIO);
+    Client_Server.DistributedNode receiver = new Client_Server.DistributedNode("LOSSY-B", "127.0.0.1", receiverPort,
+        IoEngine.NIO);
+    sender.setTransport(transport);
+    receiver.setTransport(transport);
+    LossyUdpProxy proxy = null;
+    if (transport == Transport.RELIABLE_UDP) {
+      proxy = new LossyUdpProxy(proxyPort, new InetSocketAddress("127.0.0.1", receiverPort), loss, 0, 0);
+      proxy.start();
+      sender.addOtherNode("LOSSY-B", "127.0.0.1", proxyPort);
+    } else {
+      sender.addOtherNode("LOSSY-B", "127.0.0.1", receiverPort);
+    }
+    // Cada mensaje empieza por su número; se cuenta cuántos llegan antes que uno anterior
+    AtomicInteger lastReceived = new AtomicInteger(-1);
+    AtomicInteger outOfOrder = new AtomicInteger();
+    receiver.setMessageListener(new Client_Server.DistributedNode.MessageListener() {
+      @Override
+      public void onMessageReceived(String message) {
+      }
+
+      @Override
+      public void onMessageSent(String message) {
+      }
+
+      @Override
+      public void onStatusUpdate(String status) {
+      }
+
+      @Override
+      public void onFrameReceived(Frame frame) {
+        String payload = frame.payloadAsString();
+        int id = Integer.parseInt(payload.substring(0, payload.indexOf(':')));
+        if (id <= lastReceived.getAndSet(id))
+          outOfOrder.incrementAndGet();
+      }
+    });
+    BlockingQueue<Long> completions = new LinkedBlockingQueue<>();
+    sender.setMessageListener(new Client_Server.DistributedNode.MessageListener() {
+      @Override
+      public void onMessageReceived(String message) {
+      }
+
+      @Override
+      public void onMessageSent(String message) {
+        completions.offer(System.nanoTime());
+      }
+
+      @Override
+      public void onStatusUpdate(String status) {
+        if (status.startsWith("Error"))
+          completions.offer(-1L);
+      }
+    });
+    receiver.start();
+    sender.start();
+    Thread.sleep(300);
+
+    String filler = padding(payloadSize);
+    for (int i = 0; i < warmup; i++) {
+      sender.sendMessageToNode("LOSSY-B", i + ":" + filler);
+    }
+    for (int i = 0; i < warmup; i++) {
+      completions.poll(5, TimeUnit.SECONDS);
+    }
+
+    LatencyHistogram latency = new LatencyHistogram();
+    int completed = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      sender.sendMessageToNode("LOSSY-B", (warmup + i) + ":" + filler);
+    }
+    for (int i = 0; i < messages; i++) {
+      Long finishedAt = completions.poll(15, TimeUnit.SECONDS);
+      if (finishedAt == null)
+        break;
+      if (finishedAt > 0) {
+        latency.record(finishedAt - start);
+        completed++;
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    sender.stop();
+    receiver.stop();
+    String name = "lossy " + transport.name().toLowerCase(Locale.ROOT) + " loss=" + loss + " payload=" + payloadSize;
+    if (proxy != null) {
+      proxy.close();
+      console.printf("  %s: %d descartados por el proxy, %d fuera de orden%n", name, proxy.getDropped(),
+          outOfOrder.get());
+    }
+    return new Result(name, completed, completed / seconds, latency);
+  }
+
+  // --- eco TCP frente a UDP ---
+
+  private static void startEchoServers() throws Exception {
+    if (echoServersStarted)
+      return;
+    echoServersStarted = true;
+    Thread tcp = new Thread(() -> Socket_TCP.ServerTCP.main(new String[0]));
+    tcp.setDaemon(true);
+    tcp.start();
+    ServerProcess.start("ServerUDP");
+    ServerProcess.awaitUdpReady(ECHO_PORT);
+  }
+
+  private static Result tcpEcho(int payloadSize, int messages, int warmup) throws IOException, InterruptedException {
+    // Una sola conexión para todas las peticiones, como el socket de udpEcho
+    String message = padding(payloadSize);
+    LatencyHistogram latency = new LatencyHistogram();
+    int completed = 0;
+    long start = 0;
+    try (Socket socket = connectWhenReady(ECHO_PORT)) {
+      socket.setTcpNoDelay(true);
+      PrintWriter output = new PrintWriter(
+          new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+      BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8));
+      for (int i = 0; i < warmup + messages; i++) {
+        if (i == warmup)
+          start = System.nanoTime();
+        long sentAt = System.nanoTime();
+        output.println(message);
+        if (input.readLine() != null && i >= warmup) {
+          latency.record(System.nanoTime() - sentAt);
+          completed++;
+        }
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    return new Result("echo tcp payload=" + payloadSize, completed, completed / seconds, latency);
+  }
+
+  private static Result udpEcho(int payloadSize, int messages, int warmup) throws IOException {
+    int size = Math.min(payloadSize, UDP_MAX_PAYLOAD);
+    byte[] message = padding(size).getBytes(StandardCharsets.UTF_8);
+    byte[] buffer = new byte[2048];
+    LatencyHistogram latency = new LatencyHistogram();
+    int completed = 0;
+    int lost = 0;
+    long start = 0;
+    InetAddress server = InetAddress.getByName("127.0.0.1");
+    // La respuesta de ServerUDP es fija y no dice a qué petición corresponde.
+    // Tras un timeout se cambia de socket: una respuesta tardía llega al
+    // puerto anterior y no se confunde con la de la siguiente petición.
+    DatagramSocket socket = openEchoSocket();
+    try {
+      for (int i = 0; i < warmup + messages; i++) {
+        if (i == warmup)
+          start = System.nanoTime();
+        long sentAt = System.nanoTime();
+        socket.send(new DatagramPacket(message, message.length, server, ECHO_PORT));
+        try {
+          socket.receive(new DatagramPacket(buffer, buffer.length));
+        } catch (SocketTimeoutException | PortUnreachableException e) {
+          lost++;
+          socket.close();
+          socket = openEchoSocket();
+          continue;
+        }
+        if (i >= warmup) {
+          latency.record(System.nanoTime() - sentAt);
+          completed++;
+        }
+      }
+    } finally {
+      socket.close();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    String name = "echo udp payload=" + size + (lost > 0 ? " perdidos=" + lost : "");
+    return new Result(name, completed, completed / seconds, latency);
+  }
+
+  private static DatagramSocket openEchoSocket() throws SocketException {
+    DatagramSocket socket = new DatagramSocket();
+    socket.setSoTimeout(1000);
+    return socket;
+  }
+}
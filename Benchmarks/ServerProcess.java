@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lanza un servidor en otra JVM con el mismo classpath. Sirve para los del
+ * paquete por defecto (ServerUDP, FastServerUDP), que no se pueden importar
+ * desde un paquete con nombre. El proceso se destruye al salir esta JVM.
+ */
+final class ServerProcess {
+  private ServerProcess() {
+  }
+
+  static Process start(String className, String... args) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    command.add("--enable-preview");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(className);
+    command.addAll(List.of(args));
+    Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    Runtime.getRuntime().addShutdownHook(new Thread(process::destroy));
+    return process;
+  }
+
+  // Hasta que el servidor responde; antes de enlazar el puerto solo hay ICMP
+  static void awaitUdpReady(int port) throws IOException, InterruptedException {
+    for (int attempt = 0; attempt < 100; attempt++) {
+      try (DatagramSocket probe = new DatagramSocket()) {
+        probe.connect(new InetSocketAddress("127.0.0.1", port));
+        probe.setSoTimeout(100);
+        probe.send(new DatagramPacket(new byte[1], 1));
+        probe.receive(new DatagramPacket(new byte[2048], 2048));
+        return;
+      } catch (SocketTimeoutException | PortUnreachableException e) {
+        Thread.sleep(100);
+      }
+    }
+    throw new IOException("el servidor del puerto " + port + " no responde");
+  }
+}
@@ -0,0 +1,139 @@
+package Benchmarks;
+
+import Common.LatencyHistogram;
+import Socket_TCP.EchoServer;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Socket_TCP.EchoServer con cada modelo de hilos, medido desde varios
+ * clientes a la vez:
+ * - conexiones: cada petición abre su conexión, envía una línea, espera la
+ * respuesta y cierra; conexiones por segundo y latencia de todo el ciclo.
+ * - keep-alive: cada cliente mantiene su conexión y envía una línea tras
+ * otra; peticiones por segundo y latencia de cada una.
+ *
+ * Con FIXED_POOL y más clientes que hilos, en keep-alive los clientes que no
+ * tienen hilo esperan: es el límite de ese modelo, no un error.
+ *
+ * Uso: java Benchmarks.TcpServerBenchmark [clientes=16] [segundos=3]
+ * [payload=64] [hilos=8]
+ */
+public class TcpServerBenchmark {
+  private static final int BASE_PORT = 27600;
+
+  private record Result(long operations, double opsPerSecond, LatencyHistogram latency) {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int payload = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    console.printf("%-16s %-11s %9s %10s %12s %10s %10s %10s%n", "modelo", "prueba", "clientes", "ops",
+        "ops/s", "p50 us", "p99 us", "p999 us");
+    int port = BASE_PORT;
+    for (EchoServer.ThreadingModel model : EchoServer.ThreadingModel.values()) {
+      EchoServer server = new EchoServer("127.0.0.1", port, model, threads);
+      server.start();
+      report(console, model, "conexiones", clients, run(port, clients, payload, seconds, false));
+      report(console, model, "keep-alive", clients, run(port, clients, payload, seconds, true));
+      server.stop();
+      port++;
+    }
+    System.setOut(console);
+    System.exit(0);
+  }
+
+  private static void report(PrintStream console, EchoServer.ThreadingModel model, String test, int clients,
+      Result result) {
+    LatencyHistogram latency = result.latency();
+    console.printf(Locale.ROOT, "%-16s %-11s %9d %10d %12.0f %10.1f %10.1f %10.1f%n", model, test, clients,
+        result.operations(), result.opsPerSecond(), latency.percentile(0.50) / 1e3, latency.percentile(0.99) / 1e3,
+        latency.percentile(0.999) / 1e3);
+  }
+
+  private static Result run(int port, int clients, int payload, int seconds, boolean keepAlive)
+      throws InterruptedException {
+    AtomicBoolean measuring = new AtomicBoolean();
+    AtomicBoolean finished = new AtomicBoolean();
+    LatencyHistogram latency = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    String message = "x".repeat(payload);
+    for (int i = 0; i < clients; i++) {
+      Thread client = new Thread(() -> {
+        try {
+          if (keepAlive)
+            runKeepAlive(port, message, measuring, finished, latency);
+          else
+            runConnections(port, message, measuring, finished, latency);
+        } catch (IOException e) {
+          System.err.println("Error en el cliente TCP: " + e.getMessage());
+        }
+      });
+      client.start();
+      threads.add(client);
+    }
+    // Un segundo de calentamiento antes de medir
+    Thread.sleep(1000);
+    measuring.set(true);
+    long start = System.nanoTime();
+    Thread.sleep(seconds * 1000L);
+    measuring.set(false);
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    finished.set(true);
+    for (Thread client : threads) {
+      client.join();
+    }
+    return new Result(latency.count(), latency.count() / elapsed, latency);
+  }
+
+  private static void runConnections(int port, String message, AtomicBoolean measuring, AtomicBoolean finished,
+      LatencyHistogram latency) throws IOException {
+    while (!finished.get()) {
+      long startedAt = System.nanoTime();
+      try (Socket socket = new Socket()) {
+        // Cierre con RST: sin TIME_WAIT no se agotan los puertos locales
+        socket.setSoLinger(true, 0);
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        Writer output = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+            StandardCharsets.UTF_8));
+        output.write(message + "\n");
+        output.flush();
+        if (input.readLine() != null && measuring.get())
+          latency.record(System.nanoTime() - startedAt);
+      }
+    }
+  }
+
+  private static void runKeepAlive(int port, String message, AtomicBoolean measuring, AtomicBoolean finished,
+      LatencyHistogram latency) throws IOException {
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      socket.setTcpNoDelay(true);
+      Writer output = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8));
+      String line = message + "\n";
+      // Sin hilo que la atienda (FIXED_POOL lleno) se espera a que otro cliente termine
+      while (!finished.get()) {
+        long sentAt = System.nanoTime();
+        output.write(line);
+        output.flush();
+        if (input.readLine() == null)
+          return;
+        if (measuring.get())
+          latency.record(System.nanoTime() - sentAt);
+      }
+    }
+  }
+}
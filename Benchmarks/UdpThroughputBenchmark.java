@@ -0,0 +1,126 @@
+package Benchmarks;
+
+import java.io.*;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paquetes por segundo que responde un servidor UDP: ServerUDP frente a
+ * FastServerUDP con uno y con varios hilos. Cada cliente mantiene una
+ * ventana de peticiones sin respuesta; si pasa un rato sin respuestas (se
+ * perdieron paquetes) vuelve a llenarla.
+ *
+ * Con varios clientes los remitentes se alternan y FastServerUDP crea una
+ * dirección de remitente por paquete en receive(); es la única memoria que
+ * asigna por paquete y se nota poco frente al coste de la llamada al sistema.
+ *
+ * Uso: java Benchmarks.UdpThroughputBenchmark [clientes=4] [ventana=32]
+ * [payload=64] [segundos=5] [hilos=número de procesadores]
+ */
+public class UdpThroughputBenchmark {
+  private static final int CLASSIC_PORT = 12345;
+  private static final int FAST_PORT = 27500;
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int window = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+    int payload = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+    int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+    int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    console.printf("%-16s %6s %9s %8s %14s %10s%n", "servidor", "hilos", "clientes", "payload", "paquetes/s",
+        "reenvíos");
+    // Cada servidor en su propia JVM, que se cierra antes de medir el siguiente
+    Process server = ServerProcess.start("ServerUDP");
+    ServerProcess.awaitUdpReady(CLASSIC_PORT);
+    // ServerUDP recibe en un buffer de 1024 bytes
+    int classicPayload = Math.min(payload, 1024);
+    report(console, "ServerUDP", 1, run(CLASSIC_PORT, clients, window, classicPayload, seconds), clients,
+        classicPayload);
+    server.destroy();
+
+    int port = FAST_PORT;
+    for (int serverThreads : threads > 1 ? new int[] { 1, threads } : new int[] { 1 }) {
+      server = ServerProcess.start("FastServerUDP", "127.0.0.1", Integer.toString(port),
+          Integer.toString(serverThreads));
+      ServerProcess.awaitUdpReady(port);
+      report(console, "FastServerUDP", serverThreads, run(port, clients, window, payload, seconds), clients, payload);
+      server.destroy();
+      port++;
+    }
+    System.setOut(console);
+    System.exit(0);
+  }
+
+  private record Result(double packetsPerSecond, long refills) {
+  }
+
+  private static void report(PrintStream console, String server, int threads, Result result, int clients,
+      int payload) {
+    console.printf("%-16s %6d %9d %8d %14.0f %10d%n", server, threads, clients, payload, result.packetsPerSecond(),
+        result.refills());
+  }
+
+  private static Result run(int port, int clients, int window, int payload, int seconds) throws Exception {
+    AtomicBoolean measuring = new AtomicBoolean();
+    AtomicBoolean finished = new AtomicBoolean();
+    AtomicLong replies = new AtomicLong();
+    AtomicLong refills = new AtomicLong();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < clients; i++) {
+      Thread client = new Thread(() -> {
+        try {
+          runClient(port, window, payload, measuring, finished, replies, refills);
+        } catch (IOException e) {
+          System.err.println("Error en el cliente UDP: " + e.getMessage());
+        }
+      });
+      client.start();
+      threads.add(client);
+    }
+    // Un segundo de calentamiento antes de medir
+    Thread.sleep(1000);
+    measuring.set(true);
+    long start = System.nanoTime();
+    Thread.sleep(seconds * 1000L);
+    long counted = replies.get();
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    finished.set(true);
+    for (Thread client : threads) {
+      client.join();
+    }
+    return new Result(counted / elapsed, refills.get());
+  }
+
+  private static void runClient(int port, int window, int payload, AtomicBoolean measuring, AtomicBoolean finished,
+      AtomicLong replies, AtomicLong refills) throws IOException {
+    try (DatagramSocket socket = new DatagramSocket()) {
+      socket.connect(new InetSocketAddress("127.0.0.1", port));
+      socket.setSoTimeout(50);
+      DatagramPacket request = new DatagramPacket(new byte[payload], payload);
+      DatagramPacket reply = new DatagramPacket(new byte[2048], 2048);
+      for (int i = 0; i < window; i++) {
+        socket.send(request);
+      }
+      while (!finished.get()) {
+        try {
+          socket.receive(reply);
+        } catch (SocketTimeoutException e) {
+          refills.incrementAndGet();
+          for (int i = 0; i < window; i++) {
+            socket.send(request);
+          }
+          continue;
+        }
+        if (measuring.get())
+          replies.incrementAndGet();
+        socket.send(request);
+      }
+    }
+  }
+}
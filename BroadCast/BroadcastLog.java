@@ -0,0 +1,122 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.SegmentedLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Historial persistente de los broadcasts que entrega el servidor, para que
+ * un nodo que estuvo inaccesible pida lo que se perdió. Hay un SegmentedLog
+ * por servidor de origen (en un clúster cada uno numera por su cuenta), así
+ * que el offset de cada mensaje es su número de secuencia.
+ */
+class BroadcastLog {
+  /** Lo que se lee del log de una vez para un nodo que se pone al día. */
+  static final int CHUNK_BYTES = 256 * 1024;
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final long retentionBytes;
+  private final long retentionMillis;
+  private final Map<Long, SegmentedLog> logs = new ConcurrentHashMap<>();
+
+  /** La retención se aplica a cada origen por separado. */
+  BroadcastLog(Path directory, int segmentBytes, long retentionBytes, long retentionMillis) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.retentionBytes = retentionBytes;
+    this.retentionMillis = retentionMillis;
+    // Los orígenes que ya tenían log se abren ya para conocer su última secuencia
+    File[] existing = directory.toFile().listFiles((dir, name) -> name.startsWith("origen-"));
+    if (existing != null) {
+      for (File origin : existing) {
+        logFor(Long.parseLong(origin.getName().substring("origen-".length())));
+      }
+    }
+  }
+
+  private SegmentedLog logFor(long origin) throws IOException {
+    SegmentedLog log = logs.get(origin);
+    if (log != null)
+      return log;
+    synchronized (logs) {
+      log = logs.get(origin);
+      if (log == null) {
+        log = new SegmentedLog(directory.resolve("origen-" + origin), segmentBytes, retentionBytes, retentionMillis);
+        logs.put(origin, log);
+      }
+      return log;
+    }
+  }
+
+  /**
+   * Guarda los mensajes numerados; el resto de tramas no se guarda. encoded
+   * es la trama ya codificada en binario.
+   */
+  void append(Frame frame, ByteBuffer encoded) {
+    if (frame.sequence <= 0 || frame.type != Frame.MESSAGE && frame.type != Frame.STATUS)
+      return;
+    try {
+      logFor(ServerCluster.originOf(frame.sequence)).append(frame.sequence, encoded);
+    } catch (IOException e) {
+      System.err.println("No se pudo guardar el mensaje " + frame.sequence + " en el log: " + e.getMessage());
+    }
+  }
+
+  /** Última secuencia guardada de ese origen, 0 si no hay ninguna. */
+  long lastSequence(long origin) {
+    SegmentedLog log = logs.get(origin);
+    return log == null ? 0 : log.lastOffset();
+  }
+
+  /** "secuencia,..." con la última guardada de cada origen. */
+  String describePositions() {
+    StringJoiner positions = new StringJoiner(",");
+    for (SegmentedLog log : logs.values()) {
+      if (log.lastOffset() > 0)
+        positions.add(Long.toString(log.lastOffset()));
+    }
+    return positions.toString();
+  }
+
+  /** Siguiente trozo a partir de fromSequence (incluida), o null si no hay más. */
+  SegmentedLog.Chunk read(long fromSequence) {
+    SegmentedLog log = logs.get(ServerCluster.originOf(fromSequence));
+    return log == null ? null : log.read(fromSequence, CHUNK_BYTES);
+  }
+
+  Frame get(long sequence) {
+    SegmentedLog log = logs.get(ServerCluster.originOf(sequence));
+    return log == null ? null : log.get(sequence);
+  }
+
+  void enforceRetention() {
+    for (SegmentedLog log : logs.values()) {
+      log.enforceRetention();
+    }
+  }
+
+  String describe() {
+    StringJoiner description = new StringJoiner(", ");
+    for (Map.Entry<Long, SegmentedLog> entry : logs.entrySet()) {
+      SegmentedLog log = entry.getValue();
+      description.add("origen " + entry.getKey() + ": " + ServerCluster.localOf(log.firstOffset()) + ".."
+          + ServerCluster.localOf(log.lastOffset()) + " en " + log.segmentCount() + " segmentos ("
+          + log.sizeInBytes() / 1024 + " KB)");
+    }
+    return description.length() > 0 ? description.toString() : "vacío";
+  }
+
+  void close() {
+    for (SegmentedLog log : logs.values()) {
+      log.close();
+    }
+  }
+}
@@ -0,0 +1,894 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.FrameCodec;
+import Common.MessagingMetrics;
+import Common.OverflowPolicy;
+import Common.WireProtocol;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Mantiene una conexión TCP persistente por nodo registrado para que el
+ * broadcast no abra un socket nuevo por cada mensaje.
+ *
+ * Cada nodo tiene su propia cola de salida y un único escritor que la vacía,
+ * así que los mensajes llegan en el orden en que se encolaron. El escritor
+ * junta todo lo pendiente (hasta maxBatchSize tramas) en una sola escritura.
+ * Un broadcast se codifica una vez y se encola el mismo FanOut en todas las
+ * colas, sin asignar memoria por destino: cada escritor usa una vista propia
+ * del buffer compartido, que guarda y reutiliza porque los buffers del pool
+ * se reciclan.
+ *
+ * Las colas son acotadas y tienen timeouts de conexión y escritura, de modo
+ * que un nodo lento o colgado solo afecta a sus propios mensajes.
+ *
+ * Cada nodo tiene además un circuito: si una escritura falla (o el detector
+ * de fallos lo suspende) se abre y sus mensajes se descartan sin intentar
+ * conectar. Un sondeo en segundo plano lo cierra cuando el nodo vuelve a
+ * aceptar conexiones; si sigue fallando pasado evictAfterMillis se da por
+ * caído y se avisa con onNodeFailed.
+ */
+public class ConnectionPool {
+  private static final int MAX_CACHED_VIEWS = 32;
+
+  private final Map<ServerNode.NodeInfo, PooledConnection> connections = new ConcurrentHashMap<>();
+  private final long idleTimeoutMillis;
+  private final long healthCheckIntervalMillis;
+  private final Consumer<ServerNode.NodeInfo> onNodeFailed;
+  private long flushWindowMicros = 0;
+  private int maxBatchSize = 64;
+  private int queueCapacity = 1024;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+  private int connectTimeoutMillis = 2_000;
+  private int writeTimeoutMillis = 5_000;
+  private long probeIntervalMillis = 1_000;
+  private long evictAfterMillis = 30_000;
+  // Nodos con mensajes esperando sitio en su cola (BLOCK)
+  private final AtomicInteger backlogged = new AtomicInteger();
+  private ExecutorService writerExecutor;
+  private ScheduledExecutorService maintenanceExecutor;
+  private MessagingMetrics metrics = new MessagingMetrics("pool");
+  private DeliveryListener deliveryListener;
+  private CircuitListener circuitListener;
+
+  private enum Circuit {
+    CLOSED, OPEN, PROBING
+  }
+
+  /** Avisos cuando se deja de enviar a un nodo y cuando se reanuda. */
+  public interface CircuitListener {
+    void onCircuitOpened(ServerNode.NodeInfo node);
+
+    void onCircuitClosed(ServerNode.NodeInfo node);
+  }
+
+  /** Resultado de las escrituras hacia cada nodo. */
+  public interface DeliveryListener {
+    void onDelivered(ServerNode.NodeInfo node, int frames);
+
+    void onFailed(ServerNode.NodeInfo node, int frames);
+  }
+
+  /** Lo que espera en la cola de un nodo: una trama suya o un broadcast (FanOut). */
+  interface Outgoing {
+    /** Trama codificada; si es compartida no se debe mover su posición. */
+    ByteBuffer buffer(WireProtocol protocol);
+
+    boolean shared();
+
+    long enqueuedAt();
+
+    /** Se llama cuando se escribió o se descartó. */
+    void finish();
+  }
+
+  // Trama para un solo nodo, codificada para él
+  private record Single(ByteBuffer buffer, long enqueuedAt) implements Outgoing {
+    @Override
+    public ByteBuffer buffer(WireProtocol protocol) {
+      return buffer;
+    }
+
+    @Override
+    public boolean shared() {
+      return false;
+    }
+
+    @Override
+    public void finish() {
+    }
+  }
+
+  // Cola acotada de un nodo. El array empieza pequeño y se duplica hasta la
+  // capacidad según hace falta, así que un nodo sin tráfico apenas ocupa
+  // memoria; sin nodos enlazados, encolar solo asigna al crecer.
+  private static final class SendQueue {
+    private static final int INITIAL_SIZE = 16;
+
+    private final int capacity;
+    private Outgoing[] items;
+    private int head;
+    private volatile int count;
+
+    SendQueue(int capacity) {
+      this.capacity = capacity;
+      this.items = new Outgoing[Math.min(INITIAL_SIZE, capacity)];
+    }
+
+    synchronized boolean offer(Outgoing outgoing) {
+      if (count == items.length) {
+        if (count == capacity)
+          return false;
+        Outgoing[] grown = new Outgoing[Math.min(capacity, items.length * 2)];
+        for (int i = 0; i < count; i++) {
+          grown[i] = items[(head + i) % items.length];
+        }
+        items = grown;
+        head = 0;
+      }
+      items[(head + count) % items.length] = outgoing;
+      count++;
+      return true;
+    }
+
+    synchronized Outgoing poll() {
+      if (count == 0)
+        return null;
+      Outgoing outgoing = items[head];
+      items[head] = null;
+      head = (head + 1) % items.length;
+      count--;
+      return outgoing;
+    }
+
+    int size() {
+      return count;
+    }
+
+    boolean isEmpty() {
+      return count == 0;
+    }
+
+    // Si está vacía vuelve al tamaño inicial tras una ráfaga
+    synchronized void trim() {
+      if (count == 0 && items.length > INITIAL_SIZE) {
+        items = new Outgoing[INITIAL_SIZE];
+        head = 0;
+      }
+    }
+  }
+
+  private static class PooledConnection {
+    final ServerNode.NodeInfo node;
+    final ReentrantLock lock = new ReentrantLock();
+    final SendQueue pending;
+    final AtomicBoolean draining = new AtomicBoolean();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder delayed = new LongAdder();
+    SocketChannel channel;
+    volatile long lastUsed = System.currentTimeMillis();
+    // Momento en que empezó la escritura en curso (0 si no hay ninguna)
+    volatile long writeStartedAt;
+    volatile boolean writeTimedOut;
+    volatile Circuit circuit = Circuit.CLOSED;
+    // Desde cuándo no se consigue escribir nada (0 si la última escritura fue bien)
+    volatile long failingSince;
+    volatile long lastProbeAt;
+    // Abierto por el detector de fallos: no se sondea hasta resume()
+    volatile boolean suspended;
+    // Lo que no cupo en la cola (con BLOCK o de una recuperación), en orden.
+    // El escritor lo pasa a la cola según se vacía; quien encoló espera luego
+    // en awaitBacklog o en enqueueEncoded.
+    final ArrayDeque<Outgoing> overflow = new ArrayDeque<>();
+    volatile boolean overflowing;
+    // Cuántos entraron y salieron de overflow; protegidos por overflow
+    long overflowAdded;
+    long overflowTaken;
+    // Desde cuándo el nodo no acepta nada y hay mensajes esperando sitio; se
+    // limpia en cuanto el escritor consigue escribir
+    volatile boolean congested;
+    volatile long congestedSince;
+    // Conexión binaria recién abierta: falta enviar el byte MAGIC
+    boolean preamblePending;
+    // Reutilizados por el único escritor para no asignar memoria por envío
+    final List<Outgoing> batch = new ArrayList<>();
+    ByteBuffer[] gathered = new ByteBuffer[16];
+    // Vista propia de cada buffer compartido del pool que ha escrito
+    final Map<ByteBuffer, ByteBuffer> views = new IdentityHashMap<>();
+    Runnable drainTask;
+
+    PooledConnection(ServerNode.NodeInfo node, int capacity) {
+      this.node = node;
+      this.pending = new SendQueue(capacity);
+    }
+
+    boolean isOpen() {
+      return channel != null && channel.isOpen();
+    }
+
+    void close() {
+      try {
+        if (channel != null)
+          channel.close();
+      } catch (IOException ignored) {
+      }
+      channel = null;
+    }
+  }
+
+  public ConnectionPool(long idleTimeoutMillis, long healthCheckIntervalMillis,
+      Consumer<ServerNode.NodeInfo> onNodeFailed) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    this.onNodeFailed = onNodeFailed;
+  }
+
+  /**
+   * Cuánto espera el escritor a que se acumulen más mensajes antes de escribir
+   * (0 = escribe en cuanto hay algo) y cuántas tramas junta como máximo.
+   */
+  public void setWriteCoalescing(long flushWindowMicros, int maxBatchSize) {
+    this.flushWindowMicros = flushWindowMicros;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+  }
+
+  /**
+   * Capacidad de la cola de cada nodo y qué hacer cuando se llena. Por
+   * defecto DROP_OLDEST, que nunca hace esperar a quien encola. Con BLOCK no
+   * se pierde nada mientras el nodo acepte datos dentro del timeout de
+   * escritura, pero quien llama a awaitBacklog espera a los nodos lentos.
+   */
+  public void setSendBuffer(int queueCapacity, OverflowPolicy overflowPolicy) {
+    this.queueCapacity = Math.max(1, queueCapacity);
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public void setTimeouts(int connectTimeoutMillis, int writeTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.writeTimeoutMillis = writeTimeoutMillis;
+  }
+
+  public void setMetrics(MessagingMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public void setDeliveryListener(DeliveryListener deliveryListener) {
+    this.deliveryListener = deliveryListener;
+  }
+
+  public void setCircuitListener(CircuitListener circuitListener) {
+    this.circuitListener = circuitListener;
+  }
+
+  /**
+   * Cada cuánto se sondea un nodo con el circuito abierto y cuánto tiempo
+   * fallando se tolera antes de darlo por caído.
+   */
+  public void setCircuitBreaker(long probeIntervalMillis, long evictAfterMillis) {
+    this.probeIntervalMillis = probeIntervalMillis;
+    this.evictAfterMillis = evictAfterMillis;
+  }
+
+  public void start(ExecutorService writerExecutor) {
+    this.writerExecutor = writerExecutor;
+    maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "pool-mantenimiento");
+      t.setDaemon(true);
+      return t;
+    });
+    maintenanceExecutor.scheduleWithFixedDelay(this::runMaintenance, healthCheckIntervalMillis,
+        healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    long watchdogInterval = Math.max(50, writeTimeoutMillis / 4);
+    maintenanceExecutor.scheduleWithFixedDelay(this::abortStalledWrites, watchdogInterval, watchdogInterval,
+        TimeUnit.MILLISECONDS);
+    maintenanceExecutor.scheduleWithFixedDelay(this::expireOverflow, watchdogInterval, watchdogInterval,
+        TimeUnit.MILLISECONDS);
+    long probeCheckInterval = Math.max(50, probeIntervalMillis / 4);
+    maintenanceExecutor.scheduleWithFixedDelay(this::probeOpenCircuits, probeCheckInterval, probeCheckInterval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Encola la trama para el nodo, codificada con el protocolo con el que se
+   * registró, y despierta a su escritor si no está activo. Si el circuito del
+   * nodo está abierto la trama se descarta sin esperar.
+   */
+  public void enqueue(ServerNode.NodeInfo node, Frame frame) {
+    PooledConnection connection = openConnection(node);
+    if (connection != null)
+      enqueue(connection, new Single(FrameCodec.encode(frame, node.protocol), System.nanoTime()));
+  }
+
+  /** Encola para el nodo el broadcast, sin copiarlo ni asignar memoria. */
+  void enqueue(ServerNode.NodeInfo node, FanOut fanOut) {
+    PooledConnection connection = openConnection(node);
+    if (connection == null)
+      return;
+    // Se codifica aquí y no en el escritor
+    fanOut.buffer(connection.node.protocol);
+    fanOut.add();
+    enqueue(connection, fanOut);
+  }
+
+  private PooledConnection connectionFor(ServerNode.NodeInfo node) {
+    PooledConnection connection = connections.get(node);
+    if (connection != null)
+      return connection;
+    return connections.computeIfAbsent(node, n -> {
+      PooledConnection created = new PooledConnection(n, queueCapacity);
+      created.drainTask = () -> drain(created);
+      return created;
+    });
+  }
+
+  // Conexión del nodo, o null si su circuito está abierto (se cuenta el descarte)
+  private PooledConnection openConnection(ServerNode.NodeInfo node) {
+    PooledConnection connection = connectionFor(node);
+    if (connection.circuit != Circuit.CLOSED) {
+      connection.dropped.increment();
+      metrics.messagesDropped(1);
+      return null;
+    }
+    return connection;
+  }
+
+  private void enqueue(PooledConnection connection, Outgoing encoded) {
+    // Mientras haya mensajes esperando sitio, los nuevos van detrás
+    if ((connection.overflowing || !connection.pending.offer(encoded)) && !handleOverflow(connection, encoded))
+      return;
+    scheduleDrain(connection);
+  }
+
+  /**
+   * Encola varias tramas ya codificadas en binario para enviarlas en una sola
+   * escritura. No se descartan si la cola está llena: esperan en overflow,
+   * detrás de lo que ya esperaba, hasta el timeout de escritura. Devuelve
+   * false si no se pudieron encolar.
+   */
+  boolean enqueueEncoded(ServerNode.NodeInfo node, ByteBuffer frames) {
+    PooledConnection connection = connectionFor(node);
+    if (connection.circuit != Circuit.CLOSED)
+      return false;
+    Outgoing outgoing = new Single(frames, System.nanoTime());
+    if (!connection.overflowing && connection.pending.offer(outgoing)) {
+      scheduleDrain(connection);
+      return true;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    synchronized (connection.overflow) {
+      if (!append(connection, outgoing)) {
+        scheduleDrain(connection);
+        return true;
+      }
+      long ticket = connection.overflowAdded;
+      scheduleDrain(connection);
+      return awaitTaken(connection, ticket, deadline) && connection.circuit == Circuit.CLOSED;
+    }
+  }
+
+  private boolean handleOverflow(PooledConnection connection, Outgoing encoded) {
+    // Con BLOCK, o si algo (una recuperación) ya espera sitio, va detrás sea
+    // cual sea la política para no adelantarlo. No se espera aquí: quien
+    // encola suele tener el monitor de ServerNode.
+    if (overflowPolicy == OverflowPolicy.BLOCK || connection.overflowing) {
+      synchronized (connection.overflow) {
+        if (overflowPolicy == OverflowPolicy.BLOCK || connection.overflowing) {
+          if (append(connection, encoded))
+            connection.delayed.increment();
+          return true;
+        }
+      }
+    }
+    switch (overflowPolicy) {
+      case DROP_OLDEST -> {
+        while (!connection.pending.offer(encoded)) {
+          Outgoing oldest = connection.pending.poll();
+          if (oldest != null)
+            drop(connection, oldest);
+        }
+        return true;
+      }
+      case DROP_NEWEST -> {
+        drop(connection, encoded);
+        return false;
+      }
+      default -> {
+        drop(connection, encoded);
+        System.err.println("Cola llena para " + connection.node + ", se desconecta por consumidor lento");
+        failNode(connection);
+        return false;
+      }
+    }
+  }
+
+  // Con el monitor de overflow tomado: a la cola si no hay nada esperando
+  // sitio; si no, al final de overflow. Devuelve true si quedó esperando.
+  private boolean append(PooledConnection connection, Outgoing encoded) {
+    if (connection.overflow.isEmpty() && connection.pending.offer(encoded))
+      return false;
+    connection.overflow.add(encoded);
+    connection.overflowAdded++;
+    if (!connection.congested) {
+      connection.congestedSince = System.nanoTime();
+      connection.congested = true;
+    }
+    if (!connection.overflowing) {
+      connection.overflowing = true;
+      backlogged.incrementAndGet();
+    }
+    return true;
+  }
+
+  private void drop(PooledConnection connection, Outgoing outgoing) {
+    connection.dropped.increment();
+    metrics.messagesDropped(1);
+    outgoing.finish();
+  }
+
+  private void failNode(PooledConnection connection) {
+    if (connections.remove(connection.node, connection)) {
+      discardPending(connection);
+      onNodeFailed.accept(connection.node);
+    }
+  }
+
+  private void discardPending(PooledConnection connection) {
+    Outgoing outgoing;
+    while ((outgoing = connection.pending.poll()) != null) {
+      drop(connection, outgoing);
+    }
+    if (!connection.overflowing)
+      return;
+    synchronized (connection.overflow) {
+      while ((outgoing = connection.overflow.poll()) != null) {
+        connection.overflowTaken++;
+        drop(connection, outgoing);
+      }
+      settleOverflow(connection);
+    }
+  }
+
+  // Pasa a la cola, en orden, lo que esperaba sitio
+  private void refill(PooledConnection connection) {
+    if (!connection.overflowing)
+      return;
+    synchronized (connection.overflow) {
+      Outgoing waiting;
+      while ((waiting = connection.overflow.peek()) != null && connection.pending.offer(waiting)) {
+        connection.overflow.poll();
+        connection.overflowTaken++;
+      }
+      settleOverflow(connection);
+    }
+  }
+
+  // Con el monitor de overflow tomado
+  private void settleOverflow(PooledConnection connection) {
+    if (connection.overflowing && connection.overflow.isEmpty()) {
+      connection.overflowing = false;
+      backlogged.decrementAndGet();
+    }
+    connection.overflow.notifyAll();
+  }
+
+  /**
+   * Con BLOCK, espera a que lo encolado hasta ahora para nodos con la cola
+   * llena entre en sus colas; lo que no entra a tiempo se descarta. El plazo
+   * es el timeout de escritura contado desde que cada nodo dejó de aceptar
+   * datos, no desde cada mensaje: un nodo parado hace esperar una vez y los
+   * broadcasts siguientes ya no lo esperan. ServerNode lo llama después de
+   * soltar su monitor, para que un nodo lento no frene los envíos a los
+   * demás, y nunca desde un bucle NIO: bloquearía a todas las conexiones del
+   * bucle. Sin esta espera lo que no entra a tiempo lo descarta expireOverflow.
+   */
+  void awaitBacklog() {
+    if (backlogged.get() == 0)
+      return;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    for (PooledConnection connection : connections.values()) {
+      if (!connection.overflowing)
+        continue;
+      synchronized (connection.overflow) {
+        awaitTaken(connection, connection.overflowAdded, deadline);
+      }
+    }
+  }
+
+  // Con el monitor de overflow tomado: espera a que salga de overflow todo lo
+  // añadido hasta target y descarta lo que no salga a tiempo. El plazo se
+  // adelanta si el nodo lleva más del timeout sin aceptar nada. Devuelve
+  // false si hubo que descartar.
+  private boolean awaitTaken(PooledConnection connection, long target, long deadline) {
+    long timeout = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    try {
+      while (connection.overflowTaken < target) {
+        long until = deadline;
+        if (connection.congested && connection.congestedSince + timeout - deadline < 0)
+          until = connection.congestedSince + timeout;
+        long left = until - System.nanoTime();
+        if (left <= 0)
+          break;
+        TimeUnit.NANOSECONDS.timedWait(connection.overflow, left);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    boolean taken = connection.overflowTaken >= target;
+    while (connection.overflowTaken < target) {
+      connection.overflowTaken++;
+      drop(connection, connection.overflow.poll());
+    }
+    settleOverflow(connection);
+    return taken;
+  }
+
+  // Descarta lo que lleva más del timeout de escritura esperando sitio y
+  // nadie esperó en awaitBacklog (encolado desde un bucle NIO)
+  private void expireOverflow() {
+    if (backlogged.get() == 0)
+      return;
+    long expired = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    for (PooledConnection connection : connections.values()) {
+      if (!connection.overflowing)
+        continue;
+      synchronized (connection.overflow) {
+        Outgoing oldest;
+        while ((oldest = connection.overflow.peek()) != null && oldest.enqueuedAt() - expired < 0) {
+          connection.overflow.poll();
+          connection.overflowTaken++;
+          drop(connection, oldest);
+        }
+        settleOverflow(connection);
+      }
+    }
+  }
+
+  private void scheduleDrain(PooledConnection connection) {
+    if (connection.draining.compareAndSet(false, true)) {
+      try {
+        writerExecutor.execute(connection.drainTask);
+      } catch (RejectedExecutionException e) {
+        connection.draining.set(false);
+      }
+    }
+  }
+
+  private void drain(PooledConnection connection) {
+    try {
+      if (flushWindowMicros > 0 && connection.pending.size() < maxBatchSize) {
+        LockSupport.parkNanos(flushWindowMicros * 1000);
+      }
+      List<Outgoing> batch = connection.batch;
+      batch.clear();
+      while (true) {
+        if (connection.circuit != Circuit.CLOSED) {
+          discardPending(connection);
+          return;
+        }
+        Outgoing outgoing;
+        while (batch.size() < maxBatchSize && (outgoing = connection.pending.poll()) != null) {
+          batch.add(outgoing);
+        }
+        refill(connection);
+        if (batch.isEmpty())
+          break;
+        boolean written = writeBatch(connection, batch);
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+          Outgoing sent = batch.get(i);
+          if (written)
+            metrics.messageSent(now - sent.enqueuedAt());
+          sent.finish();
+        }
+        if (deliveryListener != null) {
+          if (written) {
+            deliveryListener.onDelivered(connection.node, batch.size());
+          } else {
+            deliveryListener.onFailed(connection.node, batch.size());
+          }
+        }
+        if (!written) {
+          metrics.messagesFailed(batch.size());
+          openCircuit(connection);
+          return;
+        }
+        if (connection.circuit == Circuit.CLOSED)
+          connection.failingSince = 0;
+        if (connection.congested)
+          connection.congested = false;
+        batch.clear();
+      }
+    } finally {
+      connection.batch.clear();
+      connection.draining.set(false);
+    }
+    // Algo pudo llegar justo después del último poll
+    if ((!connection.pending.isEmpty() || connection.overflowing) && connections.get(connection.node) == connection) {
+      scheduleDrain(connection);
+    }
+  }
+
+  private boolean writeBatch(PooledConnection connection, List<Outgoing> batch) {
+    connection.lock.lock();
+    try {
+      try {
+        write(connection, batch);
+      } catch (IOException e) {
+        connection.close();
+        // Un nodo que no acepta datos a tiempo no merece otro intento
+        if (connection.writeTimedOut || connection.circuit != Circuit.CLOSED)
+          throw e;
+        for (int i = 0; i < batch.size(); i++) {
+          Outgoing outgoing = batch.get(i);
+          if (!outgoing.shared())
+            outgoing.buffer(connection.node.protocol).rewind();
+        }
+        write(connection, batch);
+      }
+      return true;
+    } catch (IOException e) {
+      connection.close();
+      return false;
+    } finally {
+      connection.lock.unlock();
+    }
+  }
+
+  private void write(PooledConnection connection, List<Outgoing> batch) throws IOException {
+    if (!connection.isOpen())
+      connect(connection);
+    int count = batch.size() + (connection.preamblePending ? 1 : 0);
+    if (connection.gathered.length < count)
+      connection.gathered = new ByteBuffer[Math.max(count, connection.gathered.length * 2)];
+    ByteBuffer[] gathered = connection.gathered;
+    int next = 0;
+    if (connection.preamblePending)
+      gathered[next++] = ByteBuffer.wrap(new byte[] { FrameCodec.MAGIC });
+    for (int i = 0; i < batch.size(); i++) {
+      Outgoing outgoing = batch.get(i);
+      ByteBuffer buffer = outgoing.buffer(connection.node.protocol);
+      gathered[next++] = outgoing.shared() ? viewOf(connection, buffer) : buffer;
+    }
+    ByteBuffer last = gathered[count - 1];
+    connection.writeStartedAt = System.currentTimeMillis();
+    try {
+      while (last.hasRemaining()) {
+        connection.channel.write(gathered, 0, count);
+      }
+    } finally {
+      connection.writeStartedAt = 0;
+      Arrays.fill(gathered, 0, count, null);
+    }
+    connection.preamblePending = false;
+    connection.lastUsed = System.currentTimeMillis();
+  }
+
+
+  // Vista con posición propia de un buffer compartido. Las de los buffers del
+  // pool se reutilizan; las de los grandes, que van al heap, no.
+  private static ByteBuffer viewOf(PooledConnection connection, ByteBuffer shared) {
+    if (!shared.isDirect())
+      return shared.asReadOnlyBuffer();
+    ByteBuffer view = connection.views.get(shared);
+    if (view == null) {
+      // El pool puede descartar buffers: así no se retienen indefinidamente
+      if (connection.views.size() >= MAX_CACHED_VIEWS)
+        connection.views.clear();
+      view = shared.asReadOnlyBuffer();
+      connection.views.put(shared, view);
+    }
+    return view.limit(shared.limit()).position(shared.position());
+  }
+
+  private void connect(PooledConnection connection) throws IOException {
+    ServerNode.NodeInfo node = connection.node;
+    connection.channel = SocketChannel.open();
+    try {
+      connection.channel.socket().connect(new InetSocketAddress(node.ip, node.port), connectTimeoutMillis);
+    } catch (IOException e) {
+      connection.close();
+      throw e;
+    }
+    connection.channel.socket().setTcpNoDelay(true);
+    connection.preamblePending = node.protocol == WireProtocol.BINARY;
+  }
+
+  private void openCircuit(PooledConnection connection) {
+    synchronized (connection) {
+      if (connection.circuit == Circuit.OPEN)
+        return;
+      long now = System.currentTimeMillis();
+      if (connection.failingSince == 0)
+        connection.failingSince = now;
+      connection.lastProbeAt = now;
+      connection.circuit = Circuit.OPEN;
+    }
+    discardPending(connection);
+    System.err.println("Circuito abierto para " + connection.node + ", sus mensajes se descartan hasta que responda");
+    if (circuitListener != null)
+      circuitListener.onCircuitOpened(connection.node);
+  }
+
+  /** El detector de fallos sospecha del nodo: se deja de enviarle sin esperar a un error. */
+  public void suspend(ServerNode.NodeInfo node) {
+    PooledConnection connection = connectionFor(node);
+    connection.suspended = true;
+    SocketChannel channel = connection.channel;
+    openCircuit(connection);
+    try {
+      // Desbloquea una escritura que estuviera colgada en ese nodo
+      if (channel != null)
+        channel.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /** El nodo vuelve a dar señales de vida: se sondea en la próxima ronda. */
+  public void resume(ServerNode.NodeInfo node) {
+    PooledConnection connection = connections.get(node);
+    if (connection == null || !connection.suspended)
+      return;
+    connection.suspended = false;
+    connection.lastProbeAt = 0;
+  }
+
+  private void probeOpenCircuits() {
+    long now = System.currentTimeMillis();
+    for (PooledConnection connection : connections.values()) {
+      if (connection.suspended || now - connection.lastProbeAt < probeIntervalMillis)
+        continue;
+      synchronized (connection) {
+        if (connection.circuit != Circuit.OPEN)
+          continue;
+        connection.circuit = Circuit.PROBING;
+        connection.lastProbeAt = now;
+      }
+      try {
+        writerExecutor.execute(() -> probe(connection));
+      } catch (RejectedExecutionException e) {
+        connection.circuit = Circuit.OPEN;
+      }
+    }
+  }
+
+  // Intenta conectar sin enviar nada; la conexión queda abierta para el siguiente envío
+  private void probe(PooledConnection connection) {
+    boolean recovered;
+    connection.lock.lock();
+    try {
+      connection.close();
+      connect(connection);
+      connection.writeTimedOut = false;
+      recovered = true;
+    } catch (IOException e) {
+      recovered = false;
+    } finally {
+      connection.lock.unlock();
+    }
+    synchronized (connection) {
+      if (connection.circuit != Circuit.PROBING)
+        return;
+      connection.circuit = recovered ? Circuit.CLOSED : Circuit.OPEN;
+    }
+    if (recovered) {
+      System.out.println("El nodo " + connection.node + " responde de nuevo, se reanudan los envíos");
+      if (circuitListener != null)
+        circuitListener.onCircuitClosed(connection.node);
+    } else if (System.currentTimeMillis() - connection.failingSince > evictAfterMillis) {
+      System.err.println("El nodo " + connection.node + " no responde desde hace " + evictAfterMillis / 1000
+          + " s, se da por caído");
+      failNode(connection);
+    }
+  }
+
+  public void remove(ServerNode.NodeInfo node) {
+    PooledConnection connection = connections.remove(node);
+    if (connection != null) {
+      discardPending(connection);
+      connection.lock.lock();
+      try {
+        connection.close();
+      } finally {
+        connection.lock.unlock();
+      }
+    }
+  }
+
+  public int size() {
+    return connections.size();
+  }
+
+  /** Nodos con mensajes descartados o retrasados, con sus contadores. */
+  public List<String> describeTroubledNodes() {
+    List<String> troubled = new ArrayList<>();
+    for (PooledConnection connection : connections.values()) {
+      long dropped = connection.dropped.sum();
+      long delayed = connection.delayed.sum();
+      if (dropped > 0 || delayed > 0 || connection.circuit != Circuit.CLOSED) {
+        troubled.add(connection.node + ": descartados " + dropped + ", retrasados " + delayed + ", en cola "
+            + connection.pending.size() + (connection.circuit != Circuit.CLOSED ? ", circuito abierto" : ""));
+      }
+    }
+    return troubled;
+  }
+
+  // Cerrar el canal desbloquea al escritor con AsynchronousCloseException
+  private void abortStalledWrites() {
+    long now = System.currentTimeMillis();
+    for (PooledConnection connection : connections.values()) {
+      long startedAt = connection.writeStartedAt;
+      if (startedAt != 0 && now - startedAt > writeTimeoutMillis) {
+        System.err.println("Escritura a " + connection.node + " superó " + writeTimeoutMillis + " ms, cerrando");
+        connection.writeTimedOut = true;
+        try {
+          SocketChannel channel = connection.channel;
+          if (channel != null)
+            channel.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void runMaintenance() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<ServerNode.NodeInfo, PooledConnection> entry : connections.entrySet()) {
+      PooledConnection connection = entry.getValue();
+      if (connection.circuit != Circuit.CLOSED)
+        continue; // De esos se encarga el sondeo
+      if (!connection.lock.tryLock())
+        continue; // Está escribiendo, así que sigue viva
+      try {
+        if (now - connection.lastUsed > idleTimeoutMillis && connection.pending.isEmpty()) {
+          connection.close();
+          connection.pending.trim();
+        } else if (connection.isOpen() && !isHealthy(connection.channel)) {
+          System.err.println("Conexión con " + entry.getKey() + " cerrada por el nodo, se reabrirá en el próximo envío");
+          connection.close();
+        }
+      } finally {
+        connection.lock.unlock();
+      }
+    }
+  }
+
+  // Los nodos nunca escriben hacia el servidor, así que leer un EOF significa
+  // que el otro extremo cerró la conexión.
+  private boolean isHealthy(SocketChannel channel) {
+    try {
+      channel.configureBlocking(false);
+      try {
+        return channel.read(ByteBuffer.allocate(1)) != -1;
+      } finally {
+        channel.configureBlocking(true);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public void closeAll() {
+    if (maintenanceExecutor != null)
+      maintenanceExecutor.shutdownNow();
+    for (ServerNode.NodeInfo node : connections.keySet()) {
+      remove(node);
+    }
+  }
+}
@@ -1,28 +1,128 @@
 package BroadCast;
 
+import Common.BatchDispatcher;
+import Common.BufferPool;
+import Common.DuplicateFilter;
+import Common.ExecutionMode;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.FrameReader;
+import Common.FrameWriter;
+import Common.GapTracker;
+import Common.IoEngine;
+import Common.MessagingMetrics;
+import Common.NioServer;
+import Common.PayloadCompression;
+import Common.WireProtocol;
+
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DistributedNode {
+  public static final long HEARTBEAT_INTERVAL_MILLIS = 1_000;
+  private static final int MAX_REDIRECTS = 3;
+  private static final int FAILOVER_AFTER_MISSED_HEARTBEATS = 3;
+
   private String nodeId;
   private String ip;
   private int port;
   private NodeInfo serverNode;
   private ServerSocket serverSocket;
+  private NioServer nioServer;
+  private final IoEngine ioEngine;
   private volatile boolean running = true;
   private ExecutorService executor;
+  private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+  private final Set<Socket> clientSockets = ConcurrentHashMap.newKeySet();
+  private WireProtocol wireProtocol = WireProtocol.BINARY;
+  private final AtomicLong sequence = new AtomicLong();
+  private Socket serverConnection;
+  private FrameWriter serverOutput;
+  // Hijos asignados por el servidor en modo árbol y conexiones para reenviarles
+  private volatile List<ServerNode.NodeInfo> relayChildren = List.of();
+  private ConnectionPool relayPool;
+  private final BufferPool bufferPool = new BufferPool(64);
+  // En un clúster cada servidor numera por su cuenta (origen en los bits altos)
+  private final Map<Long, DuplicateFilter> duplicateFilters = new ConcurrentHashMap<>();
+  private final MessagingMetrics metrics;
+  // Recepción multicast y reparación de huecos mediante NACK
+  private String multicastInterface;
+  private MulticastReceiver multicastReceiver;
+  private ScheduledExecutorService repairExecutor;
+  private final Map<Long, GapTracker> gapTrackers = new ConcurrentHashMap<>();
+  private final Map<String, Integer> nackAttempts = new HashMap<>();
+  private ScheduledExecutorService heartbeatExecutor;
+  // Servidores del clúster, para cambiar de servidor si el actual cae
+  private volatile List<NodeInfo> clusterServers = List.of();
+  private int redirects;
+  private int missedHeartbeats;
+  // Al abrir una conexión nueva con el servidor se le pide lo que se perdió
+  private boolean catchUpPending;
+  // Por origen, la secuencia sin huecos desde la que se pidió FETCH
+  private final Map<Long, Long> fetchedFrom = new HashMap<>();
+  private final Map<Long, Long> gapSeenAt = new HashMap<>();
 
   private MessageListener listener;
+  private volatile BatchDispatcher<Frame> receivedDispatcher;
+  static final int MAX_RECEIVED_BATCH = 10_000;
+  // Avisos que esperan al listener; si no da abasto se descartan
+  static final int MAX_PENDING_RECEIVED = 100_000;
 
   public interface MessageListener {
     void onMessageReceived(String message);
 
     void onStatusUpdate(String status);
+
+    /** Recibe la trama completa; por defecto la muestra como texto. */
+    default void onFrameReceived(Frame frame) {
+      onMessageReceived(FrameCodec.toLine(frame));
+    }
+
+    /** Con entrega por lotes; por defecto trata cada trama por separado. */
+    default void onMessagesReceived(List<Frame> frames) {
+      for (Frame frame : frames) {
+        onFrameReceived(frame);
+      }
+    }
   }
 
   public void setMessageListener(MessageListener listener) {
+    setMessageListener(listener, 0);
+  }
+
+  /**
+   * Con batchMillis > 0 los mensajes recibidos se entregan agrupados en
+   * onMessagesReceived, como mucho uno por ventana, desde un hilo propio.
+   */
+  public void setMessageListener(MessageListener listener, long batchMillis) {
+    BatchDispatcher<Frame> previous = receivedDispatcher;
     this.listener = listener;
+    if (batchMillis > 0 && listener != null) {
+      receivedDispatcher = BatchDispatcher.start(nodeId, batchMillis, MAX_RECEIVED_BATCH, MAX_PENDING_RECEIVED,
+          listener::onMessagesReceived);
+    } else {
+      receivedDispatcher = null;
+    }
+    if (previous != null)
+      previous.close();
+  }
+
+  private void notifyReceived(Frame frame) {
+    BatchDispatcher<Frame> dispatcher = receivedDispatcher;
+    if (dispatcher != null) {
+      if (!dispatcher.submit(frame))
+        metrics.messagesDropped(1);
+    } else if (listener != null) {
+      listener.onFrameReceived(frame);
+    }
   }
 
   public static class NodeInfo {
@@ -41,23 +141,70 @@ public class DistributedNode {
   }
 
   public DistributedNode(String nodeId, String ip, int port, NodeInfo serverNode) {
+    this(nodeId, ip, port, serverNode, IoEngine.BLOCKING);
+  }
+
+  public DistributedNode(String nodeId, String ip, int port, NodeInfo serverNode, IoEngine ioEngine) {
     this.nodeId = nodeId;
     this.ip = ip;
     this.port = port;
     this.serverNode = serverNode;
-    this.executor = Executors.newCachedThreadPool();
+    this.ioEngine = ioEngine;
+    this.metrics = new MessagingMetrics("DistributedNode-" + nodeId);
+  }
+
+  /** Debe llamarse antes de start(). */
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+  }
+
+  /** Protocolo para hablar con el servidor; TEXT solo por compatibilidad. */
+  public void setWireProtocol(WireProtocol wireProtocol) {
+    this.wireProtocol = wireProtocol;
+  }
+
+  /**
+   * Interfaz por la que unirse al grupo multicast que anuncie el servidor; por
+   * defecto la que tiene la IP del nodo.
+   */
+  public void setMulticastInterface(String interfaceName) {
+    this.multicastInterface = interfaceName;
   }
 
   public String getNodeId() {
     return nodeId;
   }
 
+  public MessagingMetrics getMetrics() {
+    return metrics;
+  }
+
   public void start() {
-    Thread serverThread = new Thread(this::runServer);
-    serverThread.setDaemon(true);
-    serverThread.start();
+    executor = executionMode.newExecutor();
+    relayPool = new ConnectionPool(60_000, 5_000,
+        child -> System.err.println(nodeId + " No se pudo reenviar al nodo hijo " + child));
+    relayPool.setMetrics(metrics);
+    relayPool.start(executor);
+    metrics.register();
+    if (ioEngine == IoEngine.NIO) {
+      startNioServer();
+    } else {
+      Thread serverThread = new Thread(this::runServer);
+      serverThread.setDaemon(true);
+      serverThread.start();
+    }
 
     registerWithServer();
+    // Los latidos solo existen en el protocolo binario
+    if (wireProtocol == WireProtocol.BINARY) {
+      heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, nodeId + "-latidos");
+        t.setDaemon(true);
+        return t;
+      });
+      heartbeatExecutor.scheduleAtFixedRate(this::sendHeartbeat, HEARTBEAT_INTERVAL_MILLIS,
+          HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
     if (listener != null) {
       listener.onStatusUpdate("Nodo " + nodeId + " iniciado. Escuchando en " + ip + ":" + port);
@@ -82,45 +229,376 @@ public class DistributedNode {
     }
   }
 
+  private void startNioServer() {
+    nioServer = new NioServer(ip, port, 1, nodeId, (connection, frame) -> handleFrame(frame));
+    try {
+      nioServer.start();
+    } catch (IOException e) {
+      System.err.println(nodeId + " Error iniciando servidor: " + e.getMessage());
+    }
+  }
+
   private void handleClientConnection(Socket clientSocket) {
-    try (BufferedReader input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-      String message = input.readLine();
-      if (message != null && listener != null) {
-        listener.onMessageReceived(message);
+    clientSockets.add(clientSocket);
+    try (Socket socket = clientSocket) {
+      FrameReader input = new FrameReader(socket.getInputStream());
+      Frame frame;
+      while ((frame = input.read()) != null) {
+        handleFrame(frame);
       }
     } catch (IOException e) {
-      System.err.println(nodeId + " Error manejando cliente: " + e.getMessage());
+      if (running) {
+        System.err.println(nodeId + " Error manejando cliente: " + e.getMessage());
+      }
+    } finally {
+      clientSockets.remove(clientSocket);
+    }
+  }
+
+  private void handleFrame(Frame received) {
+    // Se reenvía a los hijos tal como llegó, comprimida o no
+    Frame frame;
+    try {
+      frame = PayloadCompression.decompress(received);
+    } catch (IOException e) {
+      System.err.println(nodeId + " " + e.getMessage());
+      return;
+    }
+    if (frame.type == Frame.TOPOLOGY) {
+      updateRelayChildren(frame.payloadAsString());
+      return;
+    }
+    if (frame.type == Frame.MULTICAST) {
+      joinMulticast(frame.payloadAsString());
+      return;
+    }
+    if (frame.type == Frame.REDIRECT) {
+      followRedirect(frame.payloadAsString());
+      return;
+    }
+    if (frame.type == Frame.CLUSTER) {
+      updateClusterServers(frame.payloadAsString());
+      return;
+    }
+    if (frame.type == Frame.FETCH) {
+      startGapTracking(frame.payloadAsString());
+      return;
+    }
+    // El servidor anuncia por multicast su último broadcast: así se ve que se
+    // perdieron los últimos datagramas aunque no llegue nada después
+    if (frame.type == Frame.HEARTBEAT) {
+      if (frame.sequence > 0)
+        gapTrackers.computeIfAbsent(ServerCluster.originOf(frame.sequence), o -> new GapTracker())
+            .expectUpTo(frame.sequence);
+      return;
+    }
+    if (frame.sequence > 0 && (frame.type == Frame.MESSAGE || frame.type == Frame.STATUS)) {
+      long origin = ServerCluster.originOf(frame.sequence);
+      GapTracker gapTracker = gapTrackers.computeIfAbsent(origin, o -> new GapTracker());
+      // Lo que llega del log puede quedar por detrás de la ventana del filtro
+      boolean missing = gapTracker.isMissing(frame.sequence);
+      if (!duplicateFilters.computeIfAbsent(origin, o -> new DuplicateFilter(4096)).firstTime(frame.sequence)
+          && !missing) {
+        metrics.messageDuplicated();
+        return;
+      }
+      gapTracker.record(frame.sequence);
+      List<ServerNode.NodeInfo> children = relayChildren;
+      if (!children.isEmpty()) {
+        FanOut fanOut = new FanOut(metrics, received, bufferPool);
+        for (ServerNode.NodeInfo child : children) {
+          relayPool.enqueue(child, fanOut);
+        }
+        fanOut.done();
+      }
+    }
+    metrics.messageReceived();
+    notifyReceived(frame);
+  }
+
+  // Los orígenes que ya se seguían no cambian: tras un cambio de servidor se
+  // sigue pidiendo desde lo último recibido. La primera posición es la del
+  // propio servidor; si ya se había recibido algo posterior, el servidor se
+  // reinició sin log y numera de nuevo, así que ese origen empieza de cero.
+  private void startGapTracking(String positions) {
+    boolean own = true;
+    for (String position : positions.split(",")) {
+      try {
+        long last = Long.parseLong(position);
+        long origin = ServerCluster.originOf(last);
+        GapTracker current = gapTrackers.get(origin);
+        if (own && current != null && current.highest() > last) {
+          System.out.println(nodeId + " El servidor volvió a numerar desde " + ServerCluster.localOf(last)
+              + ", se reinicia el seguimiento de secuencias");
+          duplicateFilters.remove(origin);
+          gapTrackers.remove(origin, current);
+        }
+        own = false;
+        gapTrackers.computeIfAbsent(origin, _ -> {
+          GapTracker gapTracker = new GapTracker();
+          gapTracker.record(last);
+          return gapTracker;
+        });
+      } catch (NumberFormatException ignored) {
+      }
+    }
+  }
+
+  private void updateRelayChildren(String payload) {
+    List<ServerNode.NodeInfo> children = new ArrayList<>();
+    for (String address : payload.split(",")) {
+      int separator = address.lastIndexOf(':');
+      if (separator > 0) {
+        children.add(new ServerNode.NodeInfo(address.substring(0, separator),
+            Integer.parseInt(address.substring(separator + 1)), WireProtocol.BINARY));
+      }
+    }
+    for (ServerNode.NodeInfo previous : relayChildren) {
+      if (!children.contains(previous))
+        relayPool.remove(previous);
+    }
+    relayChildren = List.copyOf(children);
+  }
+
+  private synchronized void joinMulticast(String groupDescription) {
+    if (multicastReceiver != null)
+      return;
+    try {
+      int separator = groupDescription.lastIndexOf(':');
+      String group = groupDescription.substring(0, separator);
+      int groupPort = Integer.parseInt(groupDescription.substring(separator + 1));
+      NetworkInterface networkInterface = multicastInterface != null ? NetworkInterface.getByName(multicastInterface)
+          : NetworkInterface.getByInetAddress(InetAddress.getByName(ip));
+      multicastReceiver = new MulticastReceiver(group, groupPort, networkInterface, nodeId, this::handleFrame);
+      multicastReceiver.start();
+      repairExecutor = Executors.newSingleThreadScheduledExecutor();
+      repairExecutor.scheduleWithFixedDelay(this::requestMissing, 200, 200, TimeUnit.MILLISECONDS);
+      if (listener != null) {
+        listener.onStatusUpdate("Recibiendo broadcasts por multicast en " + groupDescription);
+      }
+    } catch (IOException | RuntimeException e) {
+      multicastReceiver = null;
+      System.err.println(nodeId + " No se pudo unir al grupo multicast " + groupDescription + ": " + e.getMessage());
     }
   }
 
+  // Un hueco que sigue abierto en dos revisiones seguidas se pide al servidor;
+  // tras varios intentos se da por perdido.
+  private void requestMissing() {
+    Map<String, Integer> stillMissing = new HashMap<>();
+    for (GapTracker gapTracker : gapTrackers.values()) {
+      for (long[] range : gapTracker.missingRanges()) {
+        String key = range[0] + ":" + range[1];
+        int attempts = nackAttempts.getOrDefault(key, -1) + 1;
+        if (attempts > 5) {
+          gapTracker.skipTo(range[1]);
+          continue;
+        }
+        if (attempts > 0) {
+          sendFrameToServer(new Frame(Frame.NACK, nodeId, sequence.incrementAndGet(), ip + ":" + port + ":" + key));
+        }
+        stillMissing.put(key, attempts);
+      }
+    }
+    nackAttempts.clear();
+    nackAttempts.putAll(stillMissing);
+  }
+
   private void registerWithServer() {
-    sendMessageToServer("REGISTER:" + this.ip + ":" + this.port);
+    sendFrameToServer(new Frame(Frame.REGISTER, nodeId, sequence.incrementAndGet(), this.ip + ":" + this.port));
+  }
+
+  private static NodeInfo parseServer(String address) {
+    int separator = address.lastIndexOf(':');
+    if (separator <= 0)
+      return null;
+    try {
+      return new NodeInfo(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  // El servidor acepta el registro y envía la lista del clúster
+  private synchronized void updateClusterServers(String payload) {
+    List<NodeInfo> servers = new ArrayList<>();
+    for (String address : payload.split(",")) {
+      NodeInfo server = parseServer(address);
+      if (server != null)
+        servers.add(server);
+    }
+    clusterServers = List.copyOf(servers);
+    redirects = 0;
+  }
+
+  // Si los servidores no se ponen de acuerdo sobre el dueño (uno cree caído a
+  // otro) tras unas cuantas redirecciones se pide quedarse en el actual.
+  private synchronized void followRedirect(String ownerAddress) {
+    NodeInfo owner = parseServer(ownerAddress);
+    if (owner == null)
+      return;
+    closeServerConnection();
+    if (redirects++ < MAX_REDIRECTS) {
+      System.out.println(nodeId + " Redirigido al servidor " + owner);
+      serverNode = owner;
+      registerWithServer();
+    } else {
+      sendFrameToServer(new Frame(Frame.REGISTER, nodeId, sequence.incrementAndGet(), ip + ":" + port + ":stay"));
+    }
+  }
+
+  private synchronized void failOver() {
+    List<NodeInfo> servers = clusterServers;
+    if (servers.size() < 2)
+      return;
+    int current = -1;
+    for (int i = 0; i < servers.size(); i++) {
+      if (servers.get(i).ip.equals(serverNode.ip) && servers.get(i).port == serverNode.port)
+        current = i;
+    }
+    serverNode = servers.get((current + 1) % servers.size());
+    missedHeartbeats = 0;
+    redirects = 0;
+    if (listener != null) {
+      listener.onStatusUpdate("Servidor sin respuesta, registrándose en " + serverNode);
+    }
+    registerWithServer();
   }
 
   public void sendMessage(String message) {
-    sendMessageToServer(nodeId + ": " + message);
+    sendFrameToServer(new Frame(Frame.MESSAGE, nodeId, sequence.incrementAndGet(), message));
+  }
+
+  /**
+   * Pide al servidor todo lo que tenga en su log después de esa secuencia
+   * (del mismo servidor de origen).
+   */
+  public void fetchSince(long lastSequence) {
+    sendFrameToServer(new Frame(Frame.FETCH, nodeId, sequence.incrementAndGet(), ip + ":" + port + ":" + lastSequence));
+  }
+
+  // Si falla no se avisa: el siguiente latido vuelve a conectar
+  private synchronized void sendHeartbeat() {
+    try {
+      writeToServer(new Frame(Frame.HEARTBEAT, nodeId, 0, ip + ":" + port));
+      missedHeartbeats = 0;
+      requestCatchUp();
+    } catch (IOException e) {
+      closeServerConnection();
+      if (++missedHeartbeats >= FAILOVER_AFTER_MISSED_HEARTBEATS)
+        failOver();
+    }
   }
 
-  private void sendMessageToServer(String message) {
-    try (Socket socket = new Socket(serverNode.ip, serverNode.port)) {
-      PrintWriter output = new PrintWriter(socket.getOutputStream(), true);
-      output.println(message);
+  // Tras reconectar se pide lo posterior a lo último recibido de cada origen.
+  // Sin multicast (que tiene sus NACK), un hueco que sigue abierto en dos
+  // latidos seguidos también se pide; si después de pedirlo sigue ahí es que
+  // el log ya no lo tiene y se da por perdido.
+  private void requestCatchUp() throws IOException {
+    StringJoiner from = new StringJoiner(",");
+    for (Map.Entry<Long, GapTracker> entry : gapTrackers.entrySet()) {
+      long origin = entry.getKey();
+      GapTracker gapTracker = entry.getValue();
+      long contiguous = gapTracker.contiguous();
+      if (contiguous < 0)
+        continue;
+      List<long[]> missing = multicastReceiver == null ? gapTracker.missingRanges() : List.of();
+      if (catchUpPending) {
+        from.add(Long.toString(contiguous));
+        fetchedFrom.put(origin, contiguous);
+      } else if (missing.isEmpty()) {
+        fetchedFrom.remove(origin);
+        gapSeenAt.remove(origin);
+      } else if (Long.valueOf(contiguous).equals(fetchedFrom.get(origin))) {
+        gapTracker.skipTo(missing.get(0)[1]);
+        fetchedFrom.remove(origin);
+        gapSeenAt.remove(origin);
+      } else if (Long.valueOf(contiguous).equals(gapSeenAt.get(origin))) {
+        from.add(Long.toString(contiguous));
+        fetchedFrom.put(origin, contiguous);
+      } else {
+        gapSeenAt.put(origin, contiguous);
+      }
+    }
+    catchUpPending = false;
+    if (from.length() > 0)
+      writeToServer(new Frame(Frame.FETCH, nodeId, sequence.incrementAndGet(), ip + ":" + port + ":" + from));
+  }
+
+  // Todas las tramas hacia el servidor comparten una conexión persistente; si
+  // se cayó se abre otra y se reintenta una vez.
+  private synchronized void sendFrameToServer(Frame frame) {
+    long startedAt = System.nanoTime();
+    try {
+      try {
+        writeToServer(frame);
+      } catch (IOException e) {
+        closeServerConnection();
+        writeToServer(frame);
+      }
+      metrics.messageSent(System.nanoTime() - startedAt);
     } catch (IOException e) {
+      metrics.messagesFailed(1);
+      closeServerConnection();
       if (listener != null) {
         listener.onStatusUpdate("Error enviando mensaje al servidor: " + e.getMessage());
       }
     }
   }
 
+  private void writeToServer(Frame frame) throws IOException {
+    if (serverConnection == null || serverConnection.isClosed()) {
+      serverConnection = new Socket(serverNode.ip, serverNode.port);
+      serverConnection.setTcpNoDelay(true);
+      serverOutput = new FrameWriter(serverConnection.getOutputStream(), wireProtocol, true);
+      catchUpPending = true;
+    }
+    serverOutput.write(frame);
+  }
+
+  private synchronized void closeServerConnection() {
+    try {
+      if (serverConnection != null)
+        serverConnection.close();
+    } catch (IOException ignored) {
+    }
+    serverConnection = null;
+    serverOutput = null;
+  }
+
   public void stop() {
     running = false;
     try {
+      if (heartbeatExecutor != null) {
+        heartbeatExecutor.shutdownNow();
+      }
       if (serverSocket != null && !serverSocket.isClosed()) {
         serverSocket.close();
       }
-      executor.shutdown();
-      if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-        executor.shutdownNow();
+      if (nioServer != null) {
+        nioServer.stop();
+      }
+      closeServerConnection();
+      if (relayPool != null) {
+        relayPool.closeAll();
+      }
+      metrics.unregister();
+      BatchDispatcher<Frame> dispatcher = receivedDispatcher;
+      if (dispatcher != null) {
+        dispatcher.close();
+      }
+      if (multicastReceiver != null) {
+        multicastReceiver.close();
+        repairExecutor.shutdownNow();
+      }
+      for (Socket socket : clientSockets) {
+        socket.close();
+      }
+      if (executor != null) {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+          executor.shutdownNow();
+        }
       }
     } catch (IOException | InterruptedException e) {
       System.err.println(nodeId + " Error cerrando nodo: " + e.getMessage());
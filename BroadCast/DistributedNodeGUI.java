@@ -1,20 +1,29 @@
 package BroadCast;
 
+import Common.Frame;
+import Common.FrameCodec;
+import Common.MessageHistoryView;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DistributedNodeGUI extends JFrame implements DistributedNode.MessageListener {
+  // Un refresco del registro por fotograma aunque lleguen miles de mensajes
+  static final long REFRESH_MILLIS = 16;
+
   private DistributedNode node;
-  private JTextArea chatArea;
+  private MessageHistoryView history;
   private JTextField messageField;
   private JButton sendButton;
   private JLabel statusLabel;
 
   public DistributedNodeGUI(DistributedNode node) {
     this.node = node;
-    node.setMessageListener(this);
+    node.setMessageListener(this, REFRESH_MILLIS);
 
     setTitle("Nodo " + node.getNodeId());
     setSize(500, 400);
@@ -28,6 +37,7 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
       @Override
       public void windowClosing(WindowEvent e) {
         node.stop();
+        history.close();
         dispose();
       }
     });
@@ -39,10 +49,8 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
     statusLabel = new JLabel("Iniciando nodo...", SwingConstants.CENTER);
     mainPanel.add(statusLabel, BorderLayout.NORTH);
 
-    chatArea = new JTextArea();
-    chatArea.setEditable(false);
-    chatArea.setBorder(BorderFactory.createTitledBorder("Registro de mensajes"));
-    mainPanel.add(new JScrollPane(chatArea), BorderLayout.CENTER);
+    history = new MessageHistoryView("Registro de mensajes", node.getNodeId());
+    mainPanel.add(history, BorderLayout.CENTER);
 
     JPanel inputPanel = new JPanel(new BorderLayout());
     messageField = new JTextField();
@@ -70,13 +78,22 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
 
   @Override
   public void onMessageReceived(String message) {
-    SwingUtilities.invokeLater(() -> chatArea.append("RECIBIDO: " + message + "\n"));
+    SwingUtilities.invokeLater(() -> history.append("RECIBIDO: " + message));
+  }
+
+  @Override
+  public void onMessagesReceived(List<Frame> frames) {
+    List<String> lines = new ArrayList<>(frames.size());
+    for (Frame frame : frames) {
+      lines.add("RECIBIDO: " + FrameCodec.toLine(frame));
+    }
+    SwingUtilities.invokeLater(() -> history.appendAll(lines));
   }
 
   @Override
   public void onStatusUpdate(String status) {
     SwingUtilities.invokeLater(() -> {
-      chatArea.append("ESTADO: " + status + "\n");
+      history.append("ESTADO: " + status);
       statusLabel.setText(status);
     });
   }
@@ -0,0 +1,101 @@
+package BroadCast;
+
+import Common.BufferPool;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.MessagingMetrics;
+import Common.PayloadCompression;
+import Common.WireProtocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un broadcast en curso. La trama se codifica una sola vez por protocolo, en
+ * un buffer del pool, y el mismo FanOut se encola para todos los destinos.
+ * Cuenta los destinos pendientes: cuando el último termina, se haya escrito
+ * o descartado, registra el tiempo de fan-out y devuelve los buffers al pool.
+ *
+ * Con compresión, la versión binaria se comprime al codificarla, así que se
+ * comprime una vez por broadcast y no una por destino; el multicast publica
+ * esa misma trama. La de texto va sin comprimir.
+ */
+class FanOut implements ConnectionPool.Outgoing {
+  private final MessagingMetrics metrics;
+  private final Frame frame;
+  private final BufferPool pool;
+  private final PayloadCompression compression;
+  private final long startedAt = System.nanoTime();
+  // Empieza en 1 para que no se complete mientras se siguen encolando destinos
+  private final AtomicInteger remaining = new AtomicInteger(1);
+  private final ByteBuffer[] encoded = new ByteBuffer[WireProtocol.values().length];
+  private Frame binary;
+
+  FanOut(MessagingMetrics metrics, Frame frame, BufferPool pool) {
+    this(metrics, frame, pool, null);
+  }
+
+  FanOut(MessagingMetrics metrics, Frame frame, BufferPool pool, PayloadCompression compression) {
+    this.metrics = metrics;
+    this.frame = frame;
+    this.pool = pool;
+    this.compression = compression;
+  }
+
+  /** Copia de solo lectura de la trama codificada; la primera vez se codifica. */
+  ByteBuffer encoded(WireProtocol protocol) {
+    return buffer(protocol).asReadOnlyBuffer();
+  }
+
+  /** La trama que viaja en binario: comprimida si compensa, calculada una vez. */
+  synchronized Frame binaryFrame() {
+    if (binary == null)
+      binary = compression != null ? compression.compress(frame) : frame;
+    return binary;
+  }
+
+  /** El buffer compartido por todos los destinos; no se debe mover su posición. */
+  @Override
+  public synchronized ByteBuffer buffer(WireProtocol protocol) {
+    ByteBuffer buffer = encoded[protocol.ordinal()];
+    if (buffer == null) {
+      Frame source = protocol == WireProtocol.BINARY ? binaryFrame() : frame;
+      buffer = FrameCodec.encode(source, protocol, pool);
+      encoded[protocol.ordinal()] = buffer;
+    }
+    return buffer;
+  }
+
+  @Override
+  public boolean shared() {
+    return true;
+  }
+
+  // La latencia de envío se cuenta desde que se numeró el broadcast
+  @Override
+  public long enqueuedAt() {
+    return startedAt;
+  }
+
+  @Override
+  public void finish() {
+    done();
+  }
+
+  void add() {
+    remaining.incrementAndGet();
+  }
+
+  void done() {
+    if (remaining.decrementAndGet() != 0)
+      return;
+    metrics.fanOutCompleted(System.nanoTime() - startedAt);
+    synchronized (this) {
+      for (int i = 0; i < encoded.length; i++) {
+        if (encoded[i] != null)
+          pool.release(encoded[i]);
+        encoded[i] = null;
+      }
+    }
+  }
+}
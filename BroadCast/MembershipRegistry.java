@@ -0,0 +1,168 @@
+package BroadCast;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Nodos registrados en el servidor. Alta, baja y búsqueda son O(1): un mapa
+ * concurrente para las búsquedas y un array compacto (baja por intercambio
+ * con el último) del que se sacan las instantáneas.
+ *
+ * Las instantáneas son inmutables y llevan la versión del registro; se
+ * reconstruyen solo cuando alguien pide una y hubo cambios desde la anterior,
+ * así que una avalancha de altas no copia la lista en cada una.
+ */
+public class MembershipRegistry implements ConnectionPool.DeliveryListener {
+  private final Map<ServerNode.NodeInfo, Member> members = new ConcurrentHashMap<>();
+  private Member[] slots = new Member[64];
+  private int size;
+  private volatile long version;
+  private volatile Snapshot snapshot = new Snapshot(0, new ServerNode.NodeInfo[0]);
+
+  public static class Member {
+    public final ServerNode.NodeInfo node;
+    public final long joinedAt = System.currentTimeMillis();
+    private volatile long lastSeen = joinedAt;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private int slot;
+
+    Member(ServerNode.NodeInfo node) {
+      this.node = node;
+    }
+
+    public long getLastSeen() {
+      return lastSeen;
+    }
+
+    public long getSent() {
+      return sent.sum();
+    }
+
+    public long getFailed() {
+      return failed.sum();
+    }
+
+    void touch() {
+      lastSeen = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+      return node + " (unido hace " + (System.currentTimeMillis() - joinedAt) / 1000 + " s, visto hace "
+          + (System.currentTimeMillis() - lastSeen) / 1000 + " s, enviados " + getSent() + ", fallidos "
+          + getFailed() + ")";
+    }
+  }
+
+  /** Lista inmutable de los nodos en una versión concreta del registro. */
+  public static class Snapshot extends AbstractList<ServerNode.NodeInfo> implements RandomAccess {
+    public final long version;
+    private final ServerNode.NodeInfo[] nodes;
+
+    private Snapshot(long version, ServerNode.NodeInfo[] nodes) {
+      this.version = version;
+      this.nodes = nodes;
+    }
+
+    @Override
+    public ServerNode.NodeInfo get(int index) {
+      return nodes[index];
+    }
+
+    @Override
+    public int size() {
+      return nodes.length;
+    }
+  }
+
+  /**
+   * Registra el nodo; si ya estaba se sustituye (puede haber cambiado de
+   * protocolo). Devuelve true si es nuevo.
+   */
+  public synchronized boolean register(ServerNode.NodeInfo node) {
+    boolean known = removeLocked(node);
+    Member member = new Member(node);
+    if (size == slots.length)
+      slots = Arrays.copyOf(slots, size * 2);
+    member.slot = size;
+    slots[size++] = member;
+    members.put(node, member);
+    version++;
+    return !known;
+  }
+
+  public synchronized boolean remove(ServerNode.NodeInfo node) {
+    if (!removeLocked(node))
+      return false;
+    version++;
+    return true;
+  }
+
+  private boolean removeLocked(ServerNode.NodeInfo node) {
+    Member member = members.remove(node);
+    if (member == null)
+      return false;
+    Member last = slots[--size];
+    slots[member.slot] = last;
+    last.slot = member.slot;
+    slots[size] = null;
+    return true;
+  }
+
+  public boolean contains(ServerNode.NodeInfo node) {
+    return members.containsKey(node);
+  }
+
+  public Member get(ServerNode.NodeInfo node) {
+    return members.get(node);
+  }
+
+  public int size() {
+    return members.size();
+  }
+
+  public Snapshot snapshot() {
+    Snapshot current = snapshot;
+    if (current.version == version)
+      return current;
+    synchronized (this) {
+      current = snapshot;
+      if (current.version == version)
+        return current;
+      ServerNode.NodeInfo[] nodes = new ServerNode.NodeInfo[size];
+      for (int i = 0; i < size; i++) {
+        nodes[i] = slots[i].node;
+      }
+      current = new Snapshot(version, nodes);
+      snapshot = current;
+      return current;
+    }
+  }
+
+  public void touch(ServerNode.NodeInfo node) {
+    Member member = members.get(node);
+    if (member != null)
+      member.touch();
+  }
+
+  @Override
+  public void onDelivered(ServerNode.NodeInfo node, int frames) {
+    Member member = members.get(node);
+    if (member != null) {
+      member.sent.add(frames);
+      member.touch();
+    }
+  }
+
+  @Override
+  public void onFailed(ServerNode.NodeInfo node, int frames) {
+    Member member = members.get(node);
+    if (member != null)
+      member.failed.add(frames);
+  }
+}
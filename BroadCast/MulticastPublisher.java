@@ -0,0 +1,86 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.FrameCodec;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Publica cada broadcast una sola vez en un grupo multicast UDP. Guarda los
+ * últimos mensajes para reenviarlos por TCP a los nodos que pidan (NACK) los
+ * datagramas que se perdieron.
+ */
+public class MulticastPublisher {
+  /** Lo que cabe en un datagrama; lo más grande se envía por TCP. */
+  public static final int MAX_DATAGRAM = 60_000;
+
+  private final InetSocketAddress group;
+  private final String interfaceName;
+  private final Frame[] history;
+  private MulticastSocket socket;
+
+  public MulticastPublisher(String groupAddress, int port, String interfaceName, int historySize) {
+    this.group = new InetSocketAddress(groupAddress, port);
+    this.interfaceName = interfaceName;
+    this.history = new Frame[historySize];
+  }
+
+  public void start() throws IOException {
+    socket = new MulticastSocket();
+    socket.setTimeToLive(1);
+    socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+    if (interfaceName != null) {
+      NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+      if (networkInterface == null)
+        throw new IOException("No existe la interfaz " + interfaceName);
+      socket.setNetworkInterface(networkInterface);
+    }
+  }
+
+  /** Descripción "grupo:puerto" que se envía a los nodos para que se unan. */
+  public String describeGroup() {
+    return group.getHostString() + ":" + group.getPort();
+  }
+
+  /**
+   * Guarda la trama en el historial y la envía al grupo. Devuelve false si no
+   * cabe en un datagrama y hay que enviarla por TCP.
+   */
+  public boolean publish(Frame frame) {
+    synchronized (history) {
+      history[(int) Math.floorMod(frame.sequence, (long) history.length)] = frame;
+    }
+    ByteBuffer encoded = FrameCodec.encode(frame);
+    return encoded.remaining() <= MAX_DATAGRAM && send(encoded);
+  }
+
+  /** Envía al grupo una trama del servidor que no se guarda en el historial. */
+  public void announce(Frame frame) {
+    send(FrameCodec.encode(frame));
+  }
+
+  private boolean send(ByteBuffer encoded) {
+    try {
+      socket.send(new DatagramPacket(encoded.array(), encoded.remaining(), group));
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error publicando en multicast " + group + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /** Trama con esa secuencia si sigue en el historial. */
+  public Frame recent(long sequence) {
+    synchronized (history) {
+      Frame frame = history[(int) Math.floorMod(sequence, (long) history.length)];
+      return frame != null && frame.sequence == sequence ? frame : null;
+    }
+  }
+
+  public void close() {
+    if (socket != null)
+      socket.close();
+  }
+}
@@ -0,0 +1,61 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.FrameCodec;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Se une a un grupo multicast y entrega cada trama recibida al nodo.
+ */
+public class MulticastReceiver implements Runnable {
+  private final InetSocketAddress group;
+  private final NetworkInterface networkInterface;
+  private final Consumer<Frame> onFrame;
+  private final String name;
+  private MulticastSocket socket;
+
+  public MulticastReceiver(String groupAddress, int port, NetworkInterface networkInterface, String name,
+      Consumer<Frame> onFrame) {
+    this.group = new InetSocketAddress(groupAddress, port);
+    this.networkInterface = networkInterface;
+    this.name = name;
+    this.onFrame = onFrame;
+  }
+
+  public void start() throws IOException {
+    socket = new MulticastSocket(group.getPort());
+    socket.joinGroup(group, networkInterface);
+    Thread thread = new Thread(this, name + "-multicast");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    byte[] buffer = new byte[MulticastPublisher.MAX_DATAGRAM + 4];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    while (!socket.isClosed()) {
+      try {
+        packet.setLength(buffer.length);
+        socket.receive(packet);
+        ByteBuffer datagram = ByteBuffer.wrap(buffer, 0, packet.getLength());
+        int length = datagram.getInt();
+        if (length != datagram.remaining())
+          continue;
+        onFrame.accept(FrameCodec.decodeBody(datagram));
+      } catch (IOException e) {
+        if (!socket.isClosed())
+          System.err.println(name + " Error recibiendo multicast: " + e.getMessage());
+      }
+    }
+  }
+
+  public void close() {
+    if (socket != null)
+      socket.close();
+  }
+}
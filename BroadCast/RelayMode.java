@@ -0,0 +1,14 @@
+package BroadCast;
+
+/**
+ * Cómo llega un broadcast del servidor a los nodos.
+ */
+public enum RelayMode {
+  /** El servidor envía cada mensaje a todos los nodos. */
+  DIRECT,
+  /**
+   * El servidor envía solo a las raíces de un árbol k-ario y cada nodo
+   * reenvía a sus hijos. Los nodos que hablan texto reciben envío directo.
+   */
+  TREE
+}
@@ -0,0 +1,86 @@
+package BroadCast;
+
+import java.util.*;
+
+/**
+ * Árbol k-ario de reenvío sobre los nodos binarios. El servidor es la raíz
+ * virtual: envía a las posiciones 0..k-1 y el nodo en la posición i reenvía a
+ * las posiciones k*(i+1) .. k*(i+1)+k-1, así que la profundidad es log_k(N).
+ *
+ * Al salir un nodo se mueve el último a su hueco, de modo que un cambio de
+ * miembros solo altera los hijos de unos pocos nodos. Se apuntan esas
+ * posiciones y takeChangedAssignments revisa solo ellas, no todo el árbol.
+ */
+class RelayTree {
+  private final int fanout;
+  private final List<ServerNode.NodeInfo> order = new ArrayList<>();
+  private final Map<ServerNode.NodeInfo, Integer> positions = new HashMap<>();
+  private final Map<ServerNode.NodeInfo, List<ServerNode.NodeInfo>> announced = new HashMap<>();
+  // Posiciones cuyos hijos pueden haber cambiado desde el último anuncio
+  private final BitSet dirty = new BitSet();
+
+  RelayTree(int fanout) {
+    this.fanout = Math.max(1, fanout);
+  }
+
+  synchronized void add(ServerNode.NodeInfo node) {
+    if (positions.containsKey(node))
+      return;
+    positions.put(node, order.size());
+    order.add(node);
+    moved(order.size() - 1);
+  }
+
+  synchronized void remove(ServerNode.NodeInfo node) {
+    Integer position = positions.remove(node);
+    announced.remove(node);
+    if (position == null)
+      return;
+    ServerNode.NodeInfo last = order.remove(order.size() - 1);
+    markParent(order.size());
+    if (position < order.size()) {
+      order.set(position, last);
+      positions.put(last, position);
+      moved(position);
+    }
+  }
+
+  // Cambió el nodo en esa posición: sus hijos y la lista de su padre
+  private void moved(int position) {
+    dirty.set(position);
+    markParent(position);
+  }
+
+  private void markParent(int position) {
+    if (position >= fanout)
+      dirty.set(position / fanout - 1);
+  }
+
+  synchronized List<ServerNode.NodeInfo> roots() {
+    return new ArrayList<>(order.subList(0, Math.min(fanout, order.size())));
+  }
+
+  synchronized int size() {
+    return order.size();
+  }
+
+  /**
+   * Hijos de cada nodo cuya asignación cambió desde la última llamada; es lo
+   * que hay que comunicar a los nodos con una trama TOPOLOGY.
+   */
+  synchronized Map<ServerNode.NodeInfo, List<ServerNode.NodeInfo>> takeChangedAssignments() {
+    Map<ServerNode.NodeInfo, List<ServerNode.NodeInfo>> changed = new LinkedHashMap<>();
+    for (int i = dirty.nextSetBit(0); i >= 0 && i < order.size(); i = dirty.nextSetBit(i + 1)) {
+      ServerNode.NodeInfo node = order.get(i);
+      int first = fanout * (i + 1);
+      List<ServerNode.NodeInfo> children = first >= order.size() ? List.of()
+          : List.copyOf(order.subList(first, Math.min(first + fanout, order.size())));
+      if (!children.equals(announced.getOrDefault(node, List.of()))) {
+        announced.put(node, children);
+        changed.put(node, children);
+      }
+    }
+    dirty.clear();
+    return changed;
+  }
+}
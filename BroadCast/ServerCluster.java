@@ -0,0 +1,173 @@
+package BroadCast;
+
+import Common.ConsistentHashRing;
+import Common.DuplicateFilter;
+import Common.Frame;
+import Common.MessagingMetrics;
+import Common.WireProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.*;
+
+/**
+ * Varios ServerNode que se reparten los nodos por hash consistente de su
+ * dirección y se reenvían los broadcasts por conexiones persistentes (malla
+ * completa: quien origina el mensaje lo manda a todos los demás y nadie lo
+ * vuelve a reenviar).
+ *
+ * Los identificadores de mensaje llevan en los bits altos el número del
+ * servidor que lo originó, así que cada servidor numera por su cuenta sin
+ * coordinarse y los duplicados se detectan por origen.
+ */
+class ServerCluster {
+  static final int ORIGIN_SHIFT = 48;
+  private static final int VIRTUAL_NODES = 128;
+
+  private final ServerNode.NodeInfo self;
+  private final List<ServerNode.NodeInfo> peers = new ArrayList<>();
+  private final String membersDescription;
+  private final long originId;
+  private final ConsistentHashRing<ServerNode.NodeInfo> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+  private final ConnectionPool peerPool;
+  private final Map<Long, DuplicateFilter> relayed = new ConcurrentHashMap<>();
+  private ScheduledExecutorService heartbeatExecutor;
+
+  /**
+   * members es la lista "ip:puerto" de todos los servidores, incluido éste;
+   * debe ser la misma en todos para que coincidan el anillo y los orígenes.
+   */
+  ServerCluster(String selfAddress, List<String> members, MessagingMetrics metrics) {
+    this.self = parse(selfAddress);
+    List<String> sorted = new ArrayList<>();
+    for (String address : members) {
+      sorted.add(parse(address).toString());
+    }
+    if (!sorted.contains(self.toString()))
+      sorted.add(self.toString());
+    sorted.sort(null);
+    this.originId = sorted.indexOf(self.toString()) + 1;
+    StringJoiner description = new StringJoiner(",");
+    for (String address : sorted) {
+      ServerNode.NodeInfo member = parse(address);
+      ring.add(member, address);
+      description.add(address);
+      if (!member.equals(self))
+        peers.add(member);
+    }
+    this.membersDescription = description.toString();
+
+    // Un servidor caído se saca del anillo mientras no responda, pero nunca se
+    // olvida: el sondeo lo vuelve a meter cuando acepta conexiones.
+    peerPool = new ConnectionPool(Long.MAX_VALUE, 5_000, peer -> {
+    });
+    peerPool.setMetrics(metrics);
+    peerPool.setCircuitBreaker(1_000, Long.MAX_VALUE);
+    peerPool.setCircuitListener(new ConnectionPool.CircuitListener() {
+      @Override
+      public void onCircuitOpened(ServerNode.NodeInfo peer) {
+        System.err.println("Servidor " + peer + " del clúster no responde, se saca del anillo");
+        ring.remove(peer);
+      }
+
+      @Override
+      public void onCircuitClosed(ServerNode.NodeInfo peer) {
+        System.out.println("Servidor " + peer + " del clúster disponible de nuevo");
+        ring.add(peer, peer.toString());
+      }
+    });
+  }
+
+  private static ServerNode.NodeInfo parse(String address) {
+    int separator = address.lastIndexOf(':');
+    return new ServerNode.NodeInfo(address.substring(0, separator).trim(),
+        Integer.parseInt(address.substring(separator + 1).trim()), WireProtocol.BINARY);
+  }
+
+  void start(ExecutorService executor) {
+    peerPool.start(executor);
+    heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "cluster-latidos");
+      t.setDaemon(true);
+      return t;
+    });
+    // Mantiene vivas las conexiones y descubre pronto a los servidores caídos;
+    // el primero espera un intervalo para dar tiempo a que arranquen los demás
+    heartbeatExecutor.scheduleAtFixedRate(() -> {
+      for (ServerNode.NodeInfo peer : peers) {
+        peerPool.enqueue(peer, new Frame(Frame.HEARTBEAT, ServerNode.SERVER_ID, 0, self.toString()));
+      }
+    }, DistributedNode.HEARTBEAT_INTERVAL_MILLIS, DistributedNode.HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    System.out.println("Servidor " + originId + " del clúster " + membersDescription);
+  }
+
+  long stamp(long localSequence) {
+    return originId << ORIGIN_SHIFT | localSequence;
+  }
+
+  static long originOf(long sequence) {
+    return sequence >>> ORIGIN_SHIFT;
+  }
+
+  /** Parte de la secuencia que numera el servidor de origen. */
+  static long localOf(long sequence) {
+    return sequence & (1L << ORIGIN_SHIFT) - 1;
+  }
+
+  boolean isServer(ServerNode.NodeInfo node) {
+    return node.equals(self) || peers.contains(node);
+  }
+
+  boolean isSelf(ServerNode.NodeInfo server) {
+    return self.equals(server);
+  }
+
+  /** Servidor al que corresponde el nodo entre los que están disponibles. */
+  ServerNode.NodeInfo ownerOf(ServerNode.NodeInfo node) {
+    ServerNode.NodeInfo owner = ring.ownerOf(node.toString());
+    return owner != null ? owner : self;
+  }
+
+  String describeMembers() {
+    return membersDescription;
+  }
+
+  /** Envía a los demás servidores un broadcast originado aquí. */
+  void relay(Frame message) {
+    byte[] payload = new byte[message.payload.length + 1];
+    payload[0] = message.type;
+    System.arraycopy(message.payload, 0, payload, 1, message.payload.length);
+    Frame relay = new Frame(Frame.RELAY, message.senderId, message.sequence, payload);
+    for (ServerNode.NodeInfo peer : peers) {
+      peerPool.enqueue(peer, relay);
+    }
+  }
+
+  /** Trama original de un RELAY, o null si ya se había entregado. */
+  Frame unwrap(Frame relay) {
+    if (relay.payload.length == 0)
+      return null;
+    DuplicateFilter filter = relayed.computeIfAbsent(originOf(relay.sequence), origin -> new DuplicateFilter(16_384));
+    if (!filter.firstTime(relay.sequence))
+      return null;
+    byte[] payload = new byte[relay.payload.length - 1];
+    System.arraycopy(relay.payload, 1, payload, 0, payload.length);
+    return new Frame(relay.payload[0], relay.senderId, relay.sequence, payload);
+  }
+
+  String describePeers() {
+    StringJoiner available = new StringJoiner(", ");
+    for (ServerNode.NodeInfo peer : peers) {
+      available.add(peer + (ring.contains(peer) ? "" : " (caído)"));
+    }
+    return available.toString();
+  }
+
+  void close() {
+    if (heartbeatExecutor != null)
+      heartbeatExecutor.shutdownNow();
+    peerPool.closeAll();
+  }
+}
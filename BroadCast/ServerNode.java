@@ -1,28 +1,82 @@
 package BroadCast;
 
+import Common.BufferPool;
+import Common.DestinationLimiter;
+import Common.ExecutionMode;
+import Common.Frame;
+import Common.FrameReader;
+import Common.IoEngine;
+import Common.MessagingMetrics;
+import Common.NioServer;
+import Common.OverflowPolicy;
+import Common.PayloadCompression;
+import Common.PhiAccrualFailureDetector;
+import Common.SegmentedLog;
+import Common.WireProtocol;
+
 import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.net.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ServerNode {
+  public static final String SERVER_ID = "SERVIDOR";
+  public static final int DEFAULT_FANOUT = 4;
+  public static final double DEFAULT_SUSPECT_PHI = 8.0;
+
   private final int port;
-  private final Set<NodeInfo> registeredNodes = new CopyOnWriteArraySet<>();
+  private final IoEngine ioEngine;
+  private final MembershipRegistry membership = new MembershipRegistry();
+  // Solo vigila a los nodos que envían HEARTBEAT
+  private final PhiAccrualFailureDetector<NodeInfo> failureDetector = new PhiAccrualFailureDetector<>(
+      DistributedNode.HEARTBEAT_INTERVAL_MILLIS, 100, 500);
+  private final Set<NodeInfo> suspectedNodes = ConcurrentHashMap.newKeySet();
+  private double suspectPhi = DEFAULT_SUSPECT_PHI;
+  private long evictAfterMillis = 30_000;
   private ExecutorService connectionExecutor;
+  private ExecutionMode executionMode = ExecutionMode.PLATFORM;
   private ScheduledExecutorService resourceMonitorExecutor;
+  private final ConnectionPool connectionPool = new ConnectionPool(60_000, 5_000, this::onNodeFailed);
+  private DestinationLimiter<NodeInfo> catchUpLimiter = new DestinationLimiter<>(1);
+  private final AtomicLong broadcastSequence = new AtomicLong();
+  // Buffers en los que se codifica cada broadcast una vez para todos los nodos
+  private final BufferPool bufferPool = new BufferPool(256);
+  private final MessagingMetrics metrics;
+  private RelayMode relayMode = RelayMode.DIRECT;
+  private RelayTree relayTree = new RelayTree(DEFAULT_FANOUT);
+  // En modo TREE, nodos de texto que no pueden reenviar y reciben directo
+  private final Set<NodeInfo> directOnlyNodes = new HashSet<>();
+  private MulticastPublisher multicastPublisher;
+  private ServerCluster cluster;
+  private PayloadCompression compression;
+  private Path logDirectory;
+  private long logRetentionBytes;
+  private long logRetentionMillis;
+  private BroadcastLog broadcastLog;
   private ServerSocket serverSocket;
+  private NioServer nioServer;
   private volatile boolean running = true;
   private final OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
 
   public static class NodeInfo {
     public final String ip;
     public final int port;
+    // Protocolo con el que se registró el nodo; no forma parte de la identidad
+    public final WireProtocol protocol;
 
     public NodeInfo(String ip, int port) {
+      this(ip, port, WireProtocol.TEXT);
+    }
+
+    public NodeInfo(String ip, int port, WireProtocol protocol) {
       this.ip = ip;
       this.port = port;
+      this.protocol = protocol;
     }
 
     @Override
@@ -42,23 +96,183 @@ public class ServerNode {
 
     @Override
     public int hashCode() {
-      return Objects.hash(ip, port);
+      // Sin Objects.hash, que crea un array y un Integer en cada búsqueda
+      return 31 * ip.hashCode() + port;
     }
   }
 
   public ServerNode(int port) {
+    this(port, IoEngine.BLOCKING);
+  }
+
+  public ServerNode(int port, IoEngine ioEngine) {
     this.port = port;
+    this.ioEngine = ioEngine;
+    this.metrics = new MessagingMetrics("ServerNode-" + port);
+    connectionPool.setMetrics(metrics);
+    connectionPool.setDeliveryListener(membership);
+    connectionPool.setCircuitListener(new ConnectionPool.CircuitListener() {
+      @Override
+      public void onCircuitOpened(NodeInfo node) {
+        leaveRelayTree(node);
+      }
+
+      @Override
+      public void onCircuitClosed(NodeInfo node) {
+        rejoinRelayTree(node);
+      }
+    });
+  }
+
+  public MessagingMetrics getMetrics() {
+    return metrics;
+  }
+
+  public MembershipRegistry getMembership() {
+    return membership;
+  }
+
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+  }
+
+  /** Ver ConnectionPool.setWriteCoalescing. */
+  public void setWriteCoalescing(long flushWindowMicros, int maxBatchSize) {
+    connectionPool.setWriteCoalescing(flushWindowMicros, maxBatchSize);
+  }
+
+  /**
+   * Cola máxima por nodo y política cuando se llena; ver ConnectionPool. Por
+   * defecto 1024 mensajes y DROP_OLDEST: un nodo lento pierde sus mensajes
+   * más antiguos y no frena a nadie. Con BLOCK el motor bloqueante frena al
+   * cliente que envía hasta que los nodos lentos hagan sitio; el motor NIO
+   * no espera nunca en su bucle.
+   */
+  public void setSendBuffer(int queueCapacity, OverflowPolicy overflowPolicy) {
+    connectionPool.setSendBuffer(queueCapacity, overflowPolicy);
+  }
+
+  /**
+   * Cuántas puestas al día desde el log (FETCH) pueden leer y encolar a la
+   * vez para un mismo nodo. Solo limita eso: los broadcasts y reenvíos ya
+   * los escribe de uno en uno el único escritor de cada nodo en
+   * ConnectionPool, así que no hay más envíos concurrentes que limitar.
+   */
+  public void setMaxConcurrentCatchUpsPerNode(int maxConcurrentCatchUps) {
+    this.catchUpLimiter = new DestinationLimiter<>(maxConcurrentCatchUps);
+  }
+
+  public void setTimeouts(int connectTimeoutMillis, int writeTimeoutMillis) {
+    connectionPool.setTimeouts(connectTimeoutMillis, writeTimeoutMillis);
+  }
+
+  /**
+   * Nivel phi a partir del cual se deja de enviar a un nodo que no late, y
+   * cuánto tiempo sin latidos (o fallando) se espera antes de eliminarlo.
+   */
+  public void setFailureDetection(double suspectPhi, long evictAfterMillis) {
+    this.suspectPhi = suspectPhi;
+    this.evictAfterMillis = evictAfterMillis;
+    connectionPool.setCircuitBreaker(1_000, evictAfterMillis);
+  }
+
+  /**
+   * En modo TREE el servidor envía cada broadcast a fanout nodos y éstos lo
+   * reenvían por el árbol; debe llamarse antes de registrar nodos.
+   */
+  public synchronized void setRelayMode(RelayMode relayMode, int fanout) {
+    this.relayMode = relayMode;
+    this.relayTree = new RelayTree(fanout);
+  }
+
+  /**
+   * Publica los broadcasts una vez en un grupo multicast al que se unen los
+   * nodos binarios; los que pierden datagramas los piden de nuevo por TCP.
+   * interfaceName puede ser null para usar la interfaz por defecto.
+   */
+  public void setMulticast(String groupAddress, int groupPort, String interfaceName) {
+    this.multicastPublisher = new MulticastPublisher(groupAddress, groupPort, interfaceName, 8192);
+  }
+
+  /**
+   * Modo clúster: los servidores de members ("ip:puerto", incluido éste como
+   * selfAddress) se reparten los nodos binarios y se reenvían los broadcasts.
+   * Los nodos de texto se quedan en el servidor con el que se registran.
+   */
+  public void setCluster(String selfAddress, List<String> members) {
+    this.cluster = new ServerCluster(selfAddress, members, metrics);
+  }
+
+  /**
+   * Guarda los broadcasts en un log en disco para que los nodos que vuelven
+   * tras estar inaccesibles pidan lo que se perdieron (FETCH). Se borran los
+   * segmentos más antiguos al pasar de retentionBytes o de retentionMillis.
+   */
+  public void setBroadcastLog(String directory, long retentionBytes, long retentionMillis) {
+    this.logDirectory = Paths.get(directory);
+    this.logRetentionBytes = retentionBytes;
+    this.logRetentionMillis = retentionMillis;
+  }
+
+  /**
+   * Los broadcasts de al menos thresholdBytes se envían comprimidos a los
+   * nodos binarios; con 0 o menos no se comprime. Ver PayloadCompression.
+   */
+  public void setCompression(int thresholdBytes) {
+    this.compression = thresholdBytes > 0 ? new PayloadCompression(thresholdBytes) : null;
+  }
+
+  /** null si no se comprime. */
+  public PayloadCompression getCompression() {
+    return compression;
   }
 
   public void startServer() {
-    connectionExecutor = Executors.newCachedThreadPool();
+    connectionExecutor = executionMode.newExecutor();
     resourceMonitorExecutor = Executors.newSingleThreadScheduledExecutor();
+    connectionPool.start(connectionExecutor);
+    metrics.register();
+    if (cluster != null)
+      cluster.start(connectionExecutor);
+    if (logDirectory != null) {
+      try {
+        broadcastLog = new BroadcastLog(logDirectory, SegmentedLog.DEFAULT_SEGMENT_BYTES, logRetentionBytes,
+            logRetentionMillis);
+        // Tras un reinicio se sigue numerando donde se quedó
+        long origin = ServerCluster.originOf(cluster != null ? cluster.stamp(0) : 0);
+        broadcastSequence.set(ServerCluster.localOf(broadcastLog.lastSequence(origin)));
+        System.out.println("Log de broadcasts en " + logDirectory + ", se sigue en la secuencia "
+            + broadcastSequence.get());
+      } catch (IOException | RuntimeException e) {
+        System.err.println("No se pudo abrir el log de broadcasts, no se guardará historial: " + e.getMessage());
+        broadcastLog = null;
+      }
+    }
+    if (multicastPublisher != null) {
+      try {
+        multicastPublisher.start();
+        System.out.println("Publicando broadcasts en el grupo multicast " + multicastPublisher.describeGroup());
+      } catch (IOException e) {
+        System.err.println("No se pudo iniciar multicast, se usará solo TCP: " + e.getMessage());
+        multicastPublisher = null;
+      }
+    }
 
     resourceMonitorExecutor.scheduleAtFixedRate(this::logResourceUsage, 0, 5, TimeUnit.SECONDS);
+    resourceMonitorExecutor.scheduleWithFixedDelay(this::checkHeartbeats, 500, 500, TimeUnit.MILLISECONDS);
+    if (multicastPublisher != null)
+      resourceMonitorExecutor.scheduleAtFixedRate(this::announceLastSequence, DistributedNode.HEARTBEAT_INTERVAL_MILLIS,
+          DistributedNode.HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    if (broadcastLog != null)
+      resourceMonitorExecutor.scheduleWithFixedDelay(broadcastLog::enforceRetention, 10, 10, TimeUnit.SECONDS);
 
-    System.out.println("Servidor iniciando en el puerto: " + port);
+    System.out.println("Servidor iniciando en el puerto: " + port + " (motor " + ioEngine + ", hilos " + executionMode + ")");
 
-    runServerLoop();
+    if (ioEngine == IoEngine.NIO) {
+      runNioLoop();
+    } else {
+      runServerLoop();
+    }
   }
 
   private void logResourceUsage() {
@@ -70,7 +284,18 @@ public class ServerNode {
     System.out.println("---  Estado del Servidor    ---");
     System.out.printf("Memoria RAM: Usada %d MB / Disponible %d MB\n", usedMemory, maxMemory);
     System.out.printf("Carga de CPU (promedio 1 min): %.2f%%\n", cpuLoad < 0 ? 0 : cpuLoad * 100);
-    System.out.println("Nodos Activos: " + registeredNodes.size());
+    System.out.println("Nodos Activos: " + membership.size());
+    if (relayMode == RelayMode.TREE)
+      System.out.println("Nodos en el árbol de reenvío: " + relayTree.size());
+    if (cluster != null)
+      System.out.println("Servidores del clúster: " + cluster.describePeers());
+    System.out.println("Conexiones abiertas: " + connectionPool.size());
+    if (broadcastLog != null)
+      System.out.println("Log de broadcasts: " + broadcastLog.describe());
+    for (String troubled : connectionPool.describeTroubledNodes()) {
+      System.out.println("Nodo con problemas " + troubled);
+    }
+    System.out.print(metrics.snapshot());
   }
 
   private void runServerLoop() {
@@ -95,41 +320,334 @@ public class ServerNode {
     }
   }
 
+  private void runNioLoop() {
+    try {
+      // En el bucle no se espera a las colas llenas: frenaría a todas sus conexiones
+      nioServer = new NioServer(null, port, NioServer.DEFAULT_LOOP_THREADS, "servidor",
+          (connection, frame) -> handleFrame(frame, connection.getProtocol(), false));
+      nioServer.start();
+      System.out.println("Servidor escuchando activamente en el puerto: " + port);
+      nioServer.awaitTermination();
+    } catch (IOException e) {
+      System.err.println("Error crítico que ha detenido el servidor. ¿El puerto " + port + " ya está en uso?");
+      System.err.println("Detalle: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stop();
+    }
+  }
+
   private void handleClientConnection(Socket clientSocket) {
-    try (BufferedReader input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-      String message = input.readLine();
-      if (message != null) {
-        if (message.startsWith("REGISTER:")) {
-          String[] parts = message.substring(9).split(":");
-          NodeInfo newNode = new NodeInfo(parts[0], Integer.parseInt(parts[1]));
-          if (registeredNodes.add(newNode)) {
-            System.out.println("Nuevo nodo registrado: " + newNode);
-            broadcast("ESTADO: Nuevo nodo unido -> " + newNode);
+    try (Socket socket = clientSocket) {
+      FrameReader input = new FrameReader(socket.getInputStream());
+      Frame frame;
+      while ((frame = input.read()) != null) {
+        handleFrame(frame, input.getProtocol(), true);
+      }
+    } catch (IOException e) {
+      if (running) {
+        System.err.println("Error manejando la conexión del cliente: " + e.getMessage());
+      }
+    }
+  }
+
+  // Con mayWait, tras encolar un broadcast se espera a los nodos con la cola
+  // llena (BLOCK); así se frena al cliente que envía más de lo que se reparte
+  private void handleFrame(Frame frame, WireProtocol protocol, boolean mayWait) {
+    switch (frame.type) {
+      case Frame.REGISTER -> registerNode(frame.payloadAsString(), protocol);
+      case Frame.NACK -> repair(frame.payloadAsString());
+      case Frame.FETCH -> connectionExecutor.submit(() -> catchUp(frame.payloadAsString()));
+      case Frame.HEARTBEAT -> onHeartbeat(frame.payloadAsString(), protocol);
+      case Frame.RELAY -> {
+        Frame original = cluster != null ? cluster.unwrap(frame) : null;
+        if (original != null) {
+          deliverLocally(original);
+          if (mayWait)
+            connectionPool.awaitBacklog();
+        }
+      }
+      case Frame.COMPRESSED -> {
+        try {
+          handleFrame(PayloadCompression.decompress(frame), protocol, mayWait);
+        } catch (IOException e) {
+          System.err.println(e.getMessage());
+        }
+      }
+      case Frame.MESSAGE -> {
+        metrics.messageReceived();
+        System.out.println("Mensaje recibido, retransmitiendo: " + frame);
+        broadcast(frame);
+        if (mayWait)
+          connectionPool.awaitBacklog();
+      }
+      default -> System.err.println("Trama de tipo " + frame.type + " ignorada");
+    }
+  }
+
+  private static NodeInfo parseNode(String address, WireProtocol protocol) {
+    try {
+      String[] parts = address.split(":");
+      return new NodeInfo(parts[0], Integer.parseInt(parts[1]), protocol);
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  private void registerNode(String address, WireProtocol protocol) {
+    NodeInfo newNode = parseNode(address, protocol);
+    if (newNode == null) {
+      System.err.println("Registro inválido: " + address);
+      return;
+    }
+    if (cluster != null && protocol == WireProtocol.BINARY && !address.endsWith(":stay")) {
+      NodeInfo owner = cluster.ownerOf(newNode);
+      if (!cluster.isSelf(owner)) {
+        redirect(newNode, owner);
+        return;
+      }
+    }
+    // Un nodo que se vuelve a registrar probablemente se reinició: se
+    // descarta su conexión anterior y se guarda el protocolo que usa ahora.
+    boolean known;
+    synchronized (this) {
+      known = !membership.register(newNode);
+      connectionPool.remove(newNode);
+      failureDetector.remove(newNode);
+      suspectedNodes.remove(newNode);
+      relayTree.remove(newNode);
+      directOnlyNodes.remove(newNode);
+      if (protocol == WireProtocol.BINARY) {
+        relayTree.add(newNode);
+      } else {
+        directOnlyNodes.add(newNode);
+      }
+      publishTopology();
+      if (protocol == WireProtocol.BINARY && multicastPublisher != null) {
+        connectionPool.enqueue(newNode, new Frame(Frame.MULTICAST, SERVER_ID, 0, multicastPublisher.describeGroup()));
+      }
+      if (protocol == WireProtocol.BINARY && cluster != null) {
+        connectionPool.enqueue(newNode, new Frame(Frame.CLUSTER, SERVER_ID, 0, cluster.describeMembers()));
+      }
+      // Sin esto un nodo no sabría que se perdió algo de un origen del que
+      // aún no había recibido nada, ni que este servidor se reinició sin log
+      if (protocol == WireProtocol.BINARY) {
+        connectionPool.enqueue(newNode, new Frame(Frame.FETCH, SERVER_ID, 0, describePositions()));
+      }
+    }
+    if (!known) {
+      System.out.println("Nuevo nodo registrado: " + newNode + " (" + protocol + ")");
+      broadcast(new Frame(Frame.STATUS, SERVER_ID, 0, "Nuevo nodo unido -> " + newNode));
+    }
+  }
+
+  // Con el monitor se numera y se encola, para que cada nodo reciba los
+  // mensajes en el orden de su secuencia; la escritura la hace
+  // ConnectionPool y la espera por colas llenas, si la hay, se hace fuera.
+  private synchronized void broadcast(Frame frame) {
+    // El servidor numera los mensajes en el orden en que los retransmite
+    long sequence = broadcastSequence.incrementAndGet();
+    Frame message = frame.withSequence(cluster != null ? cluster.stamp(sequence) : sequence);
+    metrics.messageBroadcast();
+    deliverLocally(message);
+    if (cluster != null)
+      cluster.relay(message);
+  }
+
+  private synchronized void deliverLocally(Frame message) {
+    FanOut fanOut = new FanOut(metrics, message, bufferPool, compression);
+    try {
+      if (broadcastLog != null)
+        broadcastLog.append(message, fanOut.encoded(WireProtocol.BINARY));
+      if (multicastPublisher != null && multicastPublisher.publish(fanOut.binaryFrame())) {
+        for (NodeInfo node : directOnlyNodes) {
+          connectionPool.enqueue(node, fanOut);
+        }
+      } else if (relayMode == RelayMode.TREE) {
+        for (NodeInfo root : relayTree.roots()) {
+          connectionPool.enqueue(root, fanOut);
+        }
+        for (NodeInfo node : directOnlyNodes) {
+          connectionPool.enqueue(node, fanOut);
+        }
+      } else {
+        for (NodeInfo node : membership.snapshot()) {
+          connectionPool.enqueue(node, fanOut);
+        }
+      }
+    } finally {
+      fanOut.done();
+    }
+  }
+
+  // Reenvía por TCP los datagramas multicast que un nodo no recibió
+  private void repair(String request) {
+    if (multicastPublisher == null)
+      return;
+    try {
+      String[] parts = request.split(":");
+      NodeInfo node = new NodeInfo(parts[0], Integer.parseInt(parts[1]), WireProtocol.BINARY);
+      long from = Long.parseLong(parts[2]);
+      long to = Math.min(Long.parseLong(parts[3]), from + 1024);
+      if (!membership.contains(node))
+        return;
+      membership.touch(node);
+      for (long sequence = from; sequence <= to; sequence++) {
+        Frame frame = multicastPublisher.recent(sequence);
+        if (frame == null && broadcastLog != null)
+          frame = broadcastLog.get(sequence);
+        if (frame != null)
+          connectionPool.enqueue(node, frame);
+      }
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      System.err.println("NACK inválido: " + request);
+    }
+  }
+
+  // Última secuencia de cada origen; la primera, la de este servidor aunque
+  // no tenga log. Se llama con el monitor tomado.
+  private String describePositions() {
+    long own = broadcastSequence.get();
+    String positions = Long.toString(cluster != null ? cluster.stamp(own) : own);
+    String logged = broadcastLog != null ? broadcastLog.describePositions() : "";
+    return logged.isEmpty() ? positions : positions + "," + logged;
+  }
+
+  // Envía a un nodo que estuvo inaccesible lo que hay en el log después de
+  // las secuencias que indica, en trozos que se leen seguidos del segmento y
+  // se escriben tal cual en su conexión.
+  private void catchUp(String request) {
+    if (broadcastLog == null)
+      return;
+    try {
+      String[] parts = request.split(":");
+      MembershipRegistry.Member member = membership.get(new NodeInfo(parts[0], Integer.parseInt(parts[1])));
+      if (member == null || member.node.protocol != WireProtocol.BINARY)
+        return;
+      member.touch();
+      catchUpLimiter.acquire(member.node);
+      try {
+        long frames = 0;
+        for (String last : parts[2].split(",")) {
+          long from = Long.parseLong(last) + 1;
+          SegmentedLog.Chunk chunk;
+          while ((chunk = broadcastLog.read(from)) != null) {
+            if (!connectionPool.enqueueEncoded(member.node, chunk.frames()))
+              return;
+            frames += chunk.count();
+            from = chunk.lastOffset() + 1;
           }
-        } else {
-          System.out.println("Mensaje recibido, retransmitiendo: " + message);
-          broadcast(message);
         }
+        if (frames > 0)
+          System.out.println("Nodo " + member.node + " puesto al día con " + frames + " mensajes del log");
+      } finally {
+        catchUpLimiter.release(member.node);
       }
-    } catch (IOException | NumberFormatException e) {
-      System.err.println("Error manejando la conexión del cliente: " + e.getMessage());
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      System.err.println("FETCH inválido: " + request);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private void broadcast(String message) {
-    for (NodeInfo node : registeredNodes) {
-      connectionExecutor.submit(() -> {
-        try (Socket socket = new Socket(node.ip, node.port);
-            PrintWriter output = new PrintWriter(socket.getOutputStream(), true)) {
-          output.println(message);
-        } catch (IOException e) {
-          System.err.println("Falló la conexión con el nodo " + node + ". Eliminando de la lista");
-          registeredNodes.remove(node);
+  // Avisa a cada nodo cuyos hijos cambiaron; se llama con el monitor tomado
+  // para que la topología viaje en orden con los broadcasts.
+  private void publishTopology() {
+    if (relayMode != RelayMode.TREE)
+      return;
+    for (Map.Entry<NodeInfo, List<NodeInfo>> assignment : relayTree.takeChangedAssignments().entrySet()) {
+      StringJoiner children = new StringJoiner(",");
+      for (NodeInfo child : assignment.getValue()) {
+        children.add(child.toString());
+      }
+      connectionPool.enqueue(assignment.getKey(), new Frame(Frame.TOPOLOGY, SERVER_ID, 0, children.toString()));
+    }
+  }
+
+  private synchronized void redirect(NodeInfo node, NodeInfo owner) {
+    System.out.println("El nodo " + node + " corresponde al servidor " + owner + ", se le redirige");
+    // Si estaba registrado aquí se ha movido a otro servidor
+    if (membership.remove(node)) {
+      relayTree.remove(node);
+      publishTopology();
+    }
+    failureDetector.remove(node);
+    suspectedNodes.remove(node);
+    connectionPool.remove(node);
+    catchUpLimiter.remove(node);
+    connectionPool.enqueue(node, new Frame(Frame.REDIRECT, SERVER_ID, 0, owner.toString()));
+  }
+
+  // Sin esto un nodo que pierde los últimos datagramas multicast no lo nota
+  // hasta que llega otro broadcast
+  private void announceLastSequence() {
+    long last = broadcastSequence.get();
+    if (last > 0)
+      multicastPublisher.announce(new Frame(Frame.HEARTBEAT, SERVER_ID, cluster != null ? cluster.stamp(last) : last,
+          ""));
+  }
+
+  // Un latido de un nodo desconocido (el servidor se reinició o lo había dado
+  // por caído) equivale a que se registre de nuevo.
+  private void onHeartbeat(String address, WireProtocol protocol) {
+    NodeInfo node = parseNode(address, protocol);
+    if (node == null || cluster != null && cluster.isServer(node))
+      return;
+    if (!membership.contains(node)) {
+      registerNode(address, protocol);
+      return;
+    }
+    membership.touch(node);
+    failureDetector.heartbeat(node);
+  }
+
+  private void checkHeartbeats() {
+    for (NodeInfo node : failureDetector.monitored()) {
+      if (failureDetector.millisSinceLastHeartbeat(node) > evictAfterMillis) {
+        System.err.println("Sin latidos del nodo " + node + " en " + evictAfterMillis / 1000 + " s");
+        onNodeFailed(node);
+      } else if (failureDetector.phi(node) >= suspectPhi) {
+        if (suspectedNodes.add(node)) {
+          System.err.println("Nodo " + node + " sospechoso (phi " + String.format("%.1f", failureDetector.phi(node))
+              + "), se deja de enviarle");
+          connectionPool.suspend(node);
         }
-      });
+      } else if (suspectedNodes.remove(node)) {
+        System.out.println("El nodo " + node + " vuelve a latir");
+        connectionPool.resume(node);
+      }
     }
   }
 
+  // Un nodo al que no se puede enviar no debe cortar la rama que cuelga de él
+  private synchronized void leaveRelayTree(NodeInfo node) {
+    if (!membership.contains(node))
+      return;
+    relayTree.remove(node);
+    publishTopology();
+  }
+
+  private synchronized void rejoinRelayTree(NodeInfo node) {
+    if (!membership.contains(node) || node.protocol != WireProtocol.BINARY)
+      return;
+    relayTree.add(node);
+    publishTopology();
+  }
+
+  private synchronized void onNodeFailed(NodeInfo node) {
+    connectionPool.remove(node);
+    catchUpLimiter.remove(node);
+    failureDetector.remove(node);
+    suspectedNodes.remove(node);
+    if (!membership.remove(node))
+      return;
+    System.err.println("Falló la conexión con el nodo " + node + ". Eliminando de la lista");
+    relayTree.remove(node);
+    directOnlyNodes.remove(node);
+    publishTopology();
+  }
+
   public void stop() {
     if (!running)
       return;
@@ -140,6 +658,16 @@ public class ServerNode {
       resourceMonitorExecutor.shutdownNow();
     if (connectionExecutor != null)
       connectionExecutor.shutdownNow();
+    connectionPool.closeAll();
+    if (cluster != null)
+      cluster.close();
+    metrics.unregister();
+    if (broadcastLog != null)
+      broadcastLog.close();
+    if (multicastPublisher != null)
+      multicastPublisher.close();
+    if (nioServer != null)
+      nioServer.stop();
 
     try {
       if (serverSocket != null && !serverSocket.isClosed()) {
@@ -151,8 +679,30 @@ public class ServerNode {
     System.out.println("Servidor detenido");
   }
 
+  /**
+   * Uso: ServerNode [motor] [hilos] [puerto] [clúster "ip:puerto,ip:puerto,..."]
+   * Para probar el clúster en local basta con lanzar un proceso por puerto
+   * pasándoles a todos la misma lista.
+   * Con -Dlog.dir=directorio los broadcasts se guardan en disco (1 GB o 24 h)
+   * para poner al día a los nodos que vuelven; sin él no hay log.
+   * Con -Dcompresion.umbral=bytes se comprimen los de ese tamaño o más.
+   */
   public static void main(String[] args) {
-    ServerNode server = new ServerNode(12344);
+    IoEngine engine = args.length > 0 ? IoEngine.valueOf(args[0].toUpperCase()) : IoEngine.BLOCKING;
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 12344;
+    ServerNode server = new ServerNode(port, engine);
+    if (args.length > 1)
+      server.setExecutionMode(ExecutionMode.valueOf(args[1].toUpperCase()));
+    if (args.length > 3) {
+      List<String> members = Arrays.asList(args[3].split(","));
+      String self = members.stream().filter(member -> member.endsWith(":" + port)).findFirst()
+          .orElse("127.0.0.1:" + port);
+      server.setCluster(self, members);
+    }
+    String logDirectory = System.getProperty("log.dir");
+    if (logDirectory != null)
+      server.setBroadcastLog(logDirectory, 1L << 30, TimeUnit.HOURS.toMillis(24));
+    server.setCompression(Integer.getInteger("compresion.umbral", 0));
     server.startServer();
   }
 }
\ No newline at end of file
@@ -1,21 +1,58 @@
 package Client_Server;
 
+import Common.BatchDispatcher;
+import Common.ExecutionMode;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.FrameReader;
+import Common.FrameWriter;
+import Common.IoEngine;
+import Common.MessagingMetrics;
+import Common.NioServer;
+import Common.ReliableUdpEndpoint;
+import Common.Transport;
+import Common.WireProtocol;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DistributedNode {
   private String nodeId;
   private String ip;
   private int port;
-  private List<NodeInfo> otherNodes;
+  private final PeerTable otherNodes = new PeerTable();
   private ServerSocket serverSocket;
+  private NioServer nioServer;
+  private final IoEngine ioEngine;
   private volatile boolean running = true;
   private ExecutorService executor;
-
-  private BlockingQueue<String[]> messageQueue = new LinkedBlockingQueue<>();
+  private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+  private WireProtocol wireProtocol = WireProtocol.BINARY;
+  private final AtomicLong sequence = new AtomicLong();
+  private final MessagingMetrics metrics;
+  public static final int DEFAULT_SENDER_PARALLELISM = 8;
+  public static final int DEFAULT_MAX_IN_FLIGHT_PER_PEER = 16;
+  public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 10_000;
+  private int senderParallelism = DEFAULT_SENDER_PARALLELISM;
+  private int maxInFlightPerPeer = DEFAULT_MAX_IN_FLIGHT_PER_PEER;
+  private volatile long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+  private ExecutorService senderExecutor;
+  // Un carril de envío por nodo destino, creado con el primer mensaje
+  private final Map<String, SenderLane> senderLanes = new ConcurrentHashMap<>();
+  private final SenderLane.Outcome sendOutcome = new SendOutcome();
+  private Transport transport = Transport.TCP;
+  private ReliableUdpEndpoint udpEndpoint;
+  // Peticiones por UDP sin ACK, por secuencia
+  private final Map<Long, UdpRequest> udpPending = new ConcurrentHashMap<>();
   private MessageListener listener;
+  private volatile BatchDispatcher<Frame> receivedDispatcher;
+  static final int MAX_RECEIVED_BATCH = 10_000;
+  // Avisos que esperan al listener; si no da abasto se descartan
+  static final int MAX_PENDING_RECEIVED = 100_000;
 
   public interface MessageListener {
     void onMessageReceived(String message);
@@ -23,10 +60,49 @@ public class DistributedNode {
     void onMessageSent(String message);
 
     void onStatusUpdate(String status);
+
+    /** Recibe la petición completa; el remitente incluye su dirección. */
+    default void onFrameReceived(Frame frame) {
+      onMessageReceived("Mensaje recibido desde " + frame.senderId + ": " + frame.payloadAsString());
+    }
+
+    /** Con entrega por lotes; por defecto trata cada petición por separado. */
+    default void onMessagesReceived(List<Frame> frames) {
+      for (Frame frame : frames) {
+        onFrameReceived(frame);
+      }
+    }
   }
 
   public void setMessageListener(MessageListener listener) {
+    setMessageListener(listener, 0);
+  }
+
+  /**
+   * Con batchMillis > 0 los mensajes recibidos se entregan agrupados en
+   * onMessagesReceived, como mucho uno por ventana, desde un hilo propio.
+   */
+  public void setMessageListener(MessageListener listener, long batchMillis) {
+    BatchDispatcher<Frame> previous = receivedDispatcher;
     this.listener = listener;
+    if (batchMillis > 0 && listener != null) {
+      receivedDispatcher = BatchDispatcher.start(nodeId, batchMillis, MAX_RECEIVED_BATCH, MAX_PENDING_RECEIVED,
+          listener::onMessagesReceived);
+    } else {
+      receivedDispatcher = null;
+    }
+    if (previous != null)
+      previous.close();
+  }
+
+  private void notifyReceived(Frame frame) {
+    BatchDispatcher<Frame> dispatcher = receivedDispatcher;
+    if (dispatcher != null) {
+      if (!dispatcher.submit(frame))
+        metrics.messagesDropped(1);
+    } else if (listener != null) {
+      listener.onFrameReceived(frame);
+    }
   }
 
   public static class NodeInfo {
@@ -34,12 +110,25 @@ public class DistributedNode {
     public String ip;
     public int port;
 
+    // Dirección resuelta la primera vez que hace falta
+    private volatile InetSocketAddress address;
+
     public NodeInfo(String nodeId, String ip, int port) {
       this.nodeId = nodeId;
       this.ip = ip;
       this.port = port;
     }
 
+    /** Se vuelve a resolver si cambian ip o port o si la última vez falló. */
+    public InetSocketAddress address() {
+      InetSocketAddress cached = address;
+      if (cached == null || cached.isUnresolved() || cached.getPort() != port || !cached.getHostString().equals(ip)) {
+        cached = new InetSocketAddress(ip, port);
+        address = cached;
+      }
+      return cached;
+    }
+
     @Override
     public String toString() {
       return nodeId + " (" + ip + ":" + port + ")";
@@ -47,33 +136,104 @@ public class DistributedNode {
   }
 
   public DistributedNode(String nodeId, String ip, int port) {
+    this(nodeId, ip, port, IoEngine.BLOCKING);
+  }
+
+  public DistributedNode(String nodeId, String ip, int port, IoEngine ioEngine) {
     this.nodeId = nodeId;
     this.ip = ip;
     this.port = port;
-    this.otherNodes = new ArrayList<>();
-    this.executor = Executors.newCachedThreadPool();
+    this.ioEngine = ioEngine;
+    this.metrics = new MessagingMetrics("ClientServerNode-" + nodeId);
+  }
+
+  /** Debe llamarse antes de start(). */
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+  }
+
+  /** Protocolo de las peticiones salientes; TEXT solo por compatibilidad. */
+  public void setWireProtocol(WireProtocol wireProtocol) {
+    this.wireProtocol = wireProtocol;
+  }
+
+  /**
+   * Cuántos destinos pueden estar enviando a la vez y cuántos mensajes sin
+   * respuesta admite cada uno. Debe llamarse antes de start().
+   */
+  public void setSenderLanes(int parallelism, int maxInFlightPerPeer) {
+    this.senderParallelism = Math.max(1, parallelism);
+    this.maxInFlightPerPeer = Math.max(1, maxInFlightPerPeer);
+  }
+
+  /**
+   * Con RELIABLE_UDP el nodo también escucha datagramas en el mismo puerto y
+   * envía por ahí; los demás nodos deben usar el mismo transporte. Debe
+   * llamarse antes de start().
+   */
+  public void setTransport(Transport transport) {
+    this.transport = transport;
+  }
+
+  /** Plazo por defecto de sendMessageToNode para recibir la respuesta. */
+  public void setRequestTimeout(long millis) {
+    this.requestTimeoutMillis = millis;
   }
 
   public String getNodeId() {
     return nodeId;
   }
 
+  /** La latencia de envío es el tiempo de ida y vuelta hasta el ACK. */
+  public MessagingMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Copia en orden de alta; no cambia aunque se añadan o quiten nodos. */
   public List<NodeInfo> getOtherNodes() {
-    return otherNodes;
+    return otherNodes.snapshot();
   }
 
+  /** Se puede llamar con el nodo en marcha; un id repetido sustituye al anterior. */
   public void addOtherNode(String nodeId, String ip, int port) {
-    otherNodes.add(new NodeInfo(nodeId, ip, port));
+    replacePeer(nodeId, new NodeInfo(nodeId, ip, port));
+  }
+
+  /** Los mensajes que aún esperaban para ese nodo se dan por fallidos. */
+  public boolean removeOtherNode(String nodeId) {
+    return replacePeer(nodeId, null) != null;
+  }
+
+  // Cambia la entrada de la tabla (null la quita) y saca el carril viejo a la
+  // vez, con la clave bloqueada en senderLanes: un envío ve la dirección
+  // vieja con su carril o la nueva con uno nuevo, nunca la nueva con el viejo.
+  private NodeInfo replacePeer(String nodeId, NodeInfo node) {
+    NodeInfo[] previous = new NodeInfo[1];
+    SenderLane[] replaced = new SenderLane[1];
+    senderLanes.compute(nodeId, (_, lane) -> {
+      previous[0] = node != null ? otherNodes.put(node) : otherNodes.remove(nodeId);
+      replaced[0] = lane;
+      return null;
+    });
+    if (replaced[0] != null)
+      replaced[0].close();
+    return previous[0];
   }
 
   public void start() {
-    Thread serverThread = new Thread(this::runServer);
-    serverThread.setDaemon(true);
-    serverThread.start();
+    executor = executionMode.newExecutor();
+    metrics.register();
+    if (ioEngine == IoEngine.NIO) {
+      startNioServer();
+    } else {
+      Thread serverThread = new Thread(this::runServer);
+      serverThread.setDaemon(true);
+      serverThread.start();
+    }
 
-    Thread clientThread = new Thread(this::runClient);
-    clientThread.setDaemon(true);
-    clientThread.start();
+    senderExecutor = executionMode.newFixedExecutor(senderParallelism, nodeId + "-envio");
+    if (transport == Transport.RELIABLE_UDP)
+      startUdpEndpoint();
 
     if (listener != null) {
       listener.onStatusUpdate("Nodo " + nodeId + " iniciado. Servidor escuchando en " + ip + ":" + port);
@@ -100,24 +260,102 @@ public class DistributedNode {
     }
   }
 
-  private void handleClientConnection(Socket clientSocket) {
-    try (BufferedReader input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        PrintWriter output = new PrintWriter(clientSocket.getOutputStream(), true)) {
+  private void startNioServer() {
+    nioServer = new NioServer(ip, port, 1, nodeId,
+        (connection, frame) -> connection.write(handleRequest(connection.getRemoteAddress(), frame)));
+    try {
+      nioServer.start();
+      System.out.println(nodeId + " Escuchando en " + ip + ":" + port + " (NIO)");
+    } catch (IOException e) {
+      System.err.println(nodeId + " Error iniciando servidor: " + e.getMessage());
+    }
+  }
+
+  private void startUdpEndpoint() {
+    udpEndpoint = new ReliableUdpEndpoint(new InetSocketAddress(ip, port), new ReliableUdpEndpoint.Handler() {
+      @Override
+      public void onMessage(InetSocketAddress peer, ByteBuffer message) {
+        handleDatagram(peer, message);
+      }
+
+      @Override
+      public void onPeerFailed(InetSocketAddress peer, int undelivered) {
+        failUdpRequests(peer, new IOException("el nodo " + peer + " no confirma los datagramas"));
+      }
+    });
+    try {
+      udpEndpoint.start();
+      System.out.println(nodeId + " Escuchando en " + ip + ":" + port + " (UDP fiable)");
+    } catch (IOException e) {
+      System.err.println(nodeId + " Error iniciando UDP fiable: " + e.getMessage());
+    }
+  }
+
+  // Hilo del punto UDP: las respuestas se completan en el pool del nodo
+  private void handleDatagram(InetSocketAddress peer, ByteBuffer message) {
+    Frame frame;
+    try {
+      message.getInt();
+      frame = FrameCodec.decodeBody(message);
+    } catch (IOException | RuntimeException e) {
+      System.err.println(nodeId + " Datagrama inválido de " + peer + ": " + e.getMessage());
+      return;
+    }
+    if (frame.type == Frame.REQUEST) {
+      String senderInfo = peer.getAddress().getHostAddress() + ":" + peer.getPort();
+      udpEndpoint.send(peer, FrameCodec.encode(handleRequest(senderInfo, frame)));
+    } else if (frame.type == Frame.ACK) {
+      UdpRequest request = udpPending.remove(frame.sequence);
+      if (request != null)
+        executor.execute(() -> {
+          if (request.future.complete(frame))
+            sendOutcome.onReplied(request.target, request.message, frame, System.nanoTime() - request.sentAt);
+        });
+    }
+  }
 
-      String message = input.readLine();
+  private record UdpRequest(NodeInfo target, String message, CompletableFuture<Frame> future, long sentAt) {
+  }
 
-      if (message != null) {
-        String senderInfo = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
-        String receivedMessage = "Mensaje recibido desde " + nodeId + "(" + senderInfo + "): " + message;
+  private CompletableFuture<Frame> sendDatagram(NodeInfo targetNode, String message, long timeoutMillis) {
+    long requestSequence = sequence.incrementAndGet();
+    UdpRequest request = new UdpRequest(targetNode, message, new CompletableFuture<>(), System.nanoTime());
+    udpPending.put(requestSequence, request);
+    request.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((reply, error) -> {
+      if (error instanceof TimeoutException && udpPending.remove(requestSequence) != null)
+        sendOutcome.onFailed(targetNode, message, new IOException("sin respuesta en " + timeoutMillis + " ms"));
+    });
+    ByteBuffer encoded = FrameCodec.encode(new Frame(Frame.REQUEST, nodeId, requestSequence, message));
+    if (udpEndpoint == null || !udpEndpoint.send(targetNode.address(), encoded))
+      failUdpRequest(requestSequence, new IOException("cola de envío UDP llena o nodo detenido"));
+    return request.future;
+  }
 
-        System.out.println("MENSAJE RECIBIDO");
+  private void failUdpRequests(InetSocketAddress peer, IOException error) {
+    for (Map.Entry<Long, UdpRequest> entry : udpPending.entrySet()) {
+      if (entry.getValue().target.address().equals(peer))
+        failUdpRequest(entry.getKey(), error);
+    }
+  }
 
-        if (listener != null) {
-          listener.onMessageReceived(receivedMessage);
-        }
+  private void failUdpRequest(long requestSequence, IOException error) {
+    UdpRequest request = udpPending.remove(requestSequence);
+    if (request != null && request.future.completeExceptionally(error))
+      sendOutcome.onFailed(request.target, request.message, error);
+  }
 
-        String response = nodeId + " - Mensaje '" + message + "' recibido con éxito.";
-        output.println(response);
+  private void handleClientConnection(Socket clientSocket) {
+    try (Socket socket = clientSocket) {
+      FrameReader input = new FrameReader(socket.getInputStream());
+      FrameWriter output = null;
+      String senderInfo = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+
+      Frame request;
+      while ((request = input.read()) != null) {
+        if (output == null) {
+          output = new FrameWriter(socket.getOutputStream(), input.getProtocol(), false);
+        }
+        output.write(handleRequest(senderInfo, request));
       }
 
     } catch (IOException e) {
@@ -125,57 +363,71 @@ public class DistributedNode {
     }
   }
 
-  private void runClient() {
-    while (running) {
-      try {
-        String[] messageData = messageQueue.take();
-        String targetNodeId = messageData[0];
-        String message = messageData[1];
+  private Frame handleRequest(String senderInfo, Frame request) {
+    String sender = request.senderId.isEmpty() ? senderInfo : request.senderId + "(" + senderInfo + ")";
+    String message = request.payloadAsString();
 
-        NodeInfo targetNode = otherNodes.stream()
-            .filter(node -> node.nodeId.equals(targetNodeId))
-            .findFirst().orElse(null);
+    System.out.println("MENSAJE RECIBIDO");
+    metrics.messageReceived();
 
-        if (targetNode != null) {
-          sendMessage(targetNode, message);
-        } else {
-          if (listener != null) {
-            listener.onStatusUpdate("Error: Nodo destino " + targetNodeId + " no encontrado.");
-          }
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        break;
-      }
-    }
-  }
+    notifyReceived(request.withSender(sender));
 
-  public void sendMessageToNode(String targetNodeId, String message) {
-    try {
-      messageQueue.put(new String[] { targetNodeId, message });
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    }
+    // La respuesta lleva la secuencia de la petición para poder emparejarlas
+    return new Frame(Frame.ACK, nodeId, request.sequence, nodeId + " - Mensaje '" + message + "' recibido con éxito.");
   }
 
-  private void sendMessage(NodeInfo targetNode, String message) {
-    try (Socket socket = new Socket(targetNode.ip, targetNode.port)) {
-      PrintWriter output = new PrintWriter(socket.getOutputStream(), true);
-      BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+  public CompletableFuture<Frame> sendMessageToNode(String targetNodeId, String message) {
+    return sendMessageToNode(targetNodeId, message, requestTimeoutMillis);
+  }
 
-      output.println(message);
-      String response = input.readLine();
+  /**
+   * Encola el mensaje en el carril del destino y devuelve la respuesta (el
+   * ACK) cuando llegue. Los mensajes a un mismo destino llegan en orden; los
+   * de destinos distintos salen en paralelo. Si no hay respuesta en
+   * timeoutMillis el futuro falla con TimeoutException. Con RELIABLE_UDP
+   * el orden por destino lo garantiza el punto UDP.
+   */
+  public CompletableFuture<Frame> sendMessageToNode(String targetNodeId, String message, long timeoutMillis) {
+    NodeInfo targetNode = otherNodes.get(targetNodeId);
+    if (targetNode == null) {
+      if (listener != null) {
+        listener.onStatusUpdate("Error: Nodo destino " + targetNodeId + " no encontrado.");
+      }
+      return CompletableFuture.failedFuture(new IllegalArgumentException("Nodo destino " + targetNodeId
+          + " no encontrado"));
+    }
+    if (transport == Transport.RELIABLE_UDP)
+      return sendDatagram(targetNode, message, timeoutMillis);
+    // La dirección se vuelve a leer con la clave bloqueada por si se acaba de sustituir
+    SenderLane lane = senderLanes.computeIfAbsent(targetNodeId, id -> {
+      NodeInfo current = otherNodes.get(id);
+      return current == null ? null : new SenderLane(current, nodeId, wireProtocol, sequence,
+          maxInFlightPerPeer, senderExecutor, executor, sendOutcome);
+    });
+    if (lane == null)
+      return CompletableFuture.failedFuture(new IllegalArgumentException("Nodo destino " + targetNodeId
+          + " no encontrado"));
+    return lane.send(message, timeoutMillis);
+  }
 
+  private class SendOutcome implements SenderLane.Outcome {
+    @Override
+    public void onReplied(NodeInfo targetNode, String message, Frame reply, long roundTripNanos) {
+      metrics.messageSent(roundTripNanos);
       System.out.println("ENVIADO desde " + nodeId + " a " + targetNode.nodeId + ": " + message);
 
       String sentMessage = "Mensaje enviado a " + targetNode.toString() + ": '" + message + "' - Respuesta: "
-          + response;
+          + reply.payloadAsString();
       if (listener != null) {
         listener.onMessageSent(sentMessage);
       }
-    } catch (IOException e) {
+    }
+
+    @Override
+    public void onFailed(NodeInfo targetNode, String message, IOException error) {
+      metrics.messagesFailed(1);
       if (listener != null) {
-        listener.onStatusUpdate("Error enviando mensaje a " + targetNode + ": " + e.getMessage());
+        listener.onStatusUpdate("Error enviando mensaje a " + targetNode + ": " + error.getMessage());
       }
     }
   }
@@ -186,9 +438,28 @@ public class DistributedNode {
       if (serverSocket != null && !serverSocket.isClosed()) {
         serverSocket.close();
       }
-      executor.shutdown();
-      if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-        executor.shutdownNow();
+      if (nioServer != null) {
+        nioServer.stop();
+      }
+      if (udpEndpoint != null) {
+        udpEndpoint.close();
+      }
+      metrics.unregister();
+      BatchDispatcher<Frame> dispatcher = receivedDispatcher;
+      if (dispatcher != null) {
+        dispatcher.close();
+      }
+      if (senderExecutor != null) {
+        senderExecutor.shutdownNow();
+      }
+      for (SenderLane lane : senderLanes.values()) {
+        lane.close();
+      }
+      if (executor != null) {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+          executor.shutdownNow();
+        }
       }
     } catch (IOException | InterruptedException e) {
       System.err.println(nodeId + " Error cerrando nodo: " + e.getMessage());
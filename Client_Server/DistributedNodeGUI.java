@@ -1,5 +1,8 @@
 package Client_Server;
 
+import Common.Frame;
+import Common.MessageHistoryView;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
@@ -7,8 +10,11 @@ import java.awt.event.WindowEvent;
 import java.util.stream.Collectors;
 
 public class DistributedNodeGUI extends JFrame implements DistributedNode.MessageListener {
+  // Un refresco del registro por fotograma aunque lleguen miles de mensajes
+  static final long REFRESH_MILLIS = 16;
+
   private DistributedNode node;
-  private JTextArea chatArea;
+  private MessageHistoryView history;
   private JTextField messageField;
   private JComboBox<String> targetNodeDropdown;
   private JButton sendButton;
@@ -17,7 +23,7 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
 
   public DistributedNodeGUI(DistributedNode node, java.util.List<DistributedNode.NodeInfo> allNodes) {
     this.node = node;
-    node.setMessageListener(this);
+    node.setMessageListener(this, REFRESH_MILLIS);
 
     setTitle("Nodo " + node.getNodeId());
     setSize(700, 500);
@@ -31,6 +37,7 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
       @Override
       public void windowClosing(WindowEvent e) {
         node.stop();
+        history.close();
         dispose();
       }
     });
@@ -51,10 +58,8 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
 
     mainPanel.add(topPanel, BorderLayout.NORTH);
 
-    chatArea = new JTextArea();
-    chatArea.setEditable(false);
-    chatArea.setBorder(BorderFactory.createTitledBorder("Registro de mensajes"));
-    mainPanel.add(new JScrollPane(chatArea), BorderLayout.CENTER);
+    history = new MessageHistoryView("Registro de mensajes", node.getNodeId());
+    mainPanel.add(history, BorderLayout.CENTER);
 
     JPanel inputPanel = new JPanel(new BorderLayout());
 
@@ -89,18 +94,27 @@ public class DistributedNodeGUI extends JFrame implements DistributedNode.Messag
 
   @Override
   public void onMessageReceived(String message) {
-    SwingUtilities.invokeLater(() -> chatArea.append("RECIBIDO " + message + "\n"));
+    SwingUtilities.invokeLater(() -> history.append("RECIBIDO " + message));
+  }
+
+  @Override
+  public void onMessagesReceived(java.util.List<Frame> frames) {
+    java.util.List<String> lines = new java.util.ArrayList<>(frames.size());
+    for (Frame frame : frames) {
+      lines.add("RECIBIDO Mensaje recibido desde " + frame.senderId + ": " + frame.payloadAsString());
+    }
+    SwingUtilities.invokeLater(() -> history.appendAll(lines));
   }
 
   @Override
   public void onMessageSent(String message) {
-    SwingUtilities.invokeLater(() -> chatArea.append("ENVIADO " + message + "\n"));
+    SwingUtilities.invokeLater(() -> history.append("ENVIADO " + message));
   }
 
   @Override
   public void onStatusUpdate(String status) {
     SwingUtilities.invokeLater(() -> {
-      chatArea.append("ESTADO " + status + "\n");
+      history.append("ESTADO " + status);
       statusLabel.setText(status);
     });
   }
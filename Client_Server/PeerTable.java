@@ -0,0 +1,70 @@
+package Client_Server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nodos conocidos por id. Se consultan en cada envío y se pueden añadir o
+ * quitar en cualquier momento desde otros hilos.
+ *
+ * La lista completa (para mostrarla) se construye en orden de alta solo
+ * cuando se pide tras un cambio, así que dar de alta miles de nodos no
+ * cuesta más que las inserciones en el mapa.
+ */
+class PeerTable {
+  private record Entry(DistributedNode.NodeInfo node, long order) {
+  }
+
+  private final Map<String, Entry> peers = new ConcurrentHashMap<>();
+  private final AtomicLong nextOrder = new AtomicLong();
+  private volatile List<DistributedNode.NodeInfo> snapshot = List.of();
+  private volatile boolean snapshotStale;
+
+  /** Añade o sustituye el nodo con ese id; devuelve el anterior, si había. */
+  DistributedNode.NodeInfo put(DistributedNode.NodeInfo node) {
+    Entry previous = peers.put(node.nodeId, new Entry(node, nextOrder.incrementAndGet()));
+    snapshotStale = true;
+    return previous == null ? null : previous.node();
+  }
+
+  DistributedNode.NodeInfo remove(String nodeId) {
+    Entry removed = peers.remove(nodeId);
+    if (removed == null)
+      return null;
+    snapshotStale = true;
+    return removed.node();
+  }
+
+  DistributedNode.NodeInfo get(String nodeId) {
+    Entry entry = peers.get(nodeId);
+    return entry == null ? null : entry.node();
+  }
+
+  int size() {
+    return peers.size();
+  }
+
+  /** Copia inmutable en orden de alta. */
+  List<DistributedNode.NodeInfo> snapshot() {
+    if (!snapshotStale)
+      return snapshot;
+    synchronized (this) {
+      if (snapshotStale) {
+        // Se marca antes de copiar: un cambio durante la copia vuelve a marcarla
+        snapshotStale = false;
+        List<Entry> entries = new ArrayList<>(peers.values());
+        entries.sort(Comparator.comparingLong(Entry::order));
+        List<DistributedNode.NodeInfo> nodes = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+          nodes.add(entry.node());
+        }
+        snapshot = List.copyOf(nodes);
+      }
+      return snapshot;
+    }
+  }
+}
@@ -0,0 +1,366 @@
+package Client_Server;
+
+import Common.Frame;
+import Common.FrameReader;
+import Common.FrameWriter;
+import Common.WireProtocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envíos a un nodo concreto por una conexión persistente. Los mensajes salen
+ * en el orden en que se pidieron y se mandan hasta maxInFlight sin esperar a
+ * sus respuestas. Cada petición lleva su número de secuencia y la respuesta
+ * lo repite, así que pueden volver en cualquier orden.
+ *
+ * Escribir y leer van por separado: el carril se vacía con una tarea del
+ * ejecutor compartido, que no espera respuestas, y cada conexión tiene su
+ * lector que completa las peticiones y deja sitio para más. Un nodo lento
+ * solo retiene su carril.
+ */
+class SenderLane {
+  static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+
+  /** Resultado de cada mensaje, desde el hilo que lo resuelve. */
+  interface Outcome {
+    void onReplied(DistributedNode.NodeInfo target, String message, Frame reply, long roundTripNanos);
+
+    void onFailed(DistributedNode.NodeInfo target, String message, IOException error);
+  }
+
+  private static class Request {
+    final String message;
+    final long timeoutMillis;
+    final CompletableFuture<Frame> future = new CompletableFuture<>();
+    long sequence;
+    long sentAt;
+
+    Request(String message, long timeoutMillis) {
+      this.message = message;
+      this.timeoutMillis = timeoutMillis;
+    }
+  }
+
+  private static class Connection {
+    final Socket socket;
+    final FrameWriter output;
+    final FrameReader input;
+    // Ha llegado al menos una respuesta: la conexión llegó a funcionar
+    volatile boolean replied;
+
+    Connection(Socket socket, WireProtocol protocol) throws IOException {
+      this.socket = socket;
+      this.output = new FrameWriter(socket.getOutputStream(), protocol, true);
+      this.input = new FrameReader(socket.getInputStream(), protocol);
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private final DistributedNode.NodeInfo target;
+  private final String nodeId;
+  private final WireProtocol protocol;
+  private final AtomicLong sequence;
+  private final int maxInFlight;
+  private final Executor writerExecutor;
+  private final Executor readerExecutor;
+  private final Outcome outcome;
+  private final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  // Protegidos por this; en orden de envío
+  private final Map<Long, Request> inFlight = new LinkedHashMap<>();
+  private final ArrayDeque<Request> resend = new ArrayDeque<>();
+  private Connection connection;
+  private boolean retried;
+  private volatile boolean closed;
+
+  SenderLane(DistributedNode.NodeInfo target, String nodeId, WireProtocol protocol, AtomicLong sequence,
+      int maxInFlight, Executor writerExecutor, Executor readerExecutor, Outcome outcome) {
+    this.target = target;
+    this.nodeId = nodeId;
+    this.protocol = protocol;
+    this.sequence = sequence;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.writerExecutor = writerExecutor;
+    this.readerExecutor = readerExecutor;
+    this.outcome = outcome;
+  }
+
+  /**
+   * El futuro se completa con la respuesta del nodo, o con TimeoutException
+   * si no llega en timeoutMillis desde ahora (esperando turno incluido).
+   */
+  CompletableFuture<Frame> send(String message, long timeoutMillis) {
+    Request request = new Request(message, timeoutMillis);
+    request.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((reply, error) -> {
+      if (error instanceof TimeoutException)
+        timedOut(request);
+    });
+    pending.add(request);
+    scheduleDrain();
+    return request.future;
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      try {
+        writerExecutor.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        draining.set(false);
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      writeAvailable();
+    } finally {
+      draining.set(false);
+    }
+    // Algo pudo llegar justo después de la última comprobación
+    if (hasRoom() && (!pending.isEmpty() || hasResend()))
+      scheduleDrain();
+  }
+
+  // Escribe lo que quepa en la ventana, sin esperar respuestas
+  private void writeAvailable() {
+    Connection current;
+    try {
+      current = connection();
+    } catch (IOException e) {
+      failAll(e);
+      return;
+    }
+    try {
+      boolean wrote = false;
+      Request request;
+      while ((request = nextToSend()) != null) {
+        current.output.write(new Frame(Frame.REQUEST, nodeId, request.sequence, request.message), false);
+        wrote = true;
+      }
+      if (wrote)
+        current.output.flush();
+    } catch (IOException e) {
+      connectionFailed(current, e);
+    }
+  }
+
+  // La siguiente petición que no haya vencido ya, registrada como enviada
+  private Request nextToSend() {
+    while (true) {
+      synchronized (this) {
+        if (inFlight.size() >= maxInFlight)
+          return null;
+        Request request = resend.isEmpty() ? pending.poll() : resend.poll();
+        if (request == null)
+          return null;
+        if (!request.future.isDone()) {
+          request.sequence = sequence.incrementAndGet();
+          request.sentAt = System.nanoTime();
+          inFlight.put(request.sequence, request);
+          return request;
+        }
+      }
+    }
+  }
+
+  private synchronized boolean hasRoom() {
+    return inFlight.size() < maxInFlight;
+  }
+
+  private synchronized boolean hasResend() {
+    return !resend.isEmpty();
+  }
+
+  private Connection connection() throws IOException {
+    synchronized (this) {
+      if (connection != null)
+        return connection;
+    }
+    if (closed)
+      throw new IOException("carril de envío cerrado");
+    InetSocketAddress address = target.address();
+    if (address.isUnresolved())
+      throw new UnknownHostException(target.ip);
+    Socket socket = new Socket();
+    Connection opened;
+    try {
+      socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+      socket.setTcpNoDelay(true);
+      socket.setKeepAlive(true);
+      opened = new Connection(socket, protocol);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    synchronized (this) {
+      connection = opened;
+    }
+    try {
+      readerExecutor.execute(() -> readReplies(opened));
+    } catch (RejectedExecutionException e) {
+      connectionFailed(opened, new IOException("nodo detenido"));
+      throw new IOException("nodo detenido");
+    }
+    return opened;
+  }
+
+  private void readReplies(Connection reading) {
+    try {
+      while (true) {
+        Frame reply = reading.input.read();
+        if (reply == null)
+          throw new EOFException("conexión cerrada por el nodo");
+        reading.replied = true;
+        Request request = takeInFlight(reading, reply.sequence);
+        if (request != null && request.future.complete(reply))
+          outcome.onReplied(target, request.message, reply, System.nanoTime() - request.sentAt);
+        if (!pending.isEmpty() || hasResend())
+          scheduleDrain();
+      }
+    } catch (IOException e) {
+      connectionFailed(reading, e);
+    }
+  }
+
+  // Una respuesta sin secuencia (protocolo de texto) es la de la más antigua.
+  // Lo que llegue por una conexión ya sustituida no corresponde a nada.
+  private synchronized Request takeInFlight(Connection reading, long replySequence) {
+    if (connection != reading)
+      return null;
+    retried = false;
+    if (replySequence != 0)
+      return inFlight.remove(replySequence);
+    Iterator<Request> oldest = inFlight.values().iterator();
+    if (!oldest.hasNext())
+      return null;
+    Request request = oldest.next();
+    oldest.remove();
+    return request;
+  }
+
+  // En texto la respuesta no lleva secuencia: la petición vencida sigue en
+  // vuelo para que su respuesta, si llega tarde, no se tome por la de la
+  // siguiente. Si ya no queda ninguna viva se reabre la conexión, porque esas
+  // respuestas quizá no lleguen nunca y ocupan la ventana.
+  private void timedOut(Request request) {
+    Connection stale = null;
+    synchronized (this) {
+      if (request.sequence != 0 && protocol != WireProtocol.TEXT) {
+        inFlight.remove(request.sequence);
+      } else if (request.sequence != 0 && inFlight.containsKey(request.sequence) && allAnswered()) {
+        stale = connection;
+        connection = null;
+        inFlight.clear();
+      }
+    }
+    if (stale != null)
+      stale.close();
+    outcome.onFailed(target, request.message,
+        new IOException("sin respuesta en " + request.timeoutMillis + " ms"));
+    if (!pending.isEmpty() || hasResend())
+      scheduleDrain();
+  }
+
+  // Con el monitor tomado: todo lo que está en vuelo ya se resolvió
+  private boolean allAnswered() {
+    for (Request inFlightRequest : inFlight.values()) {
+      if (!inFlightRequest.future.isDone())
+        return false;
+    }
+    return true;
+  }
+
+  private void connectionFailed(Connection failed, IOException error) {
+    List<Request> lost;
+    synchronized (this) {
+      // Otro hilo ya se ocupó de esta conexión
+      if (connection != failed)
+        return;
+      connection = null;
+      failed.close();
+      // Una conexión que ya funcionaba puede haberla cerrado el otro nodo: se
+      // reabre una vez y se repite, en su orden, lo que no tuvo respuesta
+      if (failed.replied && !retried && !closed) {
+        retried = true;
+        List<Request> unanswered = new ArrayList<>(inFlight.values());
+        inFlight.clear();
+        for (int i = unanswered.size() - 1; i >= 0; i--) {
+          resend.addFirst(unanswered.get(i));
+        }
+        lost = null;
+      } else {
+        lost = takeAll();
+      }
+    }
+    if (lost == null)
+      scheduleDrain();
+    else
+      fail(lost, error);
+  }
+
+  // Si no se puede hablar con el nodo fallan también los que esperaban turno
+  private void failAll(IOException error) {
+    List<Request> lost;
+    synchronized (this) {
+      lost = takeAll();
+    }
+    fail(lost, error);
+  }
+
+  private List<Request> takeAll() {
+    List<Request> all = new ArrayList<>(inFlight.values());
+    inFlight.clear();
+    all.addAll(resend);
+    resend.clear();
+    Request request;
+    while ((request = pending.poll()) != null) {
+      all.add(request);
+    }
+    return all;
+  }
+
+  private void fail(List<Request> lost, IOException error) {
+    for (Request request : lost) {
+      if (request.future.completeExceptionally(error))
+        outcome.onFailed(target, request.message, error);
+    }
+  }
+
+  /** Lo que quede pendiente falla en lugar de enviarse. */
+  void close() {
+    closed = true;
+    Connection current;
+    synchronized (this) {
+      current = connection;
+      connection = null;
+    }
+    if (current != null)
+      current.close();
+    failAll(new IOException("carril de envío cerrado"));
+  }
+}
@@ -0,0 +1,87 @@
+package Common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Agrupa avisos que llegan desde varios hilos y los entrega por lotes desde
+ * un hilo propio: tras el primer aviso espera windowMillis y entrega todo lo
+ * acumulado (como mucho maxBatch de una vez). Así quien los consume, por
+ * ejemplo una interfaz Swing, hace un trabajo por ventana y no uno por aviso.
+ * Si el consumidor no da abasto se guardan como mucho capacity avisos y el
+ * resto se descarta y se cuenta.
+ */
+public class BatchDispatcher<T> {
+  private final BlockingQueue<T> queue;
+  private final long windowMillis;
+  private final int maxBatch;
+  private final Consumer<List<T>> consumer;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  private BatchDispatcher(String name, long windowMillis, int maxBatch, int capacity, Consumer<List<T>> consumer) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.windowMillis = windowMillis;
+    this.maxBatch = maxBatch;
+    this.consumer = consumer;
+    this.thread = new Thread(this::dispatch, name + "-lotes");
+    thread.setDaemon(true);
+  }
+
+  public static <T> BatchDispatcher<T> start(String name, long windowMillis, int maxBatch, int capacity,
+      Consumer<List<T>> consumer) {
+    BatchDispatcher<T> dispatcher = new BatchDispatcher<>(name, windowMillis, maxBatch, capacity, consumer);
+    dispatcher.thread.start();
+    return dispatcher;
+  }
+
+  /** Devuelve false si el aviso se descartó por estar la cola llena o cerrada. */
+  public boolean submit(T item) {
+    if (running && queue.offer(item))
+      return true;
+    dropped.increment();
+    return false;
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  private void dispatch() {
+    while (running) {
+      List<T> batch = new ArrayList<>();
+      try {
+        T first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null)
+          continue;
+        batch.add(first);
+        Thread.sleep(windowMillis);
+      } catch (InterruptedException e) {
+        // Al cerrar se entrega lo que ya había
+        running = false;
+      }
+      queue.drainTo(batch, maxBatch - batch.size());
+      if (!batch.isEmpty())
+        deliver(batch);
+    }
+  }
+
+  private void deliver(List<T> batch) {
+    try {
+      consumer.accept(batch);
+    } catch (RuntimeException e) {
+      System.err.println(thread.getName() + " Error entregando " + batch.size() + " avisos: " + e.getMessage());
+    }
+  }
+
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,68 @@
+package Common;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers directos reutilizables por tamaños potencia de dos. Un canal que
+ * escribe un buffer del heap lo copia antes a uno directo temporal; con uno
+ * directo esa copia desaparece, pero crearlos es caro y por eso se reciclan.
+ *
+ * Lo que no cabe en la clase mayor se crea en el heap y no se guarda. Se
+ * reutiliza primero el último devuelto, así que en uso continuo circulan
+ * siempre los mismos buffers.
+ */
+public class BufferPool {
+  private static final int MIN_SHIFT = 8;
+  private static final int MAX_SHIFT = 20;
+
+  private final Deque<ByteBuffer>[] free;
+  private final AtomicInteger[] freeCounts;
+  private final int maxPerClass;
+
+  @SuppressWarnings("unchecked")
+  public BufferPool(int maxPerClass) {
+    this.maxPerClass = maxPerClass;
+    int classes = MAX_SHIFT - MIN_SHIFT + 1;
+    free = (Deque<ByteBuffer>[]) new Deque<?>[classes];
+    freeCounts = new AtomicInteger[classes];
+    for (int i = 0; i < classes; i++) {
+      free[i] = new ConcurrentLinkedDeque<>();
+      freeCounts[i] = new AtomicInteger();
+    }
+  }
+
+  private static int classOf(int bytes) {
+    int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, bytes) - 1));
+    return shift - MIN_SHIFT;
+  }
+
+  /** Buffer vacío con al menos bytes de capacidad y el límite en bytes. */
+  public ByteBuffer acquire(int bytes) {
+    int sizeClass = classOf(bytes);
+    if (sizeClass >= free.length)
+      return ByteBuffer.allocate(bytes);
+    ByteBuffer buffer = free[sizeClass].pollFirst();
+    if (buffer != null) {
+      freeCounts[sizeClass].decrementAndGet();
+      buffer.clear();
+    } else {
+      buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+    }
+    return buffer.limit(bytes);
+  }
+
+  /** Devuelve un buffer de acquire; nadie debe seguir usándolo ni sus copias. */
+  public void release(ByteBuffer buffer) {
+    if (!buffer.isDirect())
+      return;
+    int sizeClass = classOf(buffer.capacity());
+    if (sizeClass < free.length && freeCounts[sizeClass].incrementAndGet() <= maxPerClass) {
+      free[sizeClass].offerFirst(buffer);
+    } else if (sizeClass < free.length) {
+      freeCounts[sizeClass].decrementAndGet();
+    }
+  }
+}
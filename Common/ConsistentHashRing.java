@@ -0,0 +1,58 @@
+package Common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hash consistente: cada miembro ocupa varios puntos virtuales y
+ * una clave pertenece al primer punto que encuentra en el sentido del anillo.
+ * Al entrar o salir un miembro solo cambian de dueño ~1/N de las claves.
+ */
+public class ConsistentHashRing<T> {
+  private final int virtualNodes;
+  private final TreeMap<Long, T> ring = new TreeMap<>();
+
+  public ConsistentHashRing(int virtualNodes) {
+    this.virtualNodes = Math.max(1, virtualNodes);
+  }
+
+  /** name debe ser igual en todos los procesos para que coincidan los anillos. */
+  public synchronized void add(T member, String name) {
+    for (int i = 0; i < virtualNodes; i++) {
+      ring.put(hash(name + "#" + i), member);
+    }
+  }
+
+  public synchronized void remove(T member) {
+    ring.values().removeIf(member::equals);
+  }
+
+  public synchronized boolean contains(T member) {
+    return ring.containsValue(member);
+  }
+
+  /** Dueño de la clave, o null si el anillo está vacío. */
+  public synchronized T ownerOf(String key) {
+    if (ring.isEmpty())
+      return null;
+    Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  // FNV-1a de 64 bits con la mezcla final de MurmurHash3 para repartir bien
+  // claves que solo se diferencian en el último carácter
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,38 @@
+package Common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limita cuántos envíos pueden estar en curso a la vez hacia un mismo destino,
+ * para que un nodo lento no acapare todos los hilos del executor.
+ */
+public class DestinationLimiter<K> {
+  private final Map<K, Semaphore> permits = new ConcurrentHashMap<>();
+  private final int maxConcurrentPerDestination;
+
+  public DestinationLimiter(int maxConcurrentPerDestination) {
+    this.maxConcurrentPerDestination = maxConcurrentPerDestination;
+  }
+
+  public void acquire(K destination) throws InterruptedException {
+    permits.computeIfAbsent(destination, _ -> new Semaphore(maxConcurrentPerDestination, true)).acquire();
+  }
+
+  public void release(K destination) {
+    Semaphore semaphore = permits.get(destination);
+    if (semaphore != null)
+      semaphore.release();
+  }
+
+  /**
+   * Olvida el destino si nadie tiene ni espera un permiso suyo; si no, los que
+   * esperan se quedarían bloqueados en un semáforo que ya nadie libera.
+   */
+  public void remove(K destination) {
+    permits.computeIfPresent(destination, (_, semaphore) ->
+        semaphore.availablePermits() == maxConcurrentPerDestination && !semaphore.hasQueuedThreads() ? null
+            : semaphore);
+  }
+}
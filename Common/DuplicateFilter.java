@@ -0,0 +1,26 @@
+package Common;
+
+/**
+ * Recuerda los últimos números de secuencia vistos para descartar mensajes
+ * repetidos en O(1). Lo que quede por detrás de la ventana se considera visto.
+ */
+public class DuplicateFilter {
+  private final long[] seen;
+  private long highest = 0;
+
+  public DuplicateFilter(int window) {
+    this.seen = new long[window];
+  }
+
+  /** Devuelve true la primera vez que aparece la secuencia. */
+  public synchronized boolean firstTime(long sequence) {
+    if (sequence <= highest - seen.length)
+      return false;
+    int slot = (int) Math.floorMod(sequence, (long) seen.length);
+    if (seen[slot] == sequence)
+      return false;
+    seen[slot] = sequence;
+    highest = Math.max(highest, sequence);
+    return true;
+  }
+}
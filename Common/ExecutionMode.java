@@ -0,0 +1,25 @@
+package Common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tipo de hilos con el que los nodos atienden conexiones y envían mensajes.
+ */
+public enum ExecutionMode {
+  /** Pool cacheado de hilos del sistema operativo (comportamiento original). */
+  PLATFORM,
+  /** Un hilo virtual por tarea; un socket bloqueado no ocupa un hilo del SO. */
+  VIRTUAL;
+
+  public ExecutorService newExecutor() {
+    return this == VIRTUAL ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+  }
+
+  /** Como mucho threads tareas a la vez; los hilos de plataforma son daemon. */
+  public ExecutorService newFixedExecutor(int threads, String name) {
+    if (this == VIRTUAL)
+      return Executors.newFixedThreadPool(threads, Thread.ofVirtual().name(name + "-", 0).factory());
+    return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name(name + "-", 0).daemon().factory());
+  }
+}
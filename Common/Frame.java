@@ -0,0 +1,76 @@
+package Common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Un mensaje del protocolo: tipo, nodo que lo origina, número de secuencia y
+ * contenido. Es igual para el protocolo binario y el de texto.
+ */
+public class Frame {
+  public static final byte REGISTER = 1;
+  public static final byte MESSAGE = 2;
+  public static final byte STATUS = 3;
+  public static final byte REQUEST = 4;
+  public static final byte ACK = 5;
+  /** Del servidor a un nodo: lista "ip:puerto,..." de hijos a los que reenviar. */
+  public static final byte TOPOLOGY = 6;
+  /** De un nodo al servidor: "ip:puerto:desde:hasta" de secuencias perdidas. */
+  public static final byte NACK = 7;
+  /** Del servidor a un nodo: "grupo:puerto" multicast al que unirse. */
+  public static final byte MULTICAST = 8;
+  /**
+   * De un nodo al servidor: "ip:puerto" del nodo, enviado periódicamente.
+   * Del servidor al grupo multicast: sin contenido, con la secuencia del
+   * último broadcast.
+   */
+  public static final byte HEARTBEAT = 9;
+  /** Del servidor a un nodo: "ip:puerto" del servidor del clúster que le corresponde. */
+  public static final byte REDIRECT = 10;
+  /** Del servidor a un nodo: lista "ip:puerto,..." de los servidores del clúster. */
+  public static final byte CLUSTER = 11;
+  /** Entre servidores: broadcast reenviado; el primer byte es el tipo original. */
+  public static final byte RELAY = 12;
+  /**
+   * De un nodo al servidor: "ip:puerto:secuencia,..." con la última secuencia
+   * recibida sin huecos de cada origen; el servidor le envía lo posterior.
+   * Del servidor a un nodo que se registra: "secuencia,..." con la última de
+   * cada origen, desde la que el nodo empieza a contar huecos; la primera es
+   * la del propio servidor.
+   */
+  public static final byte FETCH = 13;
+  /** Cualquier trama con el contenido comprimido; ver PayloadCompression. */
+  public static final byte COMPRESSED = 14;
+
+  public final byte type;
+  public final String senderId;
+  public final long sequence;
+  public final byte[] payload;
+
+  public Frame(byte type, String senderId, long sequence, byte[] payload) {
+    this.type = type;
+    this.senderId = senderId == null ? "" : senderId;
+    this.sequence = sequence;
+    this.payload = payload;
+  }
+
+  public Frame(byte type, String senderId, long sequence, String payload) {
+    this(type, senderId, sequence, payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public String payloadAsString() {
+    return new String(payload, StandardCharsets.UTF_8);
+  }
+
+  public Frame withSequence(long newSequence) {
+    return new Frame(type, senderId, newSequence, payload);
+  }
+
+  public Frame withSender(String newSenderId) {
+    return new Frame(type, newSenderId, sequence, payload);
+  }
+
+  @Override
+  public String toString() {
+    return FrameCodec.toLine(this);
+  }
+}
@@ -0,0 +1,94 @@
+package Common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificación de tramas.
+ *
+ * Binario: quien abre la conexión envía primero el byte MAGIC y después cada
+ * trama como [longitud int][tipo byte][long. remitente short][remitente UTF-8]
+ * [secuencia long][contenido], donde la longitud cuenta los bytes que la siguen.
+ *
+ * Texto: una línea por trama, con el mismo formato que usaban los nodos antes
+ * del protocolo binario ("REGISTER:ip:puerto", "nodo: mensaje", ...).
+ */
+public final class FrameCodec {
+  /** Primer byte de una conexión binaria; nunca inicia una línea UTF-8 válida. */
+  public static final byte MAGIC = (byte) 0xB1;
+  public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+  private static final int HEADER_LENGTH = 1 + 2 + 8;
+
+  private FrameCodec() {
+  }
+
+  public static ByteBuffer encode(Frame frame) {
+    byte[] sender = frame.senderId.getBytes(StandardCharsets.UTF_8);
+    return putBinary(frame, sender, ByteBuffer.allocate(4 + HEADER_LENGTH + sender.length + frame.payload.length));
+  }
+
+  /** Codifica la trama tal como viaja con el protocolo indicado. */
+  public static ByteBuffer encode(Frame frame, WireProtocol protocol) {
+    if (protocol == WireProtocol.BINARY)
+      return encode(frame);
+    return ByteBuffer.wrap((toLine(frame) + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Igual, pero en un buffer del pool que hay que devolverle al terminar. */
+  public static ByteBuffer encode(Frame frame, WireProtocol protocol, BufferPool pool) {
+    if (protocol == WireProtocol.BINARY) {
+      byte[] sender = frame.senderId.getBytes(StandardCharsets.UTF_8);
+      return putBinary(frame, sender, pool.acquire(4 + HEADER_LENGTH + sender.length + frame.payload.length));
+    }
+    byte[] line = (toLine(frame) + "\n").getBytes(StandardCharsets.UTF_8);
+    return pool.acquire(line.length).put(line).flip();
+  }
+
+  private static ByteBuffer putBinary(Frame frame, byte[] sender, ByteBuffer buffer) {
+    buffer.putInt(HEADER_LENGTH + sender.length + frame.payload.length)
+        .put(frame.type)
+        .putShort((short) sender.length)
+        .put(sender)
+        .putLong(frame.sequence)
+        .put(frame.payload);
+    return buffer.flip();
+  }
+
+  /** Decodifica el cuerpo de una trama, sin el prefijo de longitud. */
+  public static Frame decodeBody(ByteBuffer body) throws IOException {
+    if (body.remaining() < HEADER_LENGTH)
+      throw new IOException("Trama demasiado corta: " + body.remaining() + " bytes");
+    byte type = body.get();
+    int senderLength = Short.toUnsignedInt(body.getShort());
+    if (body.remaining() < senderLength + 8)
+      throw new IOException("Remitente fuera de la trama");
+    byte[] sender = new byte[senderLength];
+    body.get(sender);
+    long sequence = body.getLong();
+    byte[] payload = new byte[body.remaining()];
+    body.get(payload);
+    return new Frame(type, new String(sender, StandardCharsets.UTF_8), sequence, payload);
+  }
+
+  public static void checkLength(int length) throws IOException {
+    if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH)
+      throw new IOException("Longitud de trama inválida: " + length);
+  }
+
+  public static String toLine(Frame frame) {
+    String payload = frame.payloadAsString();
+    return switch (frame.type) {
+      case Frame.REGISTER -> "REGISTER:" + payload;
+      case Frame.STATUS -> "ESTADO: " + payload;
+      case Frame.MESSAGE -> frame.senderId.isEmpty() ? payload : frame.senderId + ": " + payload;
+      default -> payload;
+    };
+  }
+
+  public static Frame fromLine(String line) {
+    if (line.startsWith("REGISTER:"))
+      return new Frame(Frame.REGISTER, "", 0, line.substring(9));
+    return new Frame(Frame.MESSAGE, "", 0, line);
+  }
+}
@@ -0,0 +1,73 @@
+package Common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lee tramas de un socket bloqueante. Sin protocolo fijo, lo detecta por el
+ * primer byte de la conexión.
+ */
+public class FrameReader {
+  private final DataInputStream input;
+  private WireProtocol protocol;
+
+  public FrameReader(InputStream input) {
+    this(input, null);
+  }
+
+  public FrameReader(InputStream input, WireProtocol protocol) {
+    this.input = new DataInputStream(new BufferedInputStream(input));
+    this.protocol = protocol;
+  }
+
+  public WireProtocol getProtocol() {
+    return protocol;
+  }
+
+  /** Devuelve la siguiente trama o null si el otro extremo cerró la conexión. */
+  public Frame read() throws IOException {
+    if (protocol == null && !detectProtocol())
+      return null;
+    return protocol == WireProtocol.BINARY ? readBinary() : readText();
+  }
+
+  private boolean detectProtocol() throws IOException {
+    input.mark(1);
+    int first = input.read();
+    if (first == -1)
+      return false;
+    if ((byte) first == FrameCodec.MAGIC) {
+      protocol = WireProtocol.BINARY;
+    } else {
+      protocol = WireProtocol.TEXT;
+      input.reset();
+    }
+    return true;
+  }
+
+  private Frame readBinary() throws IOException {
+    int first = input.read();
+    if (first == -1)
+      return null;
+    int length = (first << 24) | (input.readUnsignedByte() << 16) | (input.readUnsignedByte() << 8)
+        | input.readUnsignedByte();
+    FrameCodec.checkLength(length);
+    byte[] body = new byte[length];
+    input.readFully(body);
+    return FrameCodec.decodeBody(ByteBuffer.wrap(body));
+  }
+
+  private Frame readText() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    int b;
+    while ((b = input.read()) != -1 && b != '\n') {
+      line.write(b);
+    }
+    if (b == -1 && line.size() == 0)
+      return null;
+    byte[] bytes = line.toByteArray();
+    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+    return FrameCodec.fromLine(new String(bytes, 0, length, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,45 @@
+package Common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Escribe tramas en un socket bloqueante con el protocolo indicado. Quien abre
+ * la conexión envía el byte MAGIC antes de la primera trama binaria; las
+ * respuestas por una conexión ya aceptada no lo llevan.
+ */
+public class FrameWriter {
+  private final OutputStream output;
+  private final WireProtocol protocol;
+  private boolean preamblePending;
+
+  public FrameWriter(OutputStream output, WireProtocol protocol, boolean initiator) {
+    this.output = new BufferedOutputStream(output);
+    this.protocol = protocol;
+    this.preamblePending = initiator && protocol == WireProtocol.BINARY;
+  }
+
+  public WireProtocol getProtocol() {
+    return protocol;
+  }
+
+  public void write(Frame frame) throws IOException {
+    write(frame, true);
+  }
+
+  /** Sin flush la trama se queda en el buffer junto con las siguientes. */
+  public void write(Frame frame, boolean flush) throws IOException {
+    if (preamblePending) {
+      output.write(FrameCodec.MAGIC);
+      preamblePending = false;
+    }
+    ByteBuffer encoded = FrameCodec.encode(frame, protocol);
+    output.write(encoded.array(), 0, encoded.limit());
+    if (flush)
+      output.flush();
+  }
+
+  public void flush() throws IOException {
+    output.flush();
+  }
+}
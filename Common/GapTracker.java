@@ -0,0 +1,92 @@
+package Common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Sigue qué números de secuencia han llegado para detectar huecos cuando los
+ * mensajes viajan por un transporte que puede perderlos o desordenarlos.
+ */
+public class GapTracker {
+  private static final int MAX_PENDING = 65_536;
+
+  private long contiguous = -1;
+  private final TreeSet<Long> aboveContiguous = new TreeSet<>();
+  // Hasta dónde dice el emisor que ha enviado, -1 si no lo ha dicho
+  private long announced = -1;
+
+  /** La primera secuencia vista fija el punto de partida. */
+  public synchronized void record(long sequence) {
+    if (contiguous < 0) {
+      contiguous = sequence;
+      return;
+    }
+    if (sequence <= contiguous)
+      return;
+    aboveContiguous.add(sequence);
+    while (!aboveContiguous.isEmpty() && aboveContiguous.first() == contiguous + 1) {
+      contiguous = aboveContiguous.pollFirst();
+    }
+    // Si el hueco nunca se repara no se acumula memoria indefinidamente
+    if (aboveContiguous.size() > MAX_PENDING) {
+      contiguous = aboveContiguous.pollFirst();
+    }
+  }
+
+  /**
+   * El emisor avisa de que ya envió hasta esa secuencia: lo que falte hasta
+   * ahí es un hueco aunque no haya llegado nada detrás (pérdida del final).
+   * Si aún no se había visto ninguna, fija el punto de partida.
+   */
+  public synchronized void expectUpTo(long sequence) {
+    if (contiguous < 0) {
+      contiguous = sequence;
+      return;
+    }
+    announced = Math.max(announced, sequence);
+  }
+
+  /** Si la secuencia no ha llegado todavía (o aún no se ha visto ninguna). */
+  public synchronized boolean isMissing(long sequence) {
+    return contiguous < 0 || sequence > contiguous && !aboveContiguous.contains(sequence);
+  }
+
+  /** Última secuencia recibida sin huecos por detrás, -1 si no hay ninguna. */
+  public synchronized long contiguous() {
+    return contiguous;
+  }
+
+  /** Secuencia más alta recibida, -1 si no hay ninguna. */
+  public synchronized long highest() {
+    return aboveContiguous.isEmpty() ? contiguous : aboveContiguous.last();
+  }
+
+  /**
+   * Rangos [desde, hasta] que faltan entre lo contiguo y lo más alto recibido
+   * o anunciado con expectUpTo.
+   */
+  public synchronized List<long[]> missingRanges() {
+    List<long[]> ranges = new ArrayList<>();
+    long expected = contiguous + 1;
+    for (long received : aboveContiguous) {
+      if (received > expected)
+        ranges.add(new long[] { expected, received - 1 });
+      expected = received + 1;
+    }
+    if (announced >= expected)
+      ranges.add(new long[] { expected, announced });
+    return ranges;
+  }
+
+  /** Da por perdidos los huecos hasta la secuencia indicada. */
+  public synchronized void skipTo(long sequence) {
+    if (sequence <= contiguous)
+      return;
+    contiguous = sequence;
+    aboveContiguous.headSet(sequence, true).clear();
+    while (!aboveContiguous.isEmpty() && aboveContiguous.first() == contiguous + 1) {
+      contiguous = aboveContiguous.pollFirst();
+    }
+  }
+}
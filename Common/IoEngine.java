@@ -0,0 +1,11 @@
+package Common;
+
+/**
+ * Motor de E/S que usan los servidores de los nodos para atender conexiones.
+ */
+public enum IoEngine {
+  /** Un hilo bloqueado en accept() y un hilo del pool por conexión. */
+  BLOCKING,
+  /** Unos pocos hilos de event loop sobre ServerSocketChannel y Selector. */
+  NIO
+}
@@ -0,0 +1,92 @@
+package Common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en nanosegundos con cubetas log-lineales: cada
+ * potencia de dos se divide en 32 cubetas, así que los percentiles tienen un
+ * error relativo de ~3% con memoria fija y registrar es un incremento atómico.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(long nanos) {
+    if (nanos < 0)
+      nanos = 0;
+    counts.incrementAndGet(indexFor(nanos));
+    total.increment();
+    sum.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  public long count() {
+    return total.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    long n = total.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /** Valor (cota superior de la cubeta) por debajo del cual queda la fracción q. */
+  public long percentile(double q) {
+    long[] snapshot = new long[counts.length()];
+    long n = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(q * n));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return Math.min(valueFor(i), max.get());
+    }
+    return max.get();
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    total.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  /** Resumen en microsegundos: n, p50, p99, p999 y máximo. */
+  public String summary() {
+    return String.format("n=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus", count(), percentile(0.50) / 1e3,
+        percentile(0.99) / 1e3, percentile(0.999) / 1e3, max() / 1e3);
+  }
+
+  private static int indexFor(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  private static long valueFor(int index) {
+    if (index < SUB_BUCKETS)
+      return index;
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
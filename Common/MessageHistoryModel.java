@@ -0,0 +1,99 @@
+package Common;
+
+import javax.swing.AbstractListModel;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Últimas capacity líneas del registro de un nodo en un buffer circular.
+ * Al llenarse se descartan las más antiguas, o se añaden a un fichero si se
+ * ha llamado a spillTo, así que la memoria no crece por mucho que dure el
+ * nodo. Solo se debe usar desde el hilo de Swing.
+ */
+public class MessageHistoryModel extends AbstractListModel<String> {
+  private final String[] entries;
+  private int first;
+  private int size;
+  private Writer spill;
+
+  public MessageHistoryModel(int capacity) {
+    this.entries = new String[capacity];
+  }
+
+  /** Las líneas que salgan del buffer se añaden a ese fichero. */
+  public void spillTo(Path file) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    spill = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND), 64 * 1024);
+  }
+
+  public void add(String line) {
+    addAll(List.of(line));
+  }
+
+  /** Un único aviso de borrado y otro de alta por lote, no uno por línea. */
+  public void addAll(List<String> lines) {
+    int capacity = entries.length;
+    // Si el lote no cabe entero solo se quedan sus últimas líneas
+    int skipped = Math.max(0, lines.size() - capacity);
+    int evicted = Math.max(0, size + lines.size() - skipped - capacity);
+    for (int i = 0; i < evicted; i++) {
+      spill(entries[first]);
+      entries[first] = null;
+      first = (first + 1) % capacity;
+      size--;
+    }
+    for (int i = 0; i < skipped; i++) {
+      spill(lines.get(i));
+    }
+    if (evicted > 0)
+      fireIntervalRemoved(this, 0, evicted - 1);
+    int start = size;
+    for (int i = skipped; i < lines.size(); i++) {
+      entries[(first + size) % capacity] = lines.get(i);
+      size++;
+    }
+    if (size > start)
+      fireIntervalAdded(this, start, size - 1);
+  }
+
+  private void spill(String line) {
+    if (spill == null)
+      return;
+    try {
+      spill.write(line);
+      spill.write('\n');
+    } catch (IOException e) {
+      System.err.println("No se pudo guardar el historial, se deja de volcar: " + e.getMessage());
+      spill = null;
+    }
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public String getElementAt(int index) {
+    return entries[(first + index) % entries.length];
+  }
+
+  /** Vuelca lo pendiente del fichero; el contenido en memoria no se guarda. */
+  public void close() {
+    if (spill == null)
+      return;
+    try {
+      spill.close();
+    } catch (IOException e) {
+      System.err.println("Error cerrando el historial: " + e.getMessage());
+    }
+    spill = null;
+  }
+}
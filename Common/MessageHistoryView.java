@@ -0,0 +1,115 @@
+package Common;
+
+import javax.swing.BorderFactory;
+import javax.swing.JList;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.TransferHandler;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de mensajes de las interfaces de los nodos. A diferencia de un
+ * JTextArea, la lista solo pinta las filas visibles y, con la altura de fila
+ * fija, no mide todas las líneas en cada cambio; el contenido vive en un
+ * MessageHistoryModel de tamaño fijo.
+ *
+ * Cada línea de un mensaje es una fila y el ancho de la lista es el de la
+ * fila más larga vista, así que nada se recorta: lo que no cabe se ve con la
+ * barra horizontal. Las filas seleccionadas se copian con Ctrl+C o con el
+ * menú contextual.
+ *
+ * Si el sistema tiene la propiedad historial.dir, lo que sale del buffer se
+ * guarda en un fichero por nodo dentro de ese directorio.
+ */
+public final class MessageHistoryView extends JScrollPane {
+  public static final int DEFAULT_CAPACITY = 5_000;
+
+  private final MessageHistoryModel model;
+  private final JList<String> list;
+  private final FontMetrics metrics;
+
+  public MessageHistoryView(String title, String nodeId) {
+    this(title, nodeId, DEFAULT_CAPACITY);
+  }
+
+  public MessageHistoryView(String title, String nodeId, int capacity) {
+    model = new MessageHistoryModel(capacity);
+    String spillDirectory = System.getProperty("historial.dir");
+    if (spillDirectory != null) {
+      try {
+        model.spillTo(Path.of(spillDirectory, nodeId + ".log"));
+      } catch (IOException e) {
+        System.err.println(nodeId + " No se pudo abrir el historial en " + spillDirectory + ": " + e.getMessage());
+      }
+    }
+    list = new JList<>(model);
+    metrics = list.getFontMetrics(list.getFont());
+    list.setFixedCellHeight(metrics.getHeight() + 2);
+    // Solo se miden las filas nuevas; el ancho fijo es el de la más larga
+    list.setFixedCellWidth(1);
+    JPopupMenu menu = new JPopupMenu();
+    JMenuItem copy = new JMenuItem("Copiar");
+    // La acción copia lo seleccionado en el componente que origina el evento
+    copy.addActionListener(_ -> TransferHandler.getCopyAction()
+        .actionPerformed(new ActionEvent(list, ActionEvent.ACTION_PERFORMED, "copy")));
+    menu.add(copy);
+    list.setComponentPopupMenu(menu);
+    setViewportView(list);
+    setBorder(BorderFactory.createTitledBorder(title));
+  }
+
+  /** Desde el hilo de Swing. */
+  public void append(String line) {
+    appendAll(List.of(line));
+  }
+
+  /** Desde el hilo de Swing. Si se estaba viendo el final, se sigue viendo. */
+  public void appendAll(List<String> lines) {
+    JScrollBar bar = getVerticalScrollBar();
+    boolean atEnd = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+    List<String> rows = rows(lines);
+    int width = list.getFixedCellWidth();
+    for (String row : rows) {
+      width = Math.max(width, metrics.stringWidth(row) + 8);
+    }
+    if (width > list.getFixedCellWidth())
+      list.setFixedCellWidth(width);
+    model.addAll(rows);
+    if (atEnd && model.getSize() > 0)
+      list.ensureIndexIsVisible(model.getSize() - 1);
+  }
+
+  /** Parte en filas los mensajes que traen saltos de línea. */
+  static List<String> rows(List<String> lines) {
+    List<String> rows = null;
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.indexOf('\n') < 0 && line.indexOf('\r') < 0) {
+        if (rows != null)
+          rows.add(line);
+        continue;
+      }
+      if (rows == null)
+        rows = new ArrayList<>(lines.subList(0, i));
+      for (String row : line.split("\r\n|\r|\n", -1)) {
+        rows.add(row);
+      }
+    }
+    return rows != null ? rows : lines;
+  }
+
+  int rowWidth() {
+    return list.getFixedCellWidth();
+  }
+
+  public void close() {
+    model.close();
+  }
+}
@@ -0,0 +1,186 @@
+package Common;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de mensajes e histogramas de latencia de un componente. Se
+ * consultan por JMX (dominio "Messaging") o con snapshot() en texto.
+ *
+ * fanOut mide desde que se numera un broadcast hasta que se escribió a todos
+ * sus destinos directos; sendLatency, lo que tarda cada envío individual.
+ */
+public class MessagingMetrics implements MessagingMetricsMBean {
+  private final String name;
+  private final LongAdder received = new LongAdder();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder broadcast = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private final LatencyHistogram fanOut = new LatencyHistogram();
+  private final LatencyHistogram sendLatency = new LatencyHistogram();
+  private ObjectName objectName;
+
+  public MessagingMetrics(String name) {
+    this.name = name;
+  }
+
+  /** Publica las métricas en el MBeanServer de la plataforma. */
+  public synchronized MessagingMetrics register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      objectName = new ObjectName("Messaging", "name", ObjectName.quote(name));
+      if (server.isRegistered(objectName))
+        server.unregisterMBean(objectName);
+      server.registerMBean(this, objectName);
+    } catch (JMException e) {
+      System.err.println("No se pudieron registrar las métricas de " + name + " en JMX: " + e.getMessage());
+    }
+    return this;
+  }
+
+  public synchronized void unregister() {
+    if (objectName == null)
+      return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException ignored) {
+    }
+    objectName = null;
+  }
+
+  public void messageReceived() {
+    received.increment();
+  }
+
+  public void messageSent(long latencyNanos) {
+    sent.increment();
+    sendLatency.record(latencyNanos);
+  }
+
+  public void messageBroadcast() {
+    broadcast.increment();
+  }
+
+  public void messagesFailed(long count) {
+    failed.add(count);
+  }
+
+  public void messagesDropped(long count) {
+    dropped.add(count);
+  }
+
+  /** Mensaje que ya se había recibido y se descarta sin entregarlo. */
+  public void messageDuplicated() {
+    duplicates.increment();
+  }
+
+  public void fanOutCompleted(long nanos) {
+    fanOut.record(nanos);
+  }
+
+  public LatencyHistogram getFanOut() {
+    return fanOut;
+  }
+
+  public LatencyHistogram getSendLatency() {
+    return sendLatency;
+  }
+
+  @Override
+  public long getMessagesReceived() {
+    return received.sum();
+  }
+
+  @Override
+  public long getMessagesSent() {
+    return sent.sum();
+  }
+
+  @Override
+  public long getMessagesBroadcast() {
+    return broadcast.sum();
+  }
+
+  @Override
+  public long getMessagesFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public long getMessagesDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public long getMessagesDuplicated() {
+    return duplicates.sum();
+  }
+
+  @Override
+  public double getFanOutP50Micros() {
+    return fanOut.percentile(0.50) / 1e3;
+  }
+
+  @Override
+  public double getFanOutP99Micros() {
+    return fanOut.percentile(0.99) / 1e3;
+  }
+
+  @Override
+  public double getFanOutP999Micros() {
+    return fanOut.percentile(0.999) / 1e3;
+  }
+
+  @Override
+  public double getSendLatencyP50Micros() {
+    return sendLatency.percentile(0.50) / 1e3;
+  }
+
+  @Override
+  public double getSendLatencyP99Micros() {
+    return sendLatency.percentile(0.99) / 1e3;
+  }
+
+  @Override
+  public double getSendLatencyP999Micros() {
+    return sendLatency.percentile(0.999) / 1e3;
+  }
+
+  @Override
+  public String getSnapshot() {
+    return snapshot();
+  }
+
+  public String snapshot() {
+    StringBuilder text = new StringBuilder();
+    text.append("--- Métricas ").append(name).append(" ---\n");
+    text.append("Recibidos: ").append(received.sum())
+        .append(" | Enviados: ").append(sent.sum())
+        .append(" | Broadcast: ").append(broadcast.sum())
+        .append(" | Fallidos: ").append(failed.sum())
+        .append(" | Descartados: ").append(dropped.sum())
+        .append(" | Duplicados: ").append(duplicates.sum()).append('\n');
+    if (fanOut.count() > 0)
+      text.append("Fan-out completo: ").append(fanOut.summary()).append('\n');
+    if (sendLatency.count() > 0)
+      text.append("Latencia de envío: ").append(sendLatency.summary()).append('\n');
+    return text.toString();
+  }
+
+  @Override
+  public void reset() {
+    received.reset();
+    sent.reset();
+    broadcast.reset();
+    failed.reset();
+    dropped.reset();
+    duplicates.reset();
+    fanOut.reset();
+    sendLatency.reset();
+  }
+}
@@ -0,0 +1,34 @@
+package Common;
+
+/**
+ * Vista JMX de MessagingMetrics. Las latencias se expresan en microsegundos.
+ */
+public interface MessagingMetricsMBean {
+  long getMessagesReceived();
+
+  long getMessagesSent();
+
+  long getMessagesBroadcast();
+
+  long getMessagesFailed();
+
+  long getMessagesDropped();
+
+  long getMessagesDuplicated();
+
+  double getFanOutP50Micros();
+
+  double getFanOutP99Micros();
+
+  double getFanOutP999Micros();
+
+  double getSendLatencyP50Micros();
+
+  double getSendLatencyP99Micros();
+
+  double getSendLatencyP999Micros();
+
+  String getSnapshot();
+
+  void reset();
+}
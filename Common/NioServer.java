@@ -0,0 +1,312 @@
+package Common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor de tramas no bloqueante. Un número fijo de event loops, cada uno
+ * con su Selector, atiende todas las conexiones, así que la cantidad de hilos
+ * no depende del número de nodos conectados. Cada conexión detecta si habla el
+ * protocolo binario o el de texto por su primer byte.
+ */
+public class NioServer {
+  public static final int DEFAULT_LOOP_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+  private static final int MAX_LINE_LENGTH = 1 << 20;
+  private static final int MAX_BUFFER_SIZE = FrameCodec.MAX_FRAME_LENGTH + 4;
+
+  private final String host;
+  private final int port;
+  private final String name;
+  private final Handler handler;
+  private final EventLoop[] loops;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private ServerSocketChannel serverChannel;
+  private volatile boolean running;
+
+  public interface Handler {
+    void onFrame(Connection connection, Frame frame);
+
+    default void onClose(Connection connection) {
+    }
+  }
+
+  public NioServer(String host, int port, int loopThreads, String name, Handler handler) {
+    this.host = host;
+    this.port = port;
+    this.name = name;
+    this.handler = handler;
+    this.loops = new EventLoop[Math.max(1, loopThreads)];
+  }
+
+  public void start() throws IOException {
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port), 50);
+    serverChannel.configureBlocking(false);
+    running = true;
+
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new EventLoop(Selector.open());
+    }
+    loops[0].submit(() -> serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT));
+    for (int i = 0; i < loops.length; i++) {
+      Thread thread = new Thread(loops[i], name + "-loop-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  public void awaitTermination() throws InterruptedException {
+    terminated.await();
+  }
+
+  public void stop() {
+    if (!running)
+      return;
+    running = false;
+    try {
+      if (serverChannel != null)
+        serverChannel.close();
+    } catch (IOException ignored) {
+    }
+    for (EventLoop loop : loops) {
+      if (loop != null)
+        loop.selector.wakeup();
+    }
+    terminated.countDown();
+  }
+
+  private void accept() throws IOException {
+    SocketChannel accepted;
+    while ((accepted = serverChannel.accept()) != null) {
+      SocketChannel channel = accepted;
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+      Connection connection = new Connection(channel, loop);
+      loop.submit(() -> connection.key = channel.register(loop.selector, SelectionKey.OP_READ, connection));
+    }
+  }
+
+  public class Connection {
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private SelectionKey key;
+    private volatile WireProtocol protocol;
+    private volatile boolean open = true;
+
+    private Connection(SocketChannel channel, EventLoop loop) {
+      this.channel = channel;
+      this.loop = loop;
+    }
+
+    /**
+     * Encola la trama con el protocolo de la conexión; la escribe el event loop
+     * cuando el socket lo permita.
+     */
+    public void write(Frame frame) {
+      if (!open)
+        return;
+      writeQueue.add(FrameCodec.encode(frame, protocol));
+      loop.submit(() -> {
+        if (key != null && key.isValid())
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      });
+    }
+
+    public WireProtocol getProtocol() {
+      return protocol;
+    }
+
+    public String getRemoteAddress() {
+      try {
+        return String.valueOf(channel.getRemoteAddress()).replaceFirst("^/", "");
+      } catch (IOException e) {
+        return "?";
+      }
+    }
+
+    public void close() {
+      loop.submit(this::closeNow);
+    }
+
+    private void closeNow() {
+      if (!open)
+        return;
+      open = false;
+      if (key != null)
+        key.cancel();
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+      handler.onClose(this);
+    }
+
+    private void onReadable() throws IOException {
+      int read = channel.read(readBuffer);
+      if (read == -1) {
+        closeNow();
+        return;
+      }
+      readBuffer.flip();
+      if (protocol == null && readBuffer.hasRemaining()) {
+        if (readBuffer.get(readBuffer.position()) == FrameCodec.MAGIC) {
+          protocol = WireProtocol.BINARY;
+          readBuffer.get();
+        } else {
+          protocol = WireProtocol.TEXT;
+        }
+      }
+      int needed = protocol == WireProtocol.BINARY ? readFrames() : readLines();
+      if (!open)
+        return;
+      readBuffer.compact();
+      if (needed > readBuffer.capacity()) {
+        int limit = protocol == WireProtocol.BINARY ? MAX_BUFFER_SIZE : MAX_LINE_LENGTH;
+        if (needed > limit) {
+          System.err.println(name + " Mensaje demasiado largo desde " + getRemoteAddress() + ", cerrando conexión");
+          closeNow();
+          return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(limit, Math.max(needed, readBuffer.capacity() * 2)));
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+      }
+    }
+
+    // Ambos métodos consumen lo que haya completo en readBuffer y devuelven
+    // cuántos bytes hacen falta para el siguiente mensaje.
+    private int readLines() {
+      int lineStart = readBuffer.position();
+      for (int i = lineStart; i < readBuffer.limit(); i++) {
+        if (readBuffer.get(i) == '\n') {
+          int end = i > lineStart && readBuffer.get(i - 1) == '\r' ? i - 1 : i;
+          byte[] line = new byte[end - lineStart];
+          readBuffer.get(lineStart, line);
+          lineStart = i + 1;
+          handler.onFrame(this, FrameCodec.fromLine(new String(line, StandardCharsets.UTF_8)));
+          if (!open)
+            return 0;
+        }
+      }
+      readBuffer.position(lineStart);
+      return readBuffer.remaining() + 1;
+    }
+
+    private int readFrames() throws IOException {
+      while (readBuffer.remaining() >= 4) {
+        int length = readBuffer.getInt(readBuffer.position());
+        FrameCodec.checkLength(length);
+        if (readBuffer.remaining() < 4 + length)
+          return 4 + length;
+        readBuffer.position(readBuffer.position() + 4);
+        ByteBuffer body = readBuffer.slice(readBuffer.position(), length);
+        readBuffer.position(readBuffer.position() + length);
+        handler.onFrame(this, FrameCodec.decodeBody(body));
+        if (!open)
+          return 0;
+      }
+      return 4;
+    }
+
+    private void onWritable() throws IOException {
+      ByteBuffer buffer;
+      while ((buffer = writeQueue.peek()) != null) {
+        channel.write(buffer);
+        if (buffer.hasRemaining())
+          return;
+        writeQueue.poll();
+      }
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+  }
+
+  private interface LoopTask {
+    void run() throws IOException;
+  }
+
+  private class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<LoopTask> tasks = new ConcurrentLinkedQueue<>();
+
+    EventLoop(Selector selector) {
+      this.selector = selector;
+    }
+
+    void submit(LoopTask task) {
+      tasks.add(task);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select();
+          LoopTask task;
+          while ((task = tasks.poll()) != null) {
+            try {
+              task.run();
+            } catch (IOException e) {
+              System.err.println(name + " Error en el event loop: " + e.getMessage());
+            }
+          }
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            handleKey(key);
+          }
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        if (running)
+          System.err.println(name + " Error crítico en el event loop: " + e.getMessage());
+      } finally {
+        for (SelectionKey key : selector.keys()) {
+          if (key.attachment() instanceof Connection connection)
+            connection.closeNow();
+        }
+        try {
+          selector.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+
+    private void handleKey(SelectionKey key) {
+      if (!key.isValid())
+        return;
+      if (key.isAcceptable()) {
+        try {
+          accept();
+        } catch (IOException e) {
+          if (running)
+            System.err.println(name + " Error aceptando conexión: " + e.getMessage());
+        }
+        return;
+      }
+      Connection connection = (Connection) key.attachment();
+      try {
+        if (key.isReadable())
+          connection.onReadable();
+        if (connection.open && key.isValid() && key.isWritable())
+          connection.onWritable();
+      } catch (IOException e) {
+        connection.closeNow();
+      }
+    }
+  }
+}
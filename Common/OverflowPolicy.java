@@ -0,0 +1,19 @@
+package Common;
+
+/**
+ * Qué hacer cuando la cola de salida hacia un destino está llena.
+ */
+public enum OverflowPolicy {
+  /**
+   * El emisor espera a que haya espacio, como mucho el timeout de escritura
+   * desde que el destino dejó de aceptar datos. No debe esperar un hilo de
+   * E/S que atiende otras conexiones, como un bucle NIO.
+   */
+  BLOCK,
+  /** Se descarta el mensaje más antiguo de la cola para hacer sitio. */
+  DROP_OLDEST,
+  /** Se descarta el mensaje nuevo. */
+  DROP_NEWEST,
+  /** Se desconecta al destino, que se considera un consumidor lento. */
+  DISCONNECT
+}
@@ -0,0 +1,143 @@
+package Common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresión con Deflate del contenido de las tramas grandes. Una trama
+ * comprimida es de tipo Frame.COMPRESSED y su contenido es [tipo original]
+ * [longitud original int][datos comprimidos]; el remitente y la secuencia no
+ * cambian.
+ *
+ * Solo se comprime a partir de thresholdBytes, y antes se prueba con una
+ * muestra del centro del contenido: si la muestra apenas se reduce (datos ya
+ * comprimidos o cifrados) se envía tal cual sin gastar CPU en el resto.
+ */
+public class PayloadCompression {
+  public static final int DEFAULT_THRESHOLD_BYTES = 1024;
+  private static final int SAMPLE_BYTES = 4096;
+  // Si no se ahorra al menos un 10% no compensa
+  private static final double MAX_RATIO = 0.9;
+  private static final int HEADER = 1 + 4;
+
+  private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(
+      () -> new Deflater(Deflater.BEST_SPEED));
+  private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+  private final int thresholdBytes;
+  private final LongAdder compressed = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final LongAdder compressNanos = new LongAdder();
+
+  public PayloadCompression(int thresholdBytes) {
+    this.thresholdBytes = thresholdBytes;
+  }
+
+  /** La trama comprimida, o la misma si es pequeña o no se reduce lo bastante. */
+  public Frame compress(Frame frame) {
+    byte[] payload = frame.payload;
+    if (payload.length < thresholdBytes || frame.type == Frame.COMPRESSED)
+      return frame;
+    long startedAt = System.nanoTime();
+    try {
+      if (payload.length > 2 * SAMPLE_BYTES) {
+        int offset = (payload.length - SAMPLE_BYTES) / 2;
+        if (deflate(payload, offset, SAMPLE_BYTES, new byte[SAMPLE_BYTES], 0) < 0) {
+          skipped.increment();
+          return frame;
+        }
+      }
+      // Lo que no quepa en este buffer no compensaba
+      byte[] output = new byte[HEADER + (int) (payload.length * MAX_RATIO)];
+      int length = deflate(payload, 0, payload.length, output, HEADER);
+      if (length < 0) {
+        skipped.increment();
+        return frame;
+      }
+      ByteBuffer.wrap(output).put(frame.type).putInt(payload.length);
+      byte[] result = new byte[HEADER + length];
+      System.arraycopy(output, 0, result, 0, result.length);
+      compressed.increment();
+      bytesIn.add(payload.length);
+      bytesOut.add(result.length);
+      return new Frame(Frame.COMPRESSED, frame.senderId, frame.sequence, result);
+    } finally {
+      compressNanos.add(System.nanoTime() - startedAt);
+    }
+  }
+
+  // Bytes escritos en output desde outputOffset, o -1 si no cupo en MAX_RATIO
+  private static int deflate(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+    Deflater deflater = DEFLATERS.get();
+    deflater.reset();
+    deflater.setInput(input, offset, length);
+    deflater.finish();
+    int limit = Math.min(output.length - outputOffset, (int) (length * MAX_RATIO));
+    int written = deflater.deflate(output, outputOffset, limit);
+    return deflater.finished() ? written : -1;
+  }
+
+  /** La trama original si estaba comprimida; si no, la misma. */
+  public static Frame decompress(Frame frame) throws IOException {
+    if (frame.type != Frame.COMPRESSED)
+      return frame;
+    if (frame.payload.length < HEADER)
+      throw new IOException("Trama comprimida demasiado corta");
+    ByteBuffer header = ByteBuffer.wrap(frame.payload);
+    byte type = header.get();
+    int length = header.getInt();
+    if (length < 0 || length > FrameCodec.MAX_FRAME_LENGTH)
+      throw new IOException("Longitud descomprimida inválida: " + length);
+    Inflater inflater = INFLATERS.get();
+    inflater.reset();
+    inflater.setInput(frame.payload, HEADER, frame.payload.length - HEADER);
+    byte[] payload = new byte[length];
+    try {
+      int read = 0;
+      while (read < length && !inflater.finished()) {
+        int n = inflater.inflate(payload, read, length - read);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          break;
+        read += n;
+      }
+      if (read != length || !inflater.finished())
+        throw new IOException("Trama comprimida incompleta");
+    } catch (DataFormatException e) {
+      throw new IOException("Trama comprimida inválida: " + e.getMessage());
+    }
+    return new Frame(type, frame.senderId, frame.sequence, payload);
+  }
+
+  public int getThresholdBytes() {
+    return thresholdBytes;
+  }
+
+  public long getCompressed() {
+    return compressed.sum();
+  }
+
+  /** Tramas por encima del umbral que se enviaron sin comprimir. */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /** Bytes de contenido antes de comprimir, solo de las tramas comprimidas. */
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  /** Tiempo total en compress(), incluidas las muestras descartadas. */
+  public long getCompressNanos() {
+    return compressNanos.sum();
+  }
+}
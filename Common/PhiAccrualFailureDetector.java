@@ -0,0 +1,102 @@
+package Common;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detector de fallos phi-accrual: en lugar de un sí/no con un timeout fijo da
+ * un nivel de sospecha phi que crece cuanto más improbable es, según los
+ * intervalos entre latidos vistos, no haber recibido uno todavía. phi = 1
+ * equivale a ~10% de probabilidad de equivocarse, phi = 8 a ~1e-8.
+ */
+public class PhiAccrualFailureDetector<K> {
+  private static final int WINDOW = 100;
+
+  private final Map<K, History> histories = new ConcurrentHashMap<>();
+  private final long expectedIntervalMillis;
+  private final long minStdDeviationMillis;
+  // Pausas toleradas (GC, red) antes de que empiece a subir phi
+  private final long acceptablePauseMillis;
+
+  private static class History {
+    final long[] intervals = new long[WINDOW];
+    int count;
+    int next;
+    long sum;
+    long sumOfSquares;
+    volatile long lastHeartbeat;
+
+    synchronized void add(long interval) {
+      if (count == WINDOW) {
+        long oldest = intervals[next];
+        sum -= oldest;
+        sumOfSquares -= oldest * oldest;
+      } else {
+        count++;
+      }
+      intervals[next] = interval;
+      next = (next + 1) % WINDOW;
+      sum += interval;
+      sumOfSquares += interval * interval;
+    }
+  }
+
+  public PhiAccrualFailureDetector(long expectedIntervalMillis, long minStdDeviationMillis,
+      long acceptablePauseMillis) {
+    this.expectedIntervalMillis = expectedIntervalMillis;
+    this.minStdDeviationMillis = minStdDeviationMillis;
+    this.acceptablePauseMillis = acceptablePauseMillis;
+  }
+
+  public void heartbeat(K key) {
+    long now = System.currentTimeMillis();
+    History history = histories.computeIfAbsent(key, k -> new History());
+    long last = history.lastHeartbeat;
+    if (last > 0) {
+      history.add(now - last);
+    } else {
+      // Hasta tener datos se supone el intervalo esperado
+      history.add(expectedIntervalMillis);
+    }
+    history.lastHeartbeat = now;
+  }
+
+  public double phi(K key) {
+    History history = histories.get(key);
+    if (history == null)
+      return 0;
+    double mean;
+    double variance;
+    synchronized (history) {
+      mean = (double) history.sum / history.count;
+      variance = (double) history.sumOfSquares / history.count - mean * mean;
+    }
+    double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), minStdDeviationMillis);
+    long elapsed = System.currentTimeMillis() - history.lastHeartbeat;
+    return phi(elapsed, mean + acceptablePauseMillis, stdDeviation);
+  }
+
+  /** Milisegundos desde el último latido, o -1 si nunca se recibió ninguno. */
+  public long millisSinceLastHeartbeat(K key) {
+    History history = histories.get(key);
+    return history == null ? -1 : System.currentTimeMillis() - history.lastHeartbeat;
+  }
+
+  public Set<K> monitored() {
+    return histories.keySet();
+  }
+
+  public void remove(K key) {
+    histories.remove(key);
+  }
+
+  // Aproximación logística de la cola de la normal
+  private static double phi(long elapsed, double mean, double stdDeviation) {
+    double y = (elapsed - mean) / stdDeviation;
+    double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+    if (elapsed > mean)
+      return -Math.log10(e / (1.0 + e));
+    return -Math.log10(1.0 - 1.0 / (1.0 + e));
+  }
+}
@@ -0,0 +1,599 @@
+package Common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mensajes fiables y en orden sobre UDP entre este punto y cualquier otro
+ * que use la misma clase. Cada mensaje se parte en fragmentos numerados que
+ * caben en un datagrama; el receptor los confirma con el primero que le falta
+ * más un mapa de los 64 siguientes que ya tiene (ACK selectivo), y anuncia
+ * cuántos más admite. El emisor mantiene una ventana deslizante y reenvía
+ * cada fragmento cuando vence su plazo, calculado con el RTT medido (RFC
+ * 6298), o antes si el receptor ya confirmó otro enviado después.
+ *
+ * Todo el estado lo lleva un único hilo con un Selector; send() se puede
+ * llamar desde cualquier hilo. Los mensajes recibidos se entregan desde ese
+ * hilo, así que el Handler no debe bloquearse.
+ *
+ * Cada destino recibe una sesión al azar que viaja en los fragmentos: si el
+ * emisor se reinicia o da al destino por caído, el receptor ve una sesión
+ * nueva, descarta lo que tenía y empieza de cero.
+ *
+ * Formato de DATA: [1][sesión int][seq int][base int][índice short][total short][datos]
+ * Formato de ACK:  [2][sesión int][siguiente seq int][ventana int][mapa long]
+ */
+public class ReliableUdpEndpoint implements Runnable {
+  public static final int DEFAULT_FRAGMENT_BYTES = 1200;
+  public static final int DEFAULT_WINDOW = 256;
+  static final byte DATA = 1;
+  static final byte ACK = 2;
+  static final int DATA_HEADER = 17;
+  static final int ACK_LENGTH = 21;
+  // Lo más que cabe en un datagrama UDP sobre IPv4
+  static final int MAX_DATAGRAM = 65_507;
+  private static final long INITIAL_RTO_NANOS = 100_000_000L;
+  private static final long MIN_RTO_NANOS = 5_000_000L;
+  private static final long MAX_RTO_NANOS = 2_000_000_000L;
+  private static final int MAX_TRANSMISSIONS = 12;
+  private static final int REORDER_THRESHOLD = 3;
+  private static final int MAX_QUEUED_MESSAGES = 65_536;
+  private static final long IDLE_PEER_NANOS = 60_000_000_000L;
+
+  /** Se llama desde el hilo del punto; message solo es válido durante la llamada. */
+  public interface Handler {
+    void onMessage(InetSocketAddress peer, ByteBuffer message);
+
+    /** El otro extremo no confirmó tras los reintentos; lo pendiente se pierde. */
+    default void onPeerFailed(InetSocketAddress peer, int undelivered) {
+    }
+  }
+
+  private record Command(InetSocketAddress peer, byte[] message) {
+  }
+
+  private static class Outgoing {
+    final int sequence;
+    final ByteBuffer packet;
+    long sentAt;
+    long deadline;
+    int transmissions;
+    boolean sacked;
+
+    Outgoing(int sequence, ByteBuffer packet) {
+      this.sequence = sequence;
+      this.packet = packet;
+    }
+  }
+
+  private static class Fragment {
+    final int index;
+    final int count;
+    final byte[] data;
+
+    Fragment(int index, int count, byte[] data) {
+      this.index = index;
+      this.count = count;
+      this.data = data;
+    }
+  }
+
+  private class Peer {
+    final InetSocketAddress address;
+    // Envío
+    final int session = ThreadLocalRandom.current().nextInt();
+    final ArrayDeque<byte[]> queued = new ArrayDeque<>();
+    final Outgoing[] inFlight = new Outgoing[window];
+    int base;
+    int nextSequence;
+    int remoteWindow = window;
+    long smoothedRtt;
+    long rttVariance;
+    long rto = INITIAL_RTO_NANOS;
+    // Fragmentos del mensaje que está a medio enviar
+    byte[] sending;
+    int sendingOffset;
+    int sendingIndex;
+    int sendingCount;
+    // Recepción
+    boolean remoteKnown;
+    int remoteSession;
+    int expected;
+    final Fragment[] buffered = new Fragment[window];
+    int bufferedCount;
+    byte[] partial;
+    int partialLength;
+    int partialNextIndex;
+    int partialCount;
+    boolean ackPending;
+    long lastActivity;
+
+    Peer(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    int inFlightCount() {
+      return nextSequence - base;
+    }
+
+    boolean hasWork() {
+      return inFlightCount() > 0 || sending != null || !queued.isEmpty();
+    }
+  }
+
+  private final InetSocketAddress bindAddress;
+  private final int fragmentBytes;
+  private final int window;
+  private final Handler handler;
+  private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedCommands = new AtomicInteger();
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+  private final AtomicLong retransmissions = new AtomicLong();
+  private final Map<SocketAddress, Peer> peers = new HashMap<>();
+  private final List<Peer> touched = new ArrayList<>();
+  private DatagramChannel channel;
+  private Selector selector;
+  private Thread thread;
+  private volatile boolean running;
+
+  public ReliableUdpEndpoint(InetSocketAddress bindAddress, Handler handler) {
+    this(bindAddress, DEFAULT_FRAGMENT_BYTES, DEFAULT_WINDOW, handler);
+  }
+
+  /** window es el máximo de fragmentos sin confirmar por destino (y sin entregar por origen). */
+  public ReliableUdpEndpoint(InetSocketAddress bindAddress, int fragmentBytes, int window, Handler handler) {
+    this.bindAddress = bindAddress;
+    this.fragmentBytes = fragmentBytes;
+    this.window = window;
+    this.handler = handler;
+  }
+
+  public synchronized void start() throws IOException {
+    channel = DatagramChannel.open();
+    channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+    channel.setOption(StandardSocketOptions.SO_SNDBUF, 4 * 1024 * 1024);
+    channel.bind(bindAddress);
+    channel.configureBlocking(false);
+    selector = Selector.open();
+    channel.register(selector, SelectionKey.OP_READ);
+    running = true;
+    thread = new Thread(this, "udp-fiable-" + getLocalAddress().getPort());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public InetSocketAddress getLocalAddress() throws IOException {
+    return (InetSocketAddress) channel.getLocalAddress();
+  }
+
+  public int maxMessageBytes() {
+    return 0xFFFF * fragmentBytes;
+  }
+
+  /** Fragmentos reenviados desde el arranque. */
+  public long getRetransmissions() {
+    return retransmissions.get();
+  }
+
+  /**
+   * Encola una copia del mensaje para peer. Devuelve false si hay demasiados
+   * mensajes esperando turno (para todos los destinos) o el punto está cerrado.
+   */
+  public boolean send(InetSocketAddress peer, ByteBuffer message) {
+    if (message.remaining() > maxMessageBytes())
+      throw new IllegalArgumentException("mensaje de " + message.remaining() + " bytes, el máximo es "
+          + maxMessageBytes());
+    if (!running)
+      return false;
+    if (queuedCommands.incrementAndGet() > MAX_QUEUED_MESSAGES) {
+      queuedCommands.decrementAndGet();
+      return false;
+    }
+    byte[] copy = new byte[message.remaining()];
+    message.duplicate().get(copy);
+    commands.add(new Command(peer, copy));
+    if (wakeupPending.compareAndSet(false, true))
+      selector.wakeup();
+    return true;
+  }
+
+  @Override
+  public void run() {
+    // El otro extremo puede usar fragmentos mayores que los nuestros
+    ByteBuffer input = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+    while (running) {
+      try {
+        long now = System.nanoTime();
+        long wait = nextDeadline(now) - now;
+        if (wait > 0)
+          selector.select(Math.max(1, Math.min(1000, wait / 1_000_000)));
+        else
+          selector.selectNow();
+        selector.selectedKeys().clear();
+        wakeupPending.set(false);
+        takeCommands();
+        SocketAddress from;
+        while ((from = channel.receive(input.clear())) != null) {
+          try {
+            handlePacket(from, input.flip());
+          } catch (RuntimeException e) {
+            System.err.println("Datagrama UDP no válido de " + from + ": " + e);
+          }
+        }
+        flushAcks();
+        checkTimers(System.nanoTime());
+      } catch (IOException e) {
+        if (running)
+          System.err.println("Error en el punto UDP fiable: " + e.getMessage());
+      }
+    }
+  }
+
+  private void takeCommands() throws IOException {
+    Command command;
+    while ((command = commands.poll()) != null) {
+      Peer peer = peerFor(command.peer());
+      peer.queued.add(command.message());
+      pump(peer);
+    }
+  }
+
+  private Peer peerFor(SocketAddress address) {
+    Peer peer = peers.get(address);
+    if (peer == null) {
+      peer = new Peer((InetSocketAddress) address);
+      peers.put(address, peer);
+    }
+    peer.lastActivity = System.nanoTime();
+    return peer;
+  }
+
+  // Envía fragmentos nuevos mientras quepan en la ventana
+  private void pump(Peer peer) throws IOException {
+    while (peer.inFlightCount() < Math.min(window, Math.max(1, peer.remoteWindow))) {
+      if (peer.sending == null) {
+        byte[] message = peer.queued.poll();
+        if (message == null)
+          return;
+        queuedCommands.decrementAndGet();
+        peer.sending = message;
+        peer.sendingOffset = 0;
+        peer.sendingIndex = 0;
+        peer.sendingCount = Math.max(1, (message.length + fragmentBytes - 1) / fragmentBytes);
+      }
+      int length = Math.min(fragmentBytes, peer.sending.length - peer.sendingOffset);
+      int sequence = peer.nextSequence++;
+      ByteBuffer packet = ByteBuffer.allocate(DATA_HEADER + length);
+      packet.put(DATA).putInt(peer.session).putInt(sequence).putInt(peer.base).putShort((short) peer.sendingIndex)
+          .putShort((short) peer.sendingCount).put(peer.sending, peer.sendingOffset, length).flip();
+      Outgoing outgoing = new Outgoing(sequence, packet);
+      peer.inFlight[Math.floorMod(sequence, window)] = outgoing;
+      transmit(peer, outgoing);
+      peer.sendingOffset += length;
+      if (++peer.sendingIndex == peer.sendingCount)
+        peer.sending = null;
+    }
+  }
+
+  private void transmit(Peer peer, Outgoing outgoing) throws IOException {
+    // El campo base se actualiza en cada reenvío
+    outgoing.packet.putInt(9, peer.base);
+    channel.send(outgoing.packet.rewind(), peer.address);
+    long now = System.nanoTime();
+    outgoing.sentAt = now;
+    outgoing.deadline = now + peer.rto;
+    outgoing.transmissions++;
+  }
+
+  private void handlePacket(SocketAddress from, ByteBuffer packet) throws IOException {
+    if (packet.remaining() < 1)
+      return;
+    byte type = packet.get();
+    if (type == DATA && packet.remaining() >= DATA_HEADER - 1) {
+      handleData(peerFor(from), packet);
+    } else if (type == ACK && packet.remaining() >= ACK_LENGTH - 1) {
+      Peer peer = peers.get(from);
+      if (peer != null)
+        handleAck(peer, packet);
+    }
+  }
+
+  private void handleData(Peer peer, ByteBuffer packet) {
+    int remoteSession = packet.getInt();
+    int sequence = packet.getInt();
+    int remoteBase = packet.getInt();
+    int index = Short.toUnsignedInt(packet.getShort());
+    int count = Short.toUnsignedInt(packet.getShort());
+    // Cabecera incoherente: se descarta sin confirmarla
+    if (count == 0 || index >= count)
+      return;
+    if (!peer.remoteKnown || remoteSession != peer.remoteSession)
+      resetReceiving(peer, remoteSession, remoteBase);
+    // Lo anterior a base ya se confirmó (quizá a un proceso anterior): no va a volver
+    if (remoteBase - peer.expected > 0)
+      skipTo(peer, remoteBase);
+    markAck(peer);
+    int offset = sequence - peer.expected;
+    if (offset < 0 || offset >= window)
+      return;
+    if (offset == 0) {
+      deliverFragment(peer, index, count, packet);
+      peer.expected++;
+      deliverBuffered(peer);
+    } else {
+      int slot = Math.floorMod(sequence, window);
+      if (peer.buffered[slot] == null) {
+        byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        peer.buffered[slot] = new Fragment(index, count, data);
+        peer.bufferedCount++;
+      }
+    }
+  }
+
+  private void resetReceiving(Peer peer, int remoteSession, int remoteBase) {
+    peer.remoteKnown = true;
+    peer.remoteSession = remoteSession;
+    peer.expected = remoteBase;
+    Arrays.fill(peer.buffered, null);
+    peer.bufferedCount = 0;
+    peer.partial = null;
+  }
+
+  private void skipTo(Peer peer, int sequence) {
+    while (sequence - peer.expected > 0) {
+      int slot = Math.floorMod(peer.expected, window);
+      if (peer.buffered[slot] != null) {
+        peer.buffered[slot] = null;
+        peer.bufferedCount--;
+      }
+      peer.expected++;
+    }
+    peer.partial = null;
+    deliverBuffered(peer);
+  }
+
+  private void deliverBuffered(Peer peer) {
+    int slot;
+    while (peer.buffered[slot = Math.floorMod(peer.expected, window)] != null) {
+      Fragment fragment = peer.buffered[slot];
+      peer.buffered[slot] = null;
+      peer.bufferedCount--;
+      deliverFragment(peer, fragment.index, fragment.count, ByteBuffer.wrap(fragment.data));
+      peer.expected++;
+    }
+  }
+
+  // Los fragmentos llegan aquí en orden; un mensaje de un solo fragmento se
+  // entrega sin copiarlo. El buffer crece con lo que llega, no con lo que
+  // dice la cabecera, y no se montan mensajes mayores que maxMessageBytes()
+  private void deliverFragment(Peer peer, int index, int count, ByteBuffer data) {
+    if (count == 1) {
+      peer.partial = null;
+      deliver(peer, data);
+      return;
+    }
+    int length = data.remaining();
+    if (index == 0) {
+      peer.partial = new byte[length * Math.min(count, 8)];
+      peer.partialLength = 0;
+      peer.partialNextIndex = 0;
+      peer.partialCount = count;
+    }
+    // Sin el principio del mensaje (se saltó al reiniciar) no se puede montar
+    if (peer.partial == null || index != peer.partialNextIndex)
+      return;
+    if (count != peer.partialCount || peer.partialLength + length > maxMessageBytes()) {
+      peer.partial = null;
+      return;
+    }
+    if (peer.partialLength + length > peer.partial.length)
+      peer.partial = Arrays.copyOf(peer.partial,
+          Math.min(maxMessageBytes(), Math.max(peer.partialLength + length, 2 * peer.partial.length)));
+    data.get(peer.partial, peer.partialLength, length);
+    peer.partialLength += length;
+    peer.partialNextIndex++;
+    if (index == count - 1) {
+      ByteBuffer message = ByteBuffer.wrap(peer.partial, 0, peer.partialLength);
+      peer.partial = null;
+      deliver(peer, message);
+    }
+  }
+
+  private void deliver(Peer peer, ByteBuffer message) {
+    try {
+      handler.onMessage(peer.address, message);
+    } catch (RuntimeException e) {
+      System.err.println("Error entregando un mensaje UDP de " + peer.address + ": " + e.getMessage());
+    }
+  }
+
+  private void markAck(Peer peer) {
+    if (!peer.ackPending) {
+      peer.ackPending = true;
+      touched.add(peer);
+    }
+  }
+
+  // Un ACK por origen y por tanda de datagramas leídos
+  private void flushAcks() throws IOException {
+    if (touched.isEmpty())
+      return;
+    ByteBuffer ack = ByteBuffer.allocate(ACK_LENGTH);
+    for (Peer peer : touched) {
+      peer.ackPending = false;
+      long map = 0;
+      for (int i = 0; i < 64 && i + 1 < window; i++) {
+        if (peer.buffered[Math.floorMod(peer.expected + 1 + i, window)] != null)
+          map |= 1L << i;
+      }
+      ack.clear();
+      ack.put(ACK).putInt(peer.remoteSession).putInt(peer.expected).putInt(window - peer.bufferedCount).putLong(map)
+          .flip();
+      channel.send(ack, peer.address);
+    }
+    touched.clear();
+  }
+
+  private void handleAck(Peer peer, ByteBuffer packet) throws IOException {
+    if (packet.getInt() != peer.session)
+      return;
+    int cumulative = packet.getInt();
+    int remoteWindow = packet.getInt();
+    long map = packet.getLong();
+    if (cumulative - peer.nextSequence > 0)
+      return;
+    long now = System.nanoTime();
+    boolean advanced = false;
+    while (cumulative - peer.base > 0) {
+      int slot = Math.floorMod(peer.base, window);
+      Outgoing outgoing = peer.inFlight[slot];
+      // Karn: solo se mide el RTT de lo que no se reenvió
+      if (outgoing != null && outgoing.transmissions == 1)
+        sampleRtt(peer, now - outgoing.sentAt);
+      peer.inFlight[slot] = null;
+      peer.base++;
+      advanced = true;
+    }
+    // Lo enviado más reciente y la secuencia más alta que ya tiene el receptor
+    long newestSackedAt = 0;
+    int highestSacked = cumulative;
+    for (int i = 0; i < 64; i++) {
+      if ((map & (1L << i)) != 0) {
+        int sequence = cumulative + 1 + i;
+        if (sequence - peer.nextSequence >= 0)
+          break;
+        Outgoing outgoing = peer.inFlight[Math.floorMod(sequence, window)];
+        if (outgoing != null && outgoing.sequence == sequence) {
+          outgoing.sacked = true;
+          highestSacked = sequence;
+          if (newestSackedAt == 0 || outgoing.sentAt - newestSackedAt > 0)
+            newestSackedAt = outgoing.sentAt;
+        }
+      }
+    }
+    peer.remoteWindow = remoteWindow;
+    if (advanced && peer.smoothedRtt > 0)
+      peer.rto = computeRto(peer);
+    // Un hueco se da por perdido sin esperar al plazo si ya llegaron
+    // REORDER_THRESHOLD fragmentos posteriores enviados después que él, o
+    // alguno enviado bastante más tarde (margen para el desorden)
+    if (newestSackedAt != 0) {
+      long reorderWindow = Math.max(1_000_000L, peer.smoothedRtt / 4);
+      Outgoing highest = peer.inFlight[Math.floorMod(highestSacked, window)];
+      for (int sequence = cumulative; sequence != highestSacked; sequence++) {
+        Outgoing outgoing = peer.inFlight[Math.floorMod(sequence, window)];
+        if (outgoing == null || outgoing.sacked)
+          continue;
+        boolean passed = highestSacked - sequence >= REORDER_THRESHOLD && outgoing.sentAt - highest.sentAt < 0;
+        if (passed || newestSackedAt - outgoing.sentAt > reorderWindow) {
+          retransmissions.incrementAndGet();
+          transmit(peer, outgoing);
+        }
+      }
+    }
+    peer.lastActivity = now;
+    pump(peer);
+  }
+
+  private void sampleRtt(Peer peer, long rtt) {
+    if (peer.smoothedRtt == 0) {
+      peer.smoothedRtt = rtt;
+      peer.rttVariance = rtt / 2;
+    } else {
+      peer.rttVariance = (3 * peer.rttVariance + Math.abs(peer.smoothedRtt - rtt)) / 4;
+      peer.smoothedRtt = (7 * peer.smoothedRtt + rtt) / 8;
+    }
+    peer.rto = computeRto(peer);
+  }
+
+  private long computeRto(Peer peer) {
+    return Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, peer.smoothedRtt + 4 * peer.rttVariance));
+  }
+
+  private long nextDeadline(long now) {
+    long next = now + 1_000_000_000L;
+    for (Peer peer : peers.values()) {
+      for (int sequence = peer.base; sequence != peer.nextSequence; sequence++) {
+        Outgoing outgoing = peer.inFlight[Math.floorMod(sequence, window)];
+        if (outgoing != null && !outgoing.sacked && outgoing.deadline - next < 0)
+          next = outgoing.deadline;
+      }
+    }
+    return next;
+  }
+
+  private void checkTimers(long now) throws IOException {
+    Iterator<Peer> iterator = peers.values().iterator();
+    while (iterator.hasNext()) {
+      Peer peer = iterator.next();
+      if (!peer.hasWork()) {
+        if (now - peer.lastActivity > IDLE_PEER_NANOS && peer.bufferedCount == 0 && peer.partial == null)
+          iterator.remove();
+        continue;
+      }
+      Outgoing oldest = null;
+      for (int sequence = peer.base; sequence != peer.nextSequence; sequence++) {
+        Outgoing outgoing = peer.inFlight[Math.floorMod(sequence, window)];
+        if (outgoing != null && !outgoing.sacked && outgoing.deadline - now <= 0) {
+          oldest = outgoing;
+          break;
+        }
+      }
+      if (oldest == null)
+        continue;
+      if (oldest.transmissions >= MAX_TRANSMISSIONS) {
+        iterator.remove();
+        queuedCommands.addAndGet(-peer.queued.size());
+        int undelivered = peer.inFlightCount() + peer.queued.size() + (peer.sending != null ? 1 : 0);
+        handler.onPeerFailed(peer.address, undelivered);
+        continue;
+      }
+      // Como el temporizador de TCP: se reenvía solo el primer hueco, con el
+      // plazo duplicado, y el resto espera a lo que digan los ACK siguientes
+      peer.rto = Math.min(MAX_RTO_NANOS, peer.rto * 2);
+      retransmissions.incrementAndGet();
+      transmit(peer, oldest);
+      for (int sequence = oldest.sequence + 1; sequence != peer.nextSequence; sequence++) {
+        Outgoing outgoing = peer.inFlight[Math.floorMod(sequence, window)];
+        if (outgoing != null && outgoing.deadline - oldest.deadline < 0)
+          outgoing.deadline = oldest.deadline;
+      }
+    }
+  }
+
+  public void close() {
+    running = false;
+    if (selector != null)
+      selector.wakeup();
+    try {
+      if (thread != null)
+        thread.join(2000);
+      if (channel != null)
+        channel.close();
+      if (selector != null)
+        selector.close();
+    } catch (IOException | InterruptedException e) {
+      System.err.println("Error cerrando el punto UDP fiable: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package Common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Log de tramas solo de añadir, repartido en segmentos de tamaño fijo
+ * mapeados en memoria. El offset de cada trama es su número de secuencia,
+ * que debe crecer (puede tener huecos).
+ *
+ * Las tramas se guardan tal como viajan en el protocolo binario, así que una
+ * lectura devuelve un trozo del segmento que se puede escribir directamente
+ * en el socket. Cada segmento tiene un índice disperso (un offset cada
+ * INDEX_INTERVAL bytes) para empezar a leer cerca del offset pedido.
+ *
+ * Los segmentos más antiguos se borran cuando el log supera retentionBytes o
+ * cuando su última trama es más vieja que retentionMillis.
+ *
+ * Un fichero mapeado no se puede recortar ni borrar en Windows, y Java no
+ * permite desmapearlo: el mapeo dura hasta que el recolector libera el
+ * buffer. Por eso los segmentos cerrados conservan su tamaño reservado (el
+ * final está a cero y se ignora al recuperar) y los que no se pueden borrar
+ * se reintentan en las siguientes pasadas de retención.
+ */
+public class SegmentedLog {
+  public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+  private static final int INDEX_INTERVAL = 4096;
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final long retentionBytes;
+  private final long retentionMillis;
+  // Segmentos por el offset de su primera trama
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  // Segmentos ya fuera del log que el sistema aún no dejó borrar
+  private final List<Path> retired = new ArrayList<>();
+  private volatile Segment active;
+  private volatile long lastOffset;
+
+  /** Trozo de tramas consecutivas listas para enviar y el offset de la última. */
+  public record Chunk(ByteBuffer frames, long lastOffset, int count) {
+  }
+
+  private static class Segment {
+    final Path file;
+    final long baseOffset;
+    final MappedByteBuffer buffer;
+    // Bytes escritos; lo anterior ya no cambia y se puede leer sin bloqueo
+    volatile int size;
+    long lastOffset;
+    long lastAppendMillis;
+    long[] indexOffsets = new long[16];
+    int[] indexPositions = new int[16];
+    int indexSize;
+    int lastIndexedPosition = -INDEX_INTERVAL;
+
+    Segment(Path file, long baseOffset, MappedByteBuffer buffer) {
+      this.file = file;
+      this.baseOffset = baseOffset;
+      this.buffer = buffer;
+    }
+
+    void index(long offset, int position) {
+      if (position - lastIndexedPosition < INDEX_INTERVAL)
+        return;
+      if (indexSize == indexOffsets.length) {
+        indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+      }
+      indexOffsets[indexSize] = offset;
+      indexPositions[indexSize] = position;
+      indexSize++;
+      lastIndexedPosition = position;
+    }
+
+    // Posición de la última entrada del índice con offset <= el pedido
+    synchronized int seek(long offset) {
+      int low = 0;
+      int high = indexSize - 1;
+      int position = 0;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (indexOffsets[middle] <= offset) {
+          position = indexPositions[middle];
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return position;
+    }
+  }
+
+  public SegmentedLog(Path directory, int segmentBytes, long retentionBytes, long retentionMillis)
+      throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.retentionBytes = retentionBytes;
+    this.retentionMillis = retentionMillis;
+    Files.createDirectories(directory);
+    recover();
+  }
+
+  // Vuelve a mapear los segmentos que haya y reconstruye sus índices; el
+  // último sigue abierto para escribir a partir de su primera trama vacía.
+  private void recover() throws IOException {
+    File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".log"));
+    if (files == null)
+      return;
+    Arrays.sort(files);
+    for (int i = 0; i < files.length; i++) {
+      long baseOffset = Long.parseLong(files[i].getName().replace(".log", ""));
+      boolean last = i == files.length - 1;
+      Segment segment = map(files[i].toPath(), baseOffset,
+          last ? Math.max(segmentBytes, (int) files[i].length()) : (int) files[i].length());
+      segment.lastAppendMillis = files[i].lastModified();
+      scan(segment);
+      segments.put(baseOffset, segment);
+      if (segment.lastOffset > 0)
+        lastOffset = segment.lastOffset;
+    }
+    if (!segments.isEmpty())
+      active = segments.lastEntry().getValue();
+  }
+
+  private Segment map(Path file, long baseOffset, int bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      return new Segment(file, baseOffset, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+    }
+  }
+
+  // Recorre el segmento hasta la primera longitud inválida (el resto está a cero)
+  private static void scan(Segment segment) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    int position = 0;
+    while (position + 4 <= buffer.capacity()) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || length > FrameCodec.MAX_FRAME_LENGTH || position + 4 + length > buffer.capacity())
+        break;
+      long offset = sequenceAt(buffer, position);
+      segment.index(offset, position);
+      segment.lastOffset = offset;
+      position += 4 + length;
+    }
+    segment.size = position;
+  }
+
+  private static long sequenceAt(ByteBuffer buffer, int position) {
+    int senderLength = Short.toUnsignedInt(buffer.getShort(position + 5));
+    return buffer.getLong(position + 7 + senderLength);
+  }
+
+  /**
+   * Añade la trama al final. Devuelve false si su secuencia no es mayor que
+   * la última guardada (repetida o fuera de orden).
+   */
+  public boolean append(Frame frame) throws IOException {
+    return append(frame.sequence, FrameCodec.encode(frame));
+  }
+
+  /** Igual, con la trama ya codificada en binario (no se modifica el buffer). */
+  public synchronized boolean append(long offset, ByteBuffer encoded) throws IOException {
+    if (offset <= lastOffset)
+      return false;
+    int bytes = encoded.remaining();
+    if (active == null || active.size + bytes > active.buffer.capacity())
+      roll(offset, bytes);
+    Segment segment = active;
+    int position = segment.size;
+    // La longitud se escribe la última: hasta entonces el hueco sigue a cero
+    ByteBuffer target = segment.buffer.duplicate();
+    target.position(position + 4);
+    target.put(encoded.duplicate().position(encoded.position() + 4));
+    segment.buffer.putInt(position, bytes - 4);
+    synchronized (segment) {
+      segment.index(offset, position);
+    }
+    segment.lastOffset = offset;
+    segment.lastAppendMillis = System.currentTimeMillis();
+    segment.size = position + bytes;
+    lastOffset = offset;
+    return true;
+  }
+
+  private void roll(long baseOffset, int bytes) throws IOException {
+    if (active != null)
+      seal(active);
+    Path file = directory.resolve(String.format("%020d.log", baseOffset));
+    active = map(file, baseOffset, Math.max(segmentBytes, bytes));
+    segments.put(baseOffset, active);
+    enforceRetention();
+  }
+
+  // Vuelca a disco; el fichero no se recorta porque sigue mapeado
+  private static void seal(Segment segment) {
+    segment.buffer.force();
+    segment.file.toFile().setLastModified(segment.lastAppendMillis);
+  }
+
+  /**
+   * Tramas desde la primera con offset >= fromOffset, hasta maxBytes (al
+   * menos una) y sin salir de su segmento. Null si no hay nada.
+   */
+  public Chunk read(long fromOffset, int maxBytes) {
+    Segment segment;
+    synchronized (this) {
+      Map.Entry<Long, Segment> entry = segments.floorEntry(fromOffset);
+      if (entry == null)
+        entry = segments.firstEntry();
+      segment = entry != null ? entry.getValue() : null;
+      // Si en este segmento no queda nada se pasa al siguiente
+      while (segment != null && segment.lastOffset < fromOffset) {
+        Map.Entry<Long, Segment> next = segments.higherEntry(segment.baseOffset);
+        segment = next != null ? next.getValue() : null;
+      }
+    }
+    if (segment == null)
+      return null;
+    ByteBuffer buffer = segment.buffer.duplicate();
+    int end = segment.size;
+    int position = segment.seek(fromOffset);
+    while (position < end && sequenceAt(buffer, position) < fromOffset) {
+      position += 4 + buffer.getInt(position);
+    }
+    int start = position;
+    long last = 0;
+    int count = 0;
+    while (position < end) {
+      int frameBytes = 4 + buffer.getInt(position);
+      if (count > 0 && position + frameBytes - start > maxBytes)
+        break;
+      last = sequenceAt(buffer, position);
+      position += frameBytes;
+      count++;
+    }
+    if (count == 0)
+      return null;
+    ByteBuffer frames = buffer.position(start).limit(position).slice().asReadOnlyBuffer();
+    return new Chunk(frames, last, count);
+  }
+
+  /** Trama con ese offset, o null si no está en el log. */
+  public Frame get(long offset) {
+    Chunk chunk = read(offset, 0);
+    if (chunk == null)
+      return null;
+    ByteBuffer frames = chunk.frames();
+    int length = frames.getInt();
+    try {
+      Frame frame = FrameCodec.decodeBody(frames.limit(4 + length));
+      return frame.sequence == offset ? frame : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  public long lastOffset() {
+    return lastOffset;
+  }
+
+  public synchronized long firstOffset() {
+    for (Segment segment : segments.values()) {
+      if (segment.size > 0)
+        return sequenceAt(segment.buffer, 0);
+    }
+    return 0;
+  }
+
+  public synchronized long sizeInBytes() {
+    long bytes = 0;
+    for (Segment segment : segments.values()) {
+      bytes += segment.size;
+    }
+    return bytes;
+  }
+
+  public synchronized int segmentCount() {
+    return segments.size();
+  }
+
+  /** Borra los segmentos antiguos que sobran; el activo nunca se borra. */
+  public synchronized void enforceRetention() {
+    long total = sizeInBytes();
+    long now = System.currentTimeMillis();
+    while (segments.size() > 1) {
+      Segment oldest = segments.firstEntry().getValue();
+      if (total <= retentionBytes && now - oldest.lastAppendMillis <= retentionMillis)
+        break;
+      segments.pollFirstEntry();
+      total -= oldest.size;
+      retired.add(oldest.file);
+    }
+    retired.removeIf(SegmentedLog::delete);
+  }
+
+  // En Windows falla mientras el segmento siga mapeado
+  private static boolean delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public synchronized void close() {
+    if (active != null)
+      seal(active);
+  }
+}
@@ -0,0 +1,11 @@
+package Common;
+
+/**
+ * Cómo viajan los mensajes entre nodos.
+ */
+public enum Transport {
+  /** Conexiones TCP persistentes, una por destino. */
+  TCP,
+  /** Datagramas con confirmación y reenvío; ver ReliableUdpEndpoint. */
+  RELIABLE_UDP
+}
@@ -0,0 +1,11 @@
+package Common;
+
+/**
+ * Formato de los mensajes en el socket.
+ */
+public enum WireProtocol {
+  /** Una línea de texto terminada en '\n' por mensaje (modo de compatibilidad). */
+  TEXT,
+  /** Tramas binarias con prefijo de longitud; ver FrameCodec. */
+  BINARY
+}
@@ -0,0 +1,356 @@
+package Socket_TCP;
+
+import Common.ExecutionMode;
+import Common.MessagingMetrics;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor TCP que responde a cada línea recibida con una confirmación fija.
+ * Las conexiones se mantienen abiertas: un cliente puede enviar tantas líneas
+ * como quiera, incluso varias seguidas sin esperar respuesta, y las respuestas
+ * salen en el mismo orden.
+ *
+ * La latencia de las métricas va desde que se lee la línea hasta que se
+ * escribe su respuesta.
+ */
+public class EchoServer {
+  public static final String RESPONSE = "Mensaje recibido correctamente en el servidor TCP";
+  private static final byte[] RESPONSE_LINE = (RESPONSE + "\n").getBytes(StandardCharsets.UTF_8);
+  // Una línea más larga cierra la conexión en el modo NIO_SELECTOR
+  private static final int MAX_LINE_BYTES = 1024 * 1024;
+  // Respuestas pendientes a partir de las que NIO_SELECTOR deja de leer a ese cliente
+  private static final int MAX_PENDING_OUTPUT = 256 * 1024;
+
+  /** Cómo se reparten las conexiones entre hilos. */
+  public enum ThreadingModel {
+    /**
+     * Un hilo del pool por conexión mientras dure; si hay más conexiones que
+     * hilos, las demás esperan a que se cierre alguna.
+     */
+    FIXED_POOL,
+    /** Un hilo virtual por conexión. */
+    VIRTUAL_THREADS,
+    /** Un único hilo con un Selector atiende todas las conexiones. */
+    NIO_SELECTOR
+  }
+
+  private final InetSocketAddress address;
+  private final ThreadingModel model;
+  private final int poolThreads;
+  private final MessagingMetrics metrics;
+  private final AtomicLong connectionsAccepted = new AtomicLong();
+  private boolean logMessages;
+  private ServerSocket serverSocket;
+  private ServerSocketChannel serverChannel;
+  private Selector selector;
+  private ExecutorService executor;
+  // Para cerrarlas en stop(): un hilo bloqueado en read() no atiende a interrupt()
+  private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+  private Thread acceptor;
+  private volatile boolean running;
+
+  public EchoServer(String ip, int port, ThreadingModel model, int poolThreads) {
+    this.address = new InetSocketAddress(ip, port);
+    this.model = model;
+    this.poolThreads = Math.max(1, poolThreads);
+    this.metrics = new MessagingMetrics("ServerTCP-" + model);
+  }
+
+  /** Escribe en consola cada conexión y cada mensaje, como el servidor original. */
+  public void setLogMessages(boolean logMessages) {
+    this.logMessages = logMessages;
+  }
+
+  public MessagingMetrics getMetrics() {
+    return metrics;
+  }
+
+  public long getConnectionsAccepted() {
+    return connectionsAccepted.get();
+  }
+
+  public ThreadingModel getModel() {
+    return model;
+  }
+
+  public synchronized void start() throws IOException {
+    running = true;
+    metrics.register();
+    if (model == ThreadingModel.NIO_SELECTOR) {
+      selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(address, 1024);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      acceptor = new Thread(this::runSelector, "tcp-selector-" + address.getPort());
+    } else {
+      executor = model == ThreadingModel.VIRTUAL_THREADS ? ExecutionMode.VIRTUAL.newExecutor()
+          : ExecutionMode.PLATFORM.newFixedExecutor(poolThreads, "tcp-" + address.getPort());
+      serverSocket = new ServerSocket();
+      serverSocket.bind(address, 1024);
+      acceptor = new Thread(this::runAcceptor, "tcp-accept-" + address.getPort());
+    }
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    System.out.println("=== SERVIDOR TCP INICIADO ===");
+    System.out.println("IP del servidor: " + address.getHostString());
+    System.out.println("Puerto del servidor: " + address.getPort());
+    System.out.println("Modelo de hilos: " + model
+        + (model == ThreadingModel.FIXED_POOL ? " (" + poolThreads + " hilos)" : ""));
+    System.out.println("Esperando conexiones de clientes...\n");
+  }
+
+  // --- FIXED_POOL y VIRTUAL_THREADS ---
+
+  private void runAcceptor() {
+    while (running) {
+      try {
+        Socket clientSocket = serverSocket.accept();
+        connectionsAccepted.incrementAndGet();
+        openSockets.add(clientSocket);
+        executor.execute(() -> handleConnection(clientSocket));
+      } catch (IOException e) {
+        if (running)
+          System.err.println("Error aceptando conexión: " + e.getMessage());
+      }
+    }
+  }
+
+  private void handleConnection(Socket clientSocket) {
+    String client = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+    logConnected(client);
+    try (Socket socket = clientSocket) {
+      socket.setTcpNoDelay(true);
+      BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8));
+      OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+      String message;
+      while ((message = input.readLine()) != null) {
+        long receivedAt = System.nanoTime();
+        metrics.messageReceived();
+        logMessage(message);
+        output.write(RESPONSE_LINE);
+        // Con varias líneas ya recibidas se responde a todas antes de vaciar
+        if (!input.ready())
+          output.flush();
+        metrics.messageSent(System.nanoTime() - receivedAt);
+      }
+      output.flush();
+    } catch (IOException e) {
+      if (running)
+        metrics.messagesFailed(1);
+    } finally {
+      openSockets.remove(clientSocket);
+    }
+    logClosed(client);
+  }
+
+  // --- NIO_SELECTOR ---
+
+  private static class Connection {
+    final String client;
+    ByteBuffer input = ByteBuffer.allocate(8 * 1024);
+    ByteBuffer output = ByteBuffer.allocate(8 * 1024);
+    // Quedan líneas en input sin contestar hasta que se vacíe output
+    boolean stalled;
+
+    Connection(String client) {
+      this.client = client;
+    }
+  }
+
+  private void runSelector() {
+    try {
+      while (running) {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (key.isAcceptable()) {
+              accept();
+            } else {
+              if (key.isReadable())
+                read(key);
+              if (key.isValid() && key.isWritable())
+                write(key);
+            }
+          } catch (IOException e) {
+            close(key);
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      if (running)
+        System.err.println("Error en el selector del servidor TCP: " + e.getMessage());
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      connectionsAccepted.incrementAndGet();
+      // Un cliente que ya se fue no debe cerrar el canal de escucha
+      try {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        Connection connection = new Connection(remote.getAddress().getHostAddress() + ":" + remote.getPort());
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        logConnected(connection.client);
+      } catch (IOException e) {
+        channel.close();
+      }
+    }
+  }
+
+  private void read(SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    int read = channel.read(connection.input);
+    if (read < 0) {
+      close(key);
+      return;
+    }
+    answer(key, connection);
+  }
+
+  // Contesta las líneas completas de input mientras output no pase de MAX_PENDING_OUTPUT
+  private void answer(SelectionKey key, Connection connection) throws IOException {
+    ByteBuffer input = connection.input.flip();
+    int lineStart = 0;
+    connection.stalled = false;
+    for (int i = 0; i < input.limit(); i++) {
+      if (input.get(i) != '\n')
+        continue;
+      if (connection.output.position() >= MAX_PENDING_OUTPUT) {
+        connection.stalled = true;
+        break;
+      }
+      long receivedAt = System.nanoTime();
+      metrics.messageReceived();
+      if (logMessages) {
+        int end = i > lineStart && input.get(i - 1) == '\r' ? i - 1 : i;
+        logMessage(new String(input.array(), lineStart, end - lineStart, StandardCharsets.UTF_8));
+      }
+      connection.output = ensureRoom(connection.output, RESPONSE_LINE.length);
+      connection.output.put(RESPONSE_LINE);
+      metrics.messageSent(System.nanoTime() - receivedAt);
+      lineStart = i + 1;
+    }
+    input.position(lineStart);
+    input.compact();
+    // Una línea que no cabe: se amplía el buffer hasta MAX_LINE_BYTES
+    if (!connection.stalled && !connection.input.hasRemaining()) {
+      if (connection.input.capacity() >= MAX_LINE_BYTES)
+        throw new IOException("línea demasiado larga");
+      connection.input = ensureRoom(connection.input, connection.input.capacity());
+    }
+    if (connection.output.position() > 0)
+      write(key);
+    else
+      key.interestOps(SelectionKey.OP_READ);
+  }
+
+  private static ByteBuffer ensureRoom(ByteBuffer buffer, int bytes) {
+    if (buffer.remaining() >= bytes)
+      return buffer;
+    ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+    return larger.put(buffer.flip());
+  }
+
+  // Lo que no cabe en el socket espera a OP_WRITE. Con demasiadas respuestas
+  // pendientes no se lee más de ese cliente hasta que las vaya recogiendo
+  private void write(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    ((SocketChannel) key.channel()).write(connection.output.flip());
+    connection.output.compact();
+    if (connection.stalled && connection.output.position() < MAX_PENDING_OUTPUT) {
+      answer(key, connection);
+      return;
+    }
+    int ops = connection.stalled ? 0 : SelectionKey.OP_READ;
+    if (connection.output.position() > 0)
+      ops |= SelectionKey.OP_WRITE;
+    key.interestOps(ops);
+  }
+
+  private void close(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException ignored) {
+    }
+    if (key.attachment() instanceof Connection connection)
+      logClosed(connection.client);
+  }
+
+  // --- registro ---
+
+  private void logConnected(String client) {
+    if (!logMessages)
+      return;
+    System.out.println("=== CLIENTE CONECTADO ===");
+    System.out.println("Cliente: " + client);
+    System.out.println("Hora de conexión: " + new java.util.Date());
+    System.out.println("========================\n");
+  }
+
+  private void logMessage(String message) {
+    if (!logMessages)
+      return;
+    System.out.println("=== MENSAJE RECIBIDO ===");
+    System.out.println("Mensaje: " + message);
+    System.out.println("Hora: " + new java.util.Date());
+    System.out.println("========================\n");
+  }
+
+  private void logClosed(String client) {
+    if (logMessages)
+      System.out.println("Conexión con cliente " + client + " cerrada.\n");
+  }
+
+  public synchronized void stop() {
+    running = false;
+    try {
+      if (serverSocket != null)
+        serverSocket.close();
+      for (Socket socket : openSockets) {
+        socket.close();
+      }
+      if (selector != null) {
+        selector.wakeup();
+        acceptor.join(2000);
+        for (SelectionKey key : selector.keys()) {
+          key.channel().close();
+        }
+        selector.close();
+      }
+      if (executor != null) {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+      }
+    } catch (IOException | InterruptedException e) {
+      System.err.println("Error al cerrar el servidor: " + e.getMessage());
+    }
+    metrics.unregister();
+    System.out.println("Servidor TCP cerrado.");
+  }
+}
@@ -1,82 +1,31 @@
 package Socket_TCP;
 
-import java.io.*;
-import java.net.*;
-
 public class ServerTCP {
+  /**
+   * Uso: java Socket_TCP.ServerTCP [FIXED_POOL|VIRTUAL_THREADS|NIO_SELECTOR]
+   * [hilos del pool] [ip] [puerto]. Cada conexión puede enviar varias líneas.
+   */
   public static void main(String[] args) {
-    ServerSocket serverSocket = null;
-
+    EchoServer.ThreadingModel model = args.length > 0 ? EchoServer.ThreadingModel.valueOf(args[0].toUpperCase())
+        : EchoServer.ThreadingModel.FIXED_POOL;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2 * Runtime.getRuntime().availableProcessors();
+    // Set server
+    String ip = args.length > 2 ? args[2] : "127.0.0.1";
+    int port = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+
+    // Las métricas se pueden consultar por JMX mientras el servidor corre
+    EchoServer server = new EchoServer(ip, port, model, threads);
+    server.setLogMessages(true);
     try {
-      // Set server
-      String ip = "127.0.0.1";
-      int port = 12345; 
-
-      // Create server socket
-      serverSocket = new ServerSocket(port, 50, InetAddress.getByName(ip));
-
-      System.out.println("=== SERVIDOR TCP INICIADO ===");
-      System.out.println("IP del servidor: " + ip);
-      System.out.println("Puerto del servidor: " + port);
-      System.out.println("Esperando conexiones de clientes...\n");
-
-      while (true) {
-        // Accept connection
-        Socket clientSocket = serverSocket.accept();
-
-        // Get client information
-        String clientIP = clientSocket.getInetAddress().getHostAddress();
-        int puertoCliente = clientSocket.getPort();
-
-        System.out.println("=== CLIENTE CONECTADO ===");
-        System.out.println("IP del cliente: " + clientIP);
-        System.out.println("Puerto del cliente: " + puertoCliente);
-        System.out.println("Hora de conexión: " + new java.util.Date());
-        System.out.println("========================\n");
-
-        // Create in out flows
-        BufferedReader input = new BufferedReader(
-            new InputStreamReader(clientSocket.getInputStream()));
-        PrintWriter output = new PrintWriter(
-            clientSocket.getOutputStream(), true);
-
-        // Read client message
-        String message = input.readLine();
-
-        if (message != null) {
-          // Shows goten message
-          System.out.println("=== MENSAJE RECIBIDO ===");
-          System.out.println("Mensaje: " + message);
-          System.out.println("Hora: " + new java.util.Date());
-          System.out.println("========================\n");
-
-          // Send confirmation response
-          String response = "Mensaje recibido correctamente en el servidor TCP";
-          output.println(response);
-          System.out.println("Respuesta enviada al cliente: " + response + "\n");
-        }
-
-        // Close connection
-        input.close();
-        output.close();
-        clientSocket.close();
-
-        System.out.println("Conexión con cliente " + clientIP + ":" + puertoCliente + " cerrada.");
-        System.out.println("Esperando nuevas conexiones...\n");
-      }
-
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        System.out.print(server.getMetrics().snapshot());
+        server.stop();
+      }));
+      Thread.currentThread().join();
     } catch (Exception e) {
       System.err.println("Error en el servidor TCP: " + e.getMessage());
       e.printStackTrace();
-    } finally {
-      if (serverSocket != null && !serverSocket.isClosed()) {
-        try {
-          serverSocket.close();
-          System.out.println("Servidor TCP cerrado.");
-        } catch (IOException e) {
-          System.err.println("Error al cerrar el servidor: " + e.getMessage());
-        }
-      }
     }
   }
-}
\ No newline at end of file
+}
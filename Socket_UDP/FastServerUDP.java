@@ -0,0 +1,140 @@
+import Common.BufferPool;
+import Common.MessagingMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Modo de alto rendimiento de ServerUDP: varios hilos reciben a la vez, cada
+ * uno en su buffer directo, y responden con una confirmación fija ya
+ * codificada, sin crear objetos por paquete ni escribir en consola.
+ *
+ * Donde el sistema admite SO_REUSEPORT cada hilo tiene su propio canal en el
+ * mismo puerto y el kernel reparte los paquetes entre ellos; si no, todos los
+ * hilos comparten un canal.
+ *
+ * Los datagramas más largos que maxDatagramBytes se truncan y se cuentan como
+ * descartados en las métricas.
+ *
+ * La respuesta va directamente al remitente de cada paquete y su dirección
+ * no se guarda. Esa dirección es el único objeto por paquete: el JDK
+ * reutiliza la del paquete anterior si el remitente es el mismo, y solo la
+ * crea de nuevo cuando se alternan remitentes.
+ */
+public class FastServerUDP {
+  public static final int DEFAULT_MAX_DATAGRAM_BYTES = 65_507;
+  static final byte[] RESPONSE = "Mensaje recibido correctamente en el servidor".getBytes(StandardCharsets.UTF_8);
+
+  private final InetSocketAddress address;
+  private final int threads;
+  private final int maxDatagramBytes;
+  private final MessagingMetrics metrics = new MessagingMetrics("FastServerUDP");
+  private final BufferPool bufferPool;
+  private final List<DatagramChannel> channels = new ArrayList<>();
+  private final List<Thread> receivers = new ArrayList<>();
+  private volatile boolean running;
+
+  public FastServerUDP(String ip, int port, int threads, int maxDatagramBytes) {
+    this.address = new InetSocketAddress(ip, port);
+    this.threads = Math.max(1, threads);
+    this.maxDatagramBytes = maxDatagramBytes;
+    this.bufferPool = new BufferPool(this.threads);
+  }
+
+  public MessagingMetrics getMetrics() {
+    return metrics;
+  }
+
+  public synchronized void start() throws IOException {
+    running = true;
+    metrics.register();
+    DatagramChannel shared = null;
+    for (int i = 0; i < threads; i++) {
+      DatagramChannel channel;
+      if (shared != null) {
+        channel = shared;
+      } else {
+        channel = DatagramChannel.open();
+        boolean reusePort = channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        if (reusePort)
+          channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+        channel.bind(address);
+        channels.add(channel);
+        if (!reusePort)
+          shared = channel;
+      }
+      DatagramChannel receiving = channel;
+      Thread receiver = new Thread(() -> receive(receiving), "udp-rapido-" + i);
+      receiver.setDaemon(true);
+      receivers.add(receiver);
+    }
+    for (Thread receiver : receivers) {
+      receiver.start();
+    }
+    System.out.println("=== SERVIDOR UDP RÁPIDO INICIADO ===");
+    System.out.println("Dirección: " + address + ", hilos: " + threads + ", canales: " + channels.size()
+        + ", datagrama máximo: " + maxDatagramBytes + " bytes");
+  }
+
+  private void receive(DatagramChannel channel) {
+    ByteBuffer buffer = bufferPool.acquire(maxDatagramBytes + 1);
+    ByteBuffer response = ByteBuffer.allocateDirect(RESPONSE.length).put(RESPONSE).flip();
+    try {
+      while (running) {
+        // Un byte de más para saber si el datagrama no cabía. El canal es
+        // bloqueante, así que receive siempre devuelve un remitente.
+        buffer.clear().limit(maxDatagramBytes + 1);
+        SocketAddress client = channel.receive(buffer);
+        long receivedAt = System.nanoTime();
+        metrics.messageReceived();
+        if (buffer.position() > maxDatagramBytes)
+          metrics.messagesDropped(1);
+        channel.send(response.rewind(), client);
+        metrics.messageSent(System.nanoTime() - receivedAt);
+      }
+    } catch (ClosedChannelException e) {
+      // stop()
+    } catch (IOException e) {
+      System.err.println("Error en el servidor UDP rápido: " + e.getMessage());
+    } finally {
+      bufferPool.release(buffer);
+    }
+  }
+
+  public synchronized void stop() {
+    running = false;
+    for (DatagramChannel channel : channels) {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+    channels.clear();
+    receivers.clear();
+    metrics.unregister();
+  }
+
+  /** Uso: java FastServerUDP [ip] [puerto] [hilos] [bytes máximos por datagrama] */
+  public static void main(String[] args) throws Exception {
+    String ip = args.length > 0 ? args[0] : "127.0.0.1";
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    int maxBytes = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_DATAGRAM_BYTES;
+    FastServerUDP server = new FastServerUDP(ip, port, threads, maxBytes);
+    server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      System.out.print(server.getMetrics().snapshot());
+      server.stop();
+    }));
+    Thread.currentThread().join();
+  }
+}
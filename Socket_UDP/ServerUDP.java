@@ -1,8 +1,21 @@
+import Common.MessagingMetrics;
+
 import java.net.*;
 
 public class ServerUDP {
+  /** Con "rapido" como primer argumento arranca FastServerUDP con el resto. */
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("rapido")) {
+      try {
+        FastServerUDP.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+      } catch (Exception e) {
+        System.err.println("Error en el servidor: " + e.getMessage());
+      }
+      return;
+    }
     DatagramSocket socket = null;
+    // Consultables por JMX mientras el servidor corre
+    MessagingMetrics metrics = new MessagingMetrics("ServerUDP").register();
 
     try {
       // Server configuration
@@ -26,6 +39,8 @@ public class ServerUDP {
 
         // Get package from Client
         socket.receive(packageReceived);
+        long receivedAt = System.nanoTime();
+        metrics.messageReceived();
 
         // Extract information package
         String receivedMsg = new String(packageReceived.getData(), 0, packageReceived.getLength());
@@ -50,6 +65,7 @@ public class ServerUDP {
             packageReceived.getPort());
 
         socket.send(paqueteRespuesta);
+        metrics.messageSent(System.nanoTime() - receivedAt);
         System.out.println("Respuesta enviada al cliente.\n");
       }
 
@@ -57,6 +73,8 @@ public class ServerUDP {
       System.err.println("Error en el servidor: " + e.getMessage());
       e.printStackTrace();
     } finally {
+      System.out.print(metrics.snapshot());
+      metrics.unregister();
       if (socket != null && !socket.isClosed()) {
         socket.close();
         System.out.println("Servidor UDP cerrado.");
@@ -0,0 +1,132 @@
+package Benchmarks;
+
+import BroadCast.ServerNode;
+import Common.Frame;
+import Common.FrameWriter;
+import Common.IoEngine;
+import Common.WireProtocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.*;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ServerNode retransmitiendo a N BroadCast.DistributedNode en la misma JVM:
+ * tiempo desde que se envía un mensaje hasta que lo recibió el último nodo.
+ * Es la suite broadcast de MessagingBenchmark, un mensaje cada vez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class BroadcastBenchmark {
+  private static final int SERVER_PORT = 28000;
+
+  @Param({ "1", "10", "100", "1000" })
+  public int nodes;
+
+  @Param({ "64", "1024", "16384" })
+  public int payload;
+
+  private ServerNode server;
+  private final List<BroadCast.DistributedNode> receivers = new ArrayList<>();
+  private final Semaphore delivered = new Semaphore(0);
+  private Socket socket;
+  private FrameWriter output;
+  private String message;
+  private long sequence;
+
+  @Setup(Level.Trial)
+  public void start() throws Exception {
+    // Servidor y nodos escriben cada mensaje en consola
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    server = new ServerNode(SERVER_PORT, IoEngine.NIO);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    for (int i = 0; i < nodes; i++) {
+      BroadCast.DistributedNode node = new BroadCast.DistributedNode("JMH-" + i, "127.0.0.1", SERVER_PORT + 1 + i,
+          new BroadCast.DistributedNode.NodeInfo("127.0.0.1", SERVER_PORT), IoEngine.NIO);
+      node.setMessageListener(new BroadCast.DistributedNode.MessageListener() {
+        @Override
+        public void onFrameReceived(Frame frame) {
+          if (frame.type == Frame.MESSAGE)
+            delivered.release();
+        }
+
+        @Override
+        public void onMessageReceived(String message) {
+        }
+
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+      });
+      node.start();
+      receivers.add(node);
+    }
+    message = "x".repeat(payload);
+    socket = connect();
+    socket.setTcpNoDelay(true);
+    output = new FrameWriter(socket.getOutputStream(), WireProtocol.BINARY, true);
+
+    // Hasta que un mensaje llega a todos no están todos los nodos registrados
+    boolean ready = false;
+    for (long deadline = System.currentTimeMillis() + 60_000; !ready && System.currentTimeMillis() < deadline;) {
+      delivered.drainPermits();
+      output.write(new Frame(Frame.MESSAGE, "JMH", ++sequence, message));
+      ready = delivered.tryAcquire(nodes, 200, TimeUnit.MILLISECONDS);
+    }
+    if (!ready)
+      throw new IllegalStateException("no se registraron los " + nodes + " nodos");
+    Thread.sleep(200);
+    delivered.drainPermits();
+  }
+
+  private static Socket connect() throws IOException, InterruptedException {
+    for (int attempt = 0;; attempt++) {
+      try {
+        return new Socket("127.0.0.1", SERVER_PORT);
+      } catch (ConnectException e) {
+        if (attempt == 100)
+          throw e;
+        Thread.sleep(50);
+      }
+    }
+  }
+
+  @Benchmark
+  public void broadcast() throws Exception {
+    output.write(new Frame(Frame.MESSAGE, "JMH", ++sequence, message));
+    if (!delivered.tryAcquire(nodes, 10, TimeUnit.SECONDS))
+      throw new IllegalStateException("el mensaje " + sequence + " no llegó a todos los nodos");
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() throws IOException {
+    socket.close();
+    for (BroadCast.DistributedNode node : receivers) {
+      node.stop();
+    }
+    server.stop();
+  }
+}
@@ -0,0 +1,65 @@
+package Benchmarks;
+
+import Common.BufferPool;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.WireProtocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de codificar y decodificar una trama binaria según el tamaño del
+ * contenido, con buffer nuevo y con uno del BufferPool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class FrameCodecBenchmark {
+  @Param({ "64", "1024", "16384" })
+  public int payload;
+
+  private final BufferPool pool = new BufferPool(16);
+  private Frame frame;
+  private ByteBuffer encoded;
+
+  @Setup
+  public void prepare() {
+    frame = new Frame(Frame.MESSAGE, "JMH", 1, "x".repeat(payload));
+    encoded = FrameCodec.encode(frame);
+  }
+
+  @Benchmark
+  public ByteBuffer encode() {
+    return FrameCodec.encode(frame, WireProtocol.BINARY);
+  }
+
+  @Benchmark
+  public int encodePooled() {
+    ByteBuffer buffer = FrameCodec.encode(frame, WireProtocol.BINARY, pool);
+    int length = buffer.remaining();
+    pool.release(buffer);
+    return length;
+  }
+
+  @Benchmark
+  public Frame decode() throws IOException {
+    return FrameCodec.decodeBody(encoded.duplicate().position(4));
+  }
+}
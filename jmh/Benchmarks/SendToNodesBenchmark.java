@@ -0,0 +1,98 @@
+package Benchmarks;
+
+import Common.Frame;
+import Common.IoEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un Client_Server.DistributedNode que envía el mismo mensaje a N nodos y
+ * espera todas las respuestas: cada destino tiene su carril, así que los
+ * envíos van en paralelo. Es la suite lanes de MessagingBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SendToNodesBenchmark {
+  private static final int BASE_PORT = 30000;
+
+  @Param({ "1", "10", "100", "1000" })
+  public int nodes;
+
+  @Param({ "64", "1024", "16384" })
+  public int payload;
+
+  private Client_Server.DistributedNode sender;
+  private final List<Client_Server.DistributedNode> receivers = new ArrayList<>();
+  private CompletableFuture<?>[] replies;
+  private String message;
+
+  @Setup(Level.Trial)
+  public void start() throws Exception {
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    sender = new Client_Server.DistributedNode("JMH", "127.0.0.1", BASE_PORT, IoEngine.NIO);
+    for (int i = 0; i < nodes; i++) {
+      int port = BASE_PORT + 1 + i;
+      Client_Server.DistributedNode receiver = new Client_Server.DistributedNode("JMH-" + i, "127.0.0.1", port,
+          IoEngine.NIO);
+      receiver.start();
+      receivers.add(receiver);
+      sender.addOtherNode("JMH-" + i, "127.0.0.1", port);
+    }
+    sender.start();
+    replies = new CompletableFuture<?>[nodes];
+    message = "x".repeat(payload);
+    // El primer envío abre las conexiones; un nodo que aún no escucha falla
+    for (int attempt = 0;; attempt++) {
+      try {
+        sendToAll();
+        break;
+      } catch (Exception e) {
+        if (attempt == 50)
+          throw e;
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  @Benchmark
+  public void sendToAll() throws Exception {
+    for (int i = 0; i < nodes; i++) {
+      replies[i] = sender.sendMessageToNode("JMH-" + i, message);
+    }
+    CompletableFuture.allOf(replies).get(10, TimeUnit.SECONDS);
+    for (CompletableFuture<?> reply : replies) {
+      if (!(reply.get() instanceof Frame frame) || frame.type != Frame.ACK)
+        throw new IllegalStateException("respuesta inesperada: " + reply.get());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    sender.stop();
+    for (Client_Server.DistributedNode receiver : receivers) {
+      receiver.stop();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.FrameWriter;
+import Common.IoEngine;
+import Common.OverflowPolicy;
+import Common.WireProtocol;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BroadcastDeliveryTest {
+  private static final int SERVER_PORT = 26900;
+
+  private ServerNode server;
+  private final List<DistributedNode> nodes = new ArrayList<>();
+  private final List<BlockingQueue<Frame>> inboxes = new ArrayList<>();
+
+  private void start(int nodeCount, int compressionThreshold) throws InterruptedException {
+    start(nodeCount, compressionThreshold, _ -> {
+    });
+  }
+
+  private void start(int nodeCount, int compressionThreshold, Consumer<ServerNode> configure)
+      throws InterruptedException {
+    server = new ServerNode(SERVER_PORT, IoEngine.NIO);
+    server.setCompression(compressionThreshold);
+    configure.accept(server);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    Thread.sleep(300);
+    for (int i = 0; i < nodeCount; i++) {
+      BlockingQueue<Frame> inbox = new LinkedBlockingQueue<>();
+      DistributedNode node = new DistributedNode("N" + i, "127.0.0.1", SERVER_PORT + 1 + i,
+          new DistributedNode.NodeInfo("127.0.0.1", SERVER_PORT), IoEngine.NIO);
+      node.setMessageListener(new DistributedNode.MessageListener() {
+        @Override
+        public void onFrameReceived(Frame frame) {
+          if (frame.type == Frame.MESSAGE)
+            inbox.add(frame);
+        }
+
+        @Override
+        public void onMessageReceived(String message) {
+        }
+
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+      });
+      node.start();
+      nodes.add(node);
+      inboxes.add(inbox);
+    }
+    // Los nodos se registran al arrancar; un mensaje de prueba confirma que ya llegan
+    for (long deadline = System.currentTimeMillis() + 10_000; System.currentTimeMillis() < deadline;) {
+      nodes.get(0).sendMessage("listo");
+      Thread.sleep(200);
+      if (inboxes.stream().allMatch(inbox -> !inbox.isEmpty()))
+        break;
+    }
+    for (BlockingQueue<Frame> inbox : inboxes) {
+      assertFalse(inbox.isEmpty(), "un nodo no llegó a registrarse");
+      inbox.clear();
+    }
+  }
+
+  @AfterEach
+  void stop() {
+    for (DistributedNode node : nodes) {
+      node.stop();
+    }
+    if (server != null)
+      server.stop();
+  }
+
+  @Test
+  void everyNodeReceivesEveryMessageInOrder() throws Exception {
+    start(3, 0);
+    for (int i = 0; i < 50; i++) {
+      nodes.get(i % nodes.size()).sendMessage("mensaje " + i);
+    }
+    for (BlockingQueue<Frame> inbox : inboxes) {
+      long previous = 0;
+      for (int i = 0; i < 50; i++) {
+        Frame frame = inbox.poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertTrue(frame.sequence > previous, "secuencias fuera de orden");
+        previous = frame.sequence;
+      }
+    }
+  }
+
+  @Test
+  void compressedBroadcastsArriveIntact() throws Exception {
+    start(2, 1024);
+    String large = "contenido repetido ".repeat(1000);
+    nodes.get(0).sendMessage(large);
+    for (BlockingQueue<Frame> inbox : inboxes) {
+      Frame frame = inbox.poll(5, TimeUnit.SECONDS);
+      assertNotNull(frame);
+      assertTrue(frame.payloadAsString().endsWith(large));
+    }
+    assertEquals(1, server.getCompression().getCompressed());
+  }
+
+  @Test
+  void serverRestartedWithoutLogIsNotTakenForDuplicates() throws Exception {
+    start(2, 0);
+    for (int i = 0; i < 20; i++) {
+      nodes.get(0).sendMessage("antes " + i);
+    }
+    for (BlockingQueue<Frame> inbox : inboxes) {
+      for (int i = 0; i < 20; i++) {
+        assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+      }
+    }
+    server.stop();
+    server = new ServerNode(SERVER_PORT, IoEngine.NIO);
+    Thread serverThread = new Thread(server::startServer);
+    serverThread.setDaemon(true);
+    serverThread.start();
+    // Los nodos se vuelven a registrar con el siguiente latido
+    Frame frame = null;
+    for (long deadline = System.currentTimeMillis() + 10_000; frame == null
+        && System.currentTimeMillis() < deadline;) {
+      nodes.get(0).sendMessage("después");
+      frame = inboxes.get(1).poll(500, TimeUnit.MILLISECONDS);
+    }
+    assertNotNull(frame, "el nodo descartó los mensajes del servidor reiniciado");
+    assertTrue(frame.sequence <= 20);
+  }
+
+  @Test
+  void nodeThatStopsReadingDoesNotHoldUpTheEventLoop() throws Exception {
+    start(1, 0, server -> {
+      server.setSendBuffer(2, OverflowPolicy.BLOCK);
+      server.setTimeouts(1_000, 5_000);
+    });
+    List<Socket> accepted = new CopyOnWriteArrayList<>();
+    try (ServerSocket stalled = new ServerSocket()) {
+      stalled.setReceiveBufferSize(4096);
+      stalled.bind(new InetSocketAddress("127.0.0.1", 0));
+      Thread.ofVirtual().start(() -> {
+        try {
+          // Acepta y no lee nunca
+          while (true) {
+            accepted.add(stalled.accept());
+          }
+        } catch (IOException ignored) {
+        }
+      });
+      try (Socket client = new Socket("127.0.0.1", SERVER_PORT)) {
+        FrameWriter output = new FrameWriter(client.getOutputStream(), WireProtocol.BINARY, true);
+        output.write(new Frame(Frame.REGISTER, "lento", 0, "127.0.0.1:" + stalled.getLocalPort()));
+        String payload = "x".repeat(64 * 1024);
+        long startedAt = System.nanoTime();
+        for (int i = 1; i <= 200; i++) {
+          output.write(new Frame(Frame.MESSAGE, "T", i, payload));
+        }
+        for (int i = 0; i < 200; i++) {
+          assertNotNull(inboxes.get(0).poll(10, TimeUnit.SECONDS), "falta el mensaje " + i);
+        }
+        // Esperando al nodo lento cada mensaje tardaría hasta el timeout de escritura
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        assertTrue(elapsed < 2_500, "el nodo que no lee retrasó la entrega " + elapsed + " ms");
+      }
+    } finally {
+      for (Socket socket : accepted) {
+        socket.close();
+      }
+    }
+  }
+}
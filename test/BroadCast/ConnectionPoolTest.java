@@ -0,0 +1,135 @@
+package BroadCast;
+
+import Common.Frame;
+import Common.FrameCodec;
+import Common.FrameReader;
+import Common.OverflowPolicy;
+import Common.WireProtocol;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+  private ConnectionPool pool;
+  private ExecutorService executor;
+  private ServerSocket listener;
+
+  @BeforeEach
+  void start() throws IOException {
+    pool = new ConnectionPool(60_000, 5_000, _ -> {
+    });
+    pool.setSendBuffer(2, OverflowPolicy.BLOCK);
+    pool.setTimeouts(1_000, 1_000);
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    pool.start(executor);
+    listener = new ServerSocket(0);
+  }
+
+  @AfterEach
+  void stop() throws IOException {
+    pool.closeAll();
+    executor.shutdownNow();
+    listener.close();
+  }
+
+  @Test
+  void blockKeepsOrderWithoutWaitingInEnqueue() throws Exception {
+    ServerNode.NodeInfo node = new ServerNode.NodeInfo("127.0.0.1", listener.getLocalPort(), WireProtocol.BINARY);
+    for (int i = 1; i <= 500; i++) {
+      pool.enqueue(node, new Frame(Frame.MESSAGE, "T", i, "m" + i));
+    }
+    pool.awaitBacklog();
+    try (Socket socket = listener.accept()) {
+      FrameReader reader = new FrameReader(socket.getInputStream());
+      for (int i = 1; i <= 500; i++) {
+        assertEquals(i, reader.read().sequence);
+      }
+    }
+  }
+
+  @Test
+  void slowNodeDoesNotStallEnqueue() throws Exception {
+    List<Socket> accepted = new ArrayList<>();
+    Thread acceptor = Thread.ofVirtual().start(() -> {
+      try {
+        accepted.add(listener.accept());
+      } catch (IOException ignored) {
+      }
+    });
+    ServerNode.NodeInfo node = new ServerNode.NodeInfo("127.0.0.1", listener.getLocalPort(), WireProtocol.BINARY);
+    String payload = "x".repeat(64 * 1024);
+    long startedAt = System.nanoTime();
+    for (int i = 1; i <= 200; i++) {
+      pool.enqueue(node, new Frame(Frame.MESSAGE, "T", i, payload));
+    }
+    // Con la espera dentro de enqueue cada mensaje tardaría hasta el timeout
+    assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(500));
+    pool.awaitBacklog();
+    assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(5));
+    assertFalse(pool.describeTroubledNodes().isEmpty());
+    acceptor.join();
+    for (Socket socket : accepted) {
+      socket.close();
+    }
+  }
+
+  @Test
+  void blockWaitsOnceForANodeThatStoppedAccepting() throws Exception {
+    List<Socket> accepted = new ArrayList<>();
+    Thread acceptor = Thread.ofVirtual().start(() -> {
+      try {
+        accepted.add(listener.accept());
+      } catch (IOException ignored) {
+      }
+    });
+    ServerNode.NodeInfo node = new ServerNode.NodeInfo("127.0.0.1", listener.getLocalPort(), WireProtocol.BINARY);
+    String payload = "x".repeat(64 * 1024);
+    for (int i = 1; i <= 200; i++) {
+      pool.enqueue(node, new Frame(Frame.MESSAGE, "T", i, payload));
+    }
+    pool.awaitBacklog();
+    // El plazo corre desde que el nodo dejó de aceptar datos, no por mensaje
+    long startedAt = System.nanoTime();
+    for (int i = 201; i <= 210; i++) {
+      pool.enqueue(node, new Frame(Frame.MESSAGE, "T", i, payload));
+      pool.awaitBacklog();
+    }
+    assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(300));
+    acceptor.join();
+    for (Socket socket : accepted) {
+      socket.close();
+    }
+  }
+
+  @Test
+  void catchUpWaitsBehindOverflowedBroadcasts() throws Exception {
+    ServerNode.NodeInfo node = new ServerNode.NodeInfo("127.0.0.1", listener.getLocalPort(), WireProtocol.BINARY);
+    String payload = "x".repeat(64 * 1024);
+    for (int i = 1; i <= 100; i++) {
+      pool.enqueue(node, new Frame(Frame.MESSAGE, "T", i, payload));
+    }
+    Thread catchUp = Thread.ofPlatform().start(
+        () -> pool.enqueueEncoded(node, FrameCodec.encode(new Frame(Frame.MESSAGE, "T", 1_000, "log"))));
+    Thread.sleep(100);
+    try (Socket socket = listener.accept()) {
+      FrameReader reader = new FrameReader(socket.getInputStream());
+      for (int i = 1; i <= 100; i++) {
+        assertEquals(i, reader.read().sequence, "La recuperación no debe adelantar a los broadcasts");
+      }
+      assertEquals(1_000, reader.read().sequence);
+    }
+    catchUp.join();
+  }
+}
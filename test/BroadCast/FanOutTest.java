@@ -0,0 +1,36 @@
+package BroadCast;
+
+import Common.BufferPool;
+import Common.Frame;
+import Common.FrameCodec;
+import Common.MessagingMetrics;
+import Common.PayloadCompression;
+import Common.WireProtocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FanOutTest {
+
+  @Test
+  void multicastAndTcpShareTheSameCompressedFrame() {
+    PayloadCompression compression = new PayloadCompression(PayloadCompression.DEFAULT_THRESHOLD_BYTES);
+    Frame message = new Frame(Frame.MESSAGE, "nodo-1", 7,
+        "hola ".repeat(2_000).getBytes(StandardCharsets.UTF_8));
+    FanOut fanOut = new FanOut(new MessagingMetrics("test"), message, new BufferPool(4), compression);
+    try {
+      Frame published = fanOut.binaryFrame();
+      assertEquals(Frame.COMPRESSED, published.type, "El multicast debe publicar la trama comprimida");
+      assertEquals(message.sequence, published.sequence, "La secuencia no debe cambiar");
+      assertEquals(FrameCodec.encode(published).remaining(), fanOut.encoded(WireProtocol.BINARY).remaining(),
+          "TCP debe enviar la misma trama comprimida");
+      assertSame(published, fanOut.binaryFrame(), "La trama debe calcularse una sola vez");
+      assertEquals(1, compression.getCompressed(), "Se debe comprimir una sola vez por broadcast");
+    } finally {
+      fanOut.done();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package BroadCast;
+
+import Common.WireProtocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayTreeTest {
+
+  @Test
+  void announcesTheSameChildrenAsAFullRescan() {
+    int fanout = 3;
+    RelayTree tree = new RelayTree(fanout);
+    // Modelo: misma disposición, con el último nodo movido al hueco
+    List<ServerNode.NodeInfo> order = new ArrayList<>();
+    Map<ServerNode.NodeInfo, List<ServerNode.NodeInfo>> known = new HashMap<>();
+    Random random = new Random(42);
+    for (int step = 0; step < 2_000; step++) {
+      if (order.isEmpty() || random.nextInt(3) != 0) {
+        ServerNode.NodeInfo node = new ServerNode.NodeInfo("127.0.0.1", 10_000 + step, WireProtocol.BINARY);
+        tree.add(node);
+        order.add(node);
+      } else {
+        ServerNode.NodeInfo node = order.get(random.nextInt(order.size()));
+        tree.remove(node);
+        int position = order.indexOf(node);
+        ServerNode.NodeInfo last = order.remove(order.size() - 1);
+        if (position < order.size())
+          order.set(position, last);
+        known.remove(node);
+      }
+      known.putAll(tree.takeChangedAssignments());
+      for (int i = 0; i < order.size(); i++) {
+        int first = fanout * (i + 1);
+        List<ServerNode.NodeInfo> children = first >= order.size() ? List.of()
+            : order.subList(first, Math.min(first + fanout, order.size()));
+        assertEquals(children, known.getOrDefault(order.get(i), List.of()),
+            "Hijos anunciados distintos de los reales en el paso " + step);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package Client_Server;
+
+import Common.Frame;
+import Common.IoEngine;
+import Common.WireProtocol;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendMessageTest {
+  private static final int BASE_PORT = 26950;
+
+  private final List<DistributedNode> nodes = new ArrayList<>();
+
+  private DistributedNode node(String id, int port) {
+    DistributedNode node = new DistributedNode(id, "127.0.0.1", port, IoEngine.NIO);
+    nodes.add(node);
+    return node;
+  }
+
+  @AfterEach
+  void stop() {
+    for (DistributedNode node : nodes) {
+      node.stop();
+    }
+  }
+
+  @Test
+  void eachRequestCompletesWithItsOwnAck() throws Exception {
+    DistributedNode receiver = node("B", BASE_PORT + 1);
+    DistributedNode sender = node("A", BASE_PORT);
+    sender.addOtherNode("B", "127.0.0.1", BASE_PORT + 1);
+    receiver.start();
+    sender.start();
+    Thread.sleep(300);
+
+    List<CompletableFuture<Frame>> replies = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      replies.add(sender.sendMessageToNode("B", "mensaje " + i));
+    }
+    for (int i = 0; i < replies.size(); i++) {
+      Frame reply = replies.get(i).get(5, TimeUnit.SECONDS);
+      assertEquals(Frame.ACK, reply.type);
+      assertTrue(reply.payloadAsString().contains("'mensaje " + i + "'"), reply.payloadAsString());
+    }
+  }
+
+  @Test
+  void unknownDestinationFailsImmediately() {
+    DistributedNode sender = node("A", BASE_PORT + 2);
+    sender.start();
+    ExecutionException error = assertThrows(ExecutionException.class,
+        () -> sender.sendMessageToNode("NADIE", "hola").get(1, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, error.getCause());
+  }
+
+  // Nodo de texto que responde "ok <mensaje>", tarde si el mensaje es "lento"
+  private static void serveText(ServerSocket listener) {
+    while (!listener.isClosed()) {
+      try {
+        Socket socket = listener.accept();
+        Thread.ofVirtual().start(() -> {
+          try (socket) {
+            BufferedReader input = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer output = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            String line;
+            while ((line = input.readLine()) != null) {
+              if (line.equals("lento"))
+                Thread.sleep(600);
+              output.write("ok " + line + "\n");
+              output.flush();
+            }
+          } catch (IOException | InterruptedException ignored) {
+          }
+        });
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  @Test
+  void lateTextReplyIsNotTakenForTheNextRequest() throws Exception {
+    try (ServerSocket listener = new ServerSocket(BASE_PORT + 3)) {
+      Thread.ofVirtual().start(() -> serveText(listener));
+      DistributedNode sender = node("A", BASE_PORT + 4);
+      sender.setWireProtocol(WireProtocol.TEXT);
+      sender.addOtherNode("T", "127.0.0.1", BASE_PORT + 3);
+      sender.start();
+
+      CompletableFuture<Frame> slow = sender.sendMessageToNode("T", "lento", 300);
+      assertThrows(ExecutionException.class, () -> slow.get(2, TimeUnit.SECONDS));
+      Frame reply = sender.sendMessageToNode("T", "rápido", 2_000).get(3, TimeUnit.SECONDS);
+      assertEquals("ok rápido", reply.payloadAsString());
+    }
+  }
+
+  @Test
+  void replacedAddressGetsItsOwnLane() throws Exception {
+    DistributedNode first = node("B", BASE_PORT + 5);
+    DistributedNode second = node("C", BASE_PORT + 6);
+    DistributedNode sender = node("A", BASE_PORT + 7);
+    sender.addOtherNode("B", "127.0.0.1", BASE_PORT + 5);
+    first.start();
+    second.start();
+    sender.start();
+    Thread.sleep(300);
+
+    assertEquals("B", sender.sendMessageToNode("B", "antes").get(5, TimeUnit.SECONDS).senderId);
+    sender.addOtherNode("B", "127.0.0.1", BASE_PORT + 6);
+    assertEquals("C", sender.sendMessageToNode("B", "después").get(5, TimeUnit.SECONDS).senderId,
+        "Tras sustituir la dirección no se debe usar el carril viejo");
+    assertTrue(sender.removeOtherNode("B"));
+    ExecutionException error = assertThrows(ExecutionException.class,
+        () -> sender.sendMessageToNode("B", "quitado").get(1, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, error.getCause());
+  }
+}
@@ -0,0 +1,57 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchDispatcherTest {
+  @Test
+  void deliversWhatArrivedInOneWindowTogether() throws Exception {
+    LinkedBlockingQueue<List<Integer>> batches = new LinkedBlockingQueue<>();
+    BatchDispatcher<Integer> dispatcher = BatchDispatcher.start("test", 100, 1_000, 1_000, batches::add);
+    try {
+      for (int i = 0; i < 50; i++) {
+        assertTrue(dispatcher.submit(i));
+      }
+      List<Integer> batch = batches.poll(2, TimeUnit.SECONDS);
+      assertNotNull(batch, "no llegó ningún lote");
+      assertEquals(50, batch.size());
+      assertEquals(0, dispatcher.getDropped());
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  void dropsAndCountsOnceTheQueueIsFull() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    BatchDispatcher<Integer> dispatcher = BatchDispatcher.start("test", 1, 1, 10, _ -> {
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    try {
+      dispatcher.submit(0);
+      assertTrue(blocked.await(2, TimeUnit.SECONDS));
+      int accepted = 0;
+      for (int i = 0; i < 100; i++) {
+        if (dispatcher.submit(i))
+          accepted++;
+      }
+      assertEquals(10, accepted, "la cola debería aceptar solo su capacidad");
+      assertEquals(90, dispatcher.getDropped());
+    } finally {
+      release.countDown();
+      dispatcher.close();
+    }
+  }
+}
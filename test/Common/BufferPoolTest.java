@@ -0,0 +1,32 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+  @Test
+  void releasedBuffersAreReused() {
+    BufferPool pool = new BufferPool(2);
+    ByteBuffer first = pool.acquire(1000);
+    assertTrue(first.isDirect());
+    assertEquals(1000, first.limit());
+    assertEquals(1024, first.capacity());
+    pool.release(first);
+    ByteBuffer second = pool.acquire(700);
+    assertSame(first, second);
+    assertEquals(700, second.limit());
+    assertEquals(0, second.position());
+  }
+
+  @Test
+  void oversizedBuffersComeFromTheHeap() {
+    BufferPool pool = new BufferPool(2);
+    ByteBuffer large = pool.acquire(4 * 1024 * 1024);
+    assertFalse(large.isDirect());
+    pool.release(large);
+    assertNotSame(large, pool.acquire(4 * 1024 * 1024));
+  }
+}
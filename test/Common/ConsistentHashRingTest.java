@@ -0,0 +1,31 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+  @Test
+  void removingAMemberOnlyMovesItsKeys() {
+    ConsistentHashRing<String> ring = new ConsistentHashRing<>(64);
+    assertNull(ring.ownerOf("clave"));
+    for (String member : new String[] { "A", "B", "C", "D" }) {
+      ring.add(member, member);
+    }
+    Map<String, String> before = new HashMap<>();
+    for (int i = 0; i < 2000; i++) {
+      before.put("nodo-" + i, ring.ownerOf("nodo-" + i));
+    }
+    ring.remove("B");
+    assertFalse(ring.contains("B"));
+    for (Map.Entry<String, String> entry : before.entrySet()) {
+      if (!entry.getValue().equals("B"))
+        assertEquals(entry.getValue(), ring.ownerOf(entry.getKey()));
+      else
+        assertNotEquals("B", ring.ownerOf(entry.getKey()));
+    }
+  }
+}
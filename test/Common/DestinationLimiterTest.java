@@ -0,0 +1,49 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DestinationLimiterTest {
+  @Test
+  void capsConcurrentSendsPerDestination() throws Exception {
+    DestinationLimiter<String> limiter = new DestinationLimiter<>(1);
+    limiter.acquire("a");
+    limiter.acquire("b");
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiter = Thread.ofVirtual().start(() -> {
+      try {
+        limiter.acquire("a");
+        acquired.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    limiter.release("a");
+    assertTrue(acquired.await(1, TimeUnit.SECONDS));
+    waiter.join();
+  }
+
+  @Test
+  void removeKeepsTheSemaphoreWhileSomeoneWaits() throws Exception {
+    DestinationLimiter<String> limiter = new DestinationLimiter<>(1);
+    limiter.acquire("a");
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread.ofVirtual().start(() -> {
+      try {
+        limiter.acquire("a");
+        acquired.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    Thread.sleep(100);
+    limiter.remove("a");
+    limiter.release("a");
+    assertTrue(acquired.await(1, TimeUnit.SECONDS));
+  }
+}
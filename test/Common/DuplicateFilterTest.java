@@ -0,0 +1,25 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateFilterTest {
+  @Test
+  void acceptsEachSequenceOnce() {
+    DuplicateFilter filter = new DuplicateFilter(8);
+    assertTrue(filter.firstTime(1));
+    assertTrue(filter.firstTime(3));
+    assertFalse(filter.firstTime(1));
+    assertTrue(filter.firstTime(2));
+    assertFalse(filter.firstTime(3));
+  }
+
+  @Test
+  void treatsWhatFellBehindTheWindowAsSeen() {
+    DuplicateFilter filter = new DuplicateFilter(4);
+    assertTrue(filter.firstTime(10));
+    assertFalse(filter.firstTime(6));
+    assertTrue(filter.firstTime(7));
+  }
+}
@@ -0,0 +1,51 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCodecTest {
+  @Test
+  void binaryRoundTripKeepsEveryField() throws IOException {
+    Frame frame = new Frame(Frame.MESSAGE, "nodo-ñ", 42, "hola mundo");
+    ByteBuffer encoded = FrameCodec.encode(frame);
+    int length = encoded.getInt();
+    assertEquals(encoded.remaining(), length);
+    FrameCodec.checkLength(length);
+
+    Frame decoded = FrameCodec.decodeBody(encoded);
+    assertEquals(Frame.MESSAGE, decoded.type);
+    assertEquals("nodo-ñ", decoded.senderId);
+    assertEquals(42, decoded.sequence);
+    assertEquals("hola mundo", decoded.payloadAsString());
+  }
+
+  @Test
+  void pooledEncodingMatchesPlainEncoding() {
+    BufferPool pool = new BufferPool(4);
+    Frame frame = new Frame(Frame.MESSAGE, "A", 7, "x".repeat(3000));
+    ByteBuffer pooled = FrameCodec.encode(frame, WireProtocol.BINARY, pool);
+    assertEquals(FrameCodec.encode(frame), pooled);
+    pool.release(pooled);
+  }
+
+  @Test
+  void truncatedBodyIsRejected() {
+    ByteBuffer encoded = FrameCodec.encode(new Frame(Frame.MESSAGE, "remitente", 1, "x"));
+    encoded.position(4).limit(8);
+    assertThrows(IOException.class, () -> FrameCodec.decodeBody(encoded));
+    assertThrows(IOException.class, () -> FrameCodec.checkLength(FrameCodec.MAX_FRAME_LENGTH + 1));
+  }
+
+  @Test
+  void textLinesKeepTheOldFormat() {
+    assertEquals("REGISTER:127.0.0.1:5000", FrameCodec.toLine(new Frame(Frame.REGISTER, "", 0, "127.0.0.1:5000")));
+    assertEquals("A: hola", FrameCodec.toLine(new Frame(Frame.MESSAGE, "A", 3, "hola")));
+    Frame register = FrameCodec.fromLine("REGISTER:127.0.0.1:5000");
+    assertEquals(Frame.REGISTER, register.type);
+    assertEquals("127.0.0.1:5000", register.payloadAsString());
+  }
+}
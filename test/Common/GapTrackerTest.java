@@ -0,0 +1,64 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GapTrackerTest {
+  @Test
+  void reportsHolesUntilTheyAreFilled() {
+    GapTracker tracker = new GapTracker();
+    assertTrue(tracker.isMissing(1));
+    tracker.record(1);
+    tracker.record(2);
+    tracker.record(5);
+    tracker.record(7);
+    assertEquals(2, tracker.contiguous());
+    List<long[]> ranges = tracker.missingRanges();
+    assertEquals(2, ranges.size());
+    assertArrayEquals(new long[] { 3, 4 }, ranges.get(0));
+    assertArrayEquals(new long[] { 6, 6 }, ranges.get(1));
+    assertTrue(tracker.isMissing(3));
+    assertFalse(tracker.isMissing(5));
+
+    tracker.record(3);
+    tracker.record(4);
+    tracker.record(6);
+    assertEquals(7, tracker.contiguous());
+    assertTrue(tracker.missingRanges().isEmpty());
+  }
+
+  @Test
+  void skipToGivesUpOnOlderHoles() {
+    GapTracker tracker = new GapTracker();
+    tracker.record(1);
+    tracker.record(4);
+    tracker.record(5);
+    tracker.skipTo(3);
+    assertEquals(5, tracker.contiguous());
+    assertFalse(tracker.isMissing(2));
+  }
+
+  @Test
+  void announcedSequenceRevealsLossAtTheTail() {
+    GapTracker tracker = new GapTracker();
+    tracker.record(1);
+    tracker.record(2);
+    assertTrue(tracker.missingRanges().isEmpty());
+    tracker.expectUpTo(4);
+    assertArrayEquals(new long[] { 3, 4 }, tracker.missingRanges().get(0));
+    tracker.record(3);
+    tracker.record(4);
+    assertTrue(tracker.missingRanges().isEmpty());
+  }
+
+  @Test
+  void firstAnnouncementOnlySetsTheStart() {
+    GapTracker tracker = new GapTracker();
+    tracker.expectUpTo(10);
+    assertEquals(10, tracker.contiguous());
+    assertTrue(tracker.missingRanges().isEmpty());
+  }
+}
@@ -0,0 +1,30 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+  @Test
+  void percentilesStayWithinTheBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1_000);
+    }
+    assertEquals(10_000, histogram.count());
+    assertEquals(10_000_000, histogram.max());
+    assertEquals(5_000_000, histogram.percentile(0.50), 5_000_000 * 0.04);
+    assertEquals(9_900_000, histogram.percentile(0.99), 9_900_000 * 0.04);
+    assertEquals(10_000_000, histogram.percentile(1.0));
+  }
+
+  @Test
+  void emptyAndResetHistogramsReportZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(0.99));
+    histogram.record(500);
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.mean());
+  }
+}
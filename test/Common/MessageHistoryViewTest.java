@@ -0,0 +1,26 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHistoryViewTest {
+  @Test
+  void splitsEntriesWithNewlinesIntoRows() {
+    assertEquals(List.of("a", "b", "c", "d", "", "e"), MessageHistoryView.rows(List.of("a", "b\nc\r\nd", "\re")));
+    List<String> plain = List.of("a", "b");
+    assertSame(plain, MessageHistoryView.rows(plain), "sin saltos de línea no se copia la lista");
+  }
+
+  @Test
+  void widensToTheLongestRowInsteadOfClipping() {
+    MessageHistoryView view = new MessageHistoryView("Registro", "test", 10);
+    view.append("corta");
+    int narrow = view.rowWidth();
+    view.append("corta\n" + "x".repeat(500));
+    assertTrue(view.rowWidth() > narrow, "la fila larga debería ensanchar la lista");
+    view.close();
+  }
+}
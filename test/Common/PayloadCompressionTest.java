@@ -0,0 +1,51 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCompressionTest {
+  @Test
+  void compressibleFramesRoundTrip() throws IOException {
+    PayloadCompression compression = new PayloadCompression(1024);
+    Frame frame = new Frame(Frame.MESSAGE, "A", 9, "mensaje repetido ".repeat(2000));
+    Frame compressed = compression.compress(frame);
+    assertEquals(Frame.COMPRESSED, compressed.type);
+    assertEquals(9, compressed.sequence);
+    assertTrue(compressed.payload.length < frame.payload.length / 4);
+
+    Frame restored = PayloadCompression.decompress(compressed);
+    assertEquals(Frame.MESSAGE, restored.type);
+    assertEquals("A", restored.senderId);
+    assertArrayEquals(frame.payload, restored.payload);
+    assertEquals(1, compression.getCompressed());
+  }
+
+  @Test
+  void smallAndIncompressibleFramesAreSentAsIs() {
+    PayloadCompression compression = new PayloadCompression(1024);
+    Frame small = new Frame(Frame.MESSAGE, "A", 1, "x".repeat(100));
+    assertSame(small, compression.compress(small));
+
+    byte[] random = new byte[64 * 1024];
+    new Random(1).nextBytes(random);
+    Frame noise = new Frame(Frame.MESSAGE, "A", 2, random);
+    assertSame(noise, compression.compress(noise));
+    assertEquals(1, compression.getSkipped());
+  }
+
+  @Test
+  void corruptFramesAreRejected() {
+    PayloadCompression compression = new PayloadCompression(16);
+    Frame compressed = compression.compress(new Frame(Frame.MESSAGE, "A", 1, "y".repeat(4096)));
+    byte[] payload = compressed.payload.clone();
+    payload[2] = 0x7F;
+    assertThrows(IOException.class,
+        () -> PayloadCompression.decompress(new Frame(Frame.COMPRESSED, "A", 1, payload)));
+    assertThrows(IOException.class,
+        () -> PayloadCompression.decompress(new Frame(Frame.COMPRESSED, "A", 1, new byte[3])));
+  }
+}
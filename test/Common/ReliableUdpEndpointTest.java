@@ -0,0 +1,100 @@
+package Common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReliableUdpEndpointTest {
+  private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+  private ReliableUdpEndpoint sender;
+  private ReliableUdpEndpoint receiver;
+
+  private void start(int fragmentBytes) throws IOException {
+    InetSocketAddress local = new InetSocketAddress("127.0.0.1", 0);
+    receiver = new ReliableUdpEndpoint(local, fragmentBytes, ReliableUdpEndpoint.DEFAULT_WINDOW,
+        (peer, message) -> {
+          byte[] copy = new byte[message.remaining()];
+          message.get(copy);
+          received.add(copy);
+        });
+    sender = new ReliableUdpEndpoint(local, fragmentBytes, ReliableUdpEndpoint.DEFAULT_WINDOW, (peer, message) -> {
+    });
+    receiver.start();
+    sender.start();
+  }
+
+  @AfterEach
+  void close() {
+    if (sender != null)
+      sender.close();
+    if (receiver != null)
+      receiver.close();
+  }
+
+  @Test
+  void deliversFragmentedMessagesInOrder() throws Exception {
+    start(ReliableUdpEndpoint.DEFAULT_FRAGMENT_BYTES);
+    List<Integer> sizes = List.of(0, 1, 1200, 1201, 50_000, 10);
+    for (int i = 0; i < sizes.size(); i++) {
+      byte[] message = new byte[sizes.get(i)];
+      java.util.Arrays.fill(message, (byte) i);
+      assertTrue(sender.send(receiver.getLocalAddress(), ByteBuffer.wrap(message)));
+    }
+    for (int i = 0; i < sizes.size(); i++) {
+      byte[] message = received.poll(5, TimeUnit.SECONDS);
+      assertNotNull(message, "falta el mensaje " + i);
+      assertEquals(sizes.get(i), message.length);
+      for (byte b : message) {
+        assertEquals((byte) i, b);
+      }
+    }
+  }
+
+  @Test
+  void rejectsMessagesAboveTheMaximum() throws Exception {
+    start(16);
+    assertThrows(IllegalArgumentException.class,
+        () -> sender.send(receiver.getLocalAddress(), ByteBuffer.allocate(sender.maxMessageBytes() + 1)));
+  }
+
+  @Test
+  void survivesHostileHeadersAndLargerFragments() throws Exception {
+    start(16);
+    try (DatagramSocket socket = new DatagramSocket()) {
+      InetSocketAddress target = receiver.getLocalAddress();
+      // Total cero e índice fuera del total: se descartan
+      socket.send(data(target, 0, 0, 0, new byte[4]));
+      socket.send(data(target, 0, 5, 2, new byte[4]));
+      // Fragmentos de 100 bytes aunque el receptor use 16
+      socket.send(data(target, 0, 0, 2, filled(100, 7)));
+      socket.send(data(target, 1, 1, 2, filled(100, 7)));
+    }
+    byte[] message = received.poll(5, TimeUnit.SECONDS);
+    assertNotNull(message, "el receptor dejó de leer");
+    assertEquals(200, message.length);
+  }
+
+  private static DatagramPacket data(InetSocketAddress target, int sequence, int index, int count, byte[] data) {
+    ByteBuffer packet = ByteBuffer.allocate(ReliableUdpEndpoint.DATA_HEADER + data.length);
+    packet.put(ReliableUdpEndpoint.DATA).putInt(1).putInt(sequence).putInt(0).putShort((short) index)
+        .putShort((short) count).put(data);
+    return new DatagramPacket(packet.array(), packet.capacity(), target);
+  }
+
+  private static byte[] filled(int length, int value) {
+    byte[] data = new byte[length];
+    java.util.Arrays.fill(data, (byte) value);
+    return data;
+  }
+}
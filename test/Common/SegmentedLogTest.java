@@ -0,0 +1,84 @@
+package Common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedLogTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void readsBackFromAnyOffsetAcrossSegments() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+    for (long sequence = 1; sequence <= 200; sequence++) {
+      assertTrue(log.append(new Frame(Frame.MESSAGE, "A", sequence, "mensaje " + sequence)));
+    }
+    assertFalse(log.append(new Frame(Frame.MESSAGE, "A", 150, "repetido")));
+    assertTrue(log.segmentCount() > 1);
+    assertEquals(200, log.lastOffset());
+    assertEquals("mensaje 137", log.get(137).payloadAsString());
+
+    long next = 90;
+    int frames = 0;
+    SegmentedLog.Chunk chunk;
+    while ((chunk = log.read(next, 1024)) != null) {
+      frames += chunk.count();
+      next = chunk.lastOffset() + 1;
+    }
+    assertEquals(111, frames);
+    log.close();
+  }
+
+  @Test
+  void recoversWhatWasWrittenBeforeClosing() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+    for (long sequence = 1; sequence <= 100; sequence++) {
+      log.append(new Frame(Frame.MESSAGE, "A", sequence * 2, "m" + sequence));
+    }
+    log.close();
+
+    SegmentedLog reopened = new SegmentedLog(directory, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+    assertEquals(200, reopened.lastOffset());
+    assertEquals("m50", reopened.get(100).payloadAsString());
+    assertNull(reopened.get(101));
+    assertTrue(reopened.append(new Frame(Frame.MESSAGE, "A", 201, "después")));
+    reopened.close();
+  }
+
+  @Test
+  void recoversSealedSegmentsWithTheirReservedTail() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+    for (long sequence = 1; sequence <= 300; sequence++) {
+      log.append(new Frame(Frame.MESSAGE, "A", sequence, "m" + sequence));
+    }
+    int segments = log.segmentCount();
+    log.close();
+
+    SegmentedLog reopened = new SegmentedLog(directory, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+    assertEquals(segments, reopened.segmentCount());
+    assertEquals(300, reopened.lastOffset());
+    assertEquals(1, reopened.firstOffset());
+    for (long sequence = 1; sequence <= 300; sequence++) {
+      assertEquals("m" + sequence, reopened.get(sequence).payloadAsString());
+    }
+    reopened.close();
+  }
+
+  @Test
+  void retentionDropsTheOldestSegments() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 4096, 8192, Long.MAX_VALUE);
+    for (long sequence = 1; sequence <= 500; sequence++) {
+      log.append(new Frame(Frame.MESSAGE, "A", sequence, "x".repeat(100)));
+    }
+    log.enforceRetention();
+    assertTrue(log.sizeInBytes() <= 8192 + 4096);
+    assertTrue(log.firstOffset() > 1);
+    assertNull(log.get(1));
+    log.close();
+  }
+}
@@ -0,0 +1,69 @@
+package Socket_TCP;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EchoServerTest {
+  @Test
+  @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+  void selectorStopsReadingFromAClientThatDoesNotReadReplies() throws Exception {
+    int port;
+    try (ServerSocket free = new ServerSocket(0)) {
+      port = free.getLocalPort();
+    }
+    EchoServer server = new EchoServer("127.0.0.1", port, EchoServer.ThreadingModel.NIO_SELECTOR, 1);
+    server.start();
+    try (Socket socket = new Socket()) {
+      socket.setReceiveBufferSize(64 * 1024);
+      socket.setSendBufferSize(64 * 1024);
+      socket.connect(new InetSocketAddress("127.0.0.1", port));
+      // Más respuestas de las que caben en los buffers del sistema: líneas de 64 bytes
+      byte[] lines = new byte[1024 * 1024];
+      Arrays.fill(lines, (byte) 'x');
+      for (int i = 63; i < lines.length; i += 64) {
+        lines[i] = '\n';
+      }
+      int chunks = 128;
+      OutputStream output = socket.getOutputStream();
+      CompletableFuture<Void> writing = CompletableFuture.runAsync(() -> {
+        try {
+          for (int i = 0; i < chunks; i++) {
+            output.write(lines);
+          }
+          output.flush();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      // Sin leer respuestas el servidor deja de contestar al poco y no sigue leyendo
+      int total = chunks * lines.length / 64;
+      long answered = -1;
+      while (answered != server.getMetrics().getMessagesReceived()) {
+        answered = server.getMetrics().getMessagesReceived();
+        Thread.sleep(500);
+      }
+      assertTrue(answered < total / 4, "el servidor contestó " + answered + " de " + total + " líneas sin que se leyeran");
+      assertFalse(writing.isDone());
+      BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      for (int i = 0; i < total; i++) {
+        assertEquals(EchoServer.RESPONSE, input.readLine());
+      }
+      writing.get(10, TimeUnit.SECONDS);
+    } finally {
+      server.stop();
+    }
+  }
+}